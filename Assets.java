@@ -0,0 +1,218 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+/**
+ *	A process-wide registry of images and fonts.
+ *	<p> Each resource file is decoded at most once, and every later lookup returns the same object. {@link #preload() preload()} starts decoding every known resource in parallel, so that screens can be shown without waiting for the disk.
+ *	Derived variants, namely fonts of a given size and pre-scaled images, are also created once and cached.
+ *	<p> A resource which fails to load is reported once and then looked up as <code>null</code>.
+**/
+public final class Assets{
+	/**
+	 *	The font used by the whole user interface.
+	**/
+	public static final String FONT_UI = "joystix monospace.ttf";
+	private static final String[] FONTS = {FONT_UI};
+	private static final String[] IMAGES = {
+		"MainMenuBackground.png",
+		"Kolortris Logo.png",
+		"FinalBlock.png",
+		"Playfield2.png",
+		"Playfield2_2.png",
+		"LobbyBackground.png",
+		"ServerBackground.png",
+		"ClientBackground.png",
+		"GameBackground.png"
+	};
+	/**
+	 *	Receives progress updates while resources are being preloaded.
+	**/
+	public interface ProgressListener{
+		/**
+		 *	Called every time a preloaded resource has been decoded.
+		 *	@param loaded the number of resources decoded so far
+		 *	@param total the number of resources being preloaded
+		**/
+		public void progressChanged(int loaded, int total);
+	}
+	private static final ConcurrentHashMap<String, Future<BufferedImage>> images = new ConcurrentHashMap<String, Future<BufferedImage>>();
+	private static final ConcurrentHashMap<String, Future<Font>> fonts = new ConcurrentHashMap<String, Future<Font>>();
+	private static final ConcurrentHashMap<String, Font> derivedFonts = new ConcurrentHashMap<String, Font>();
+	private static final ConcurrentHashMap<String, BufferedImage> scaledImages = new ConcurrentHashMap<String, BufferedImage>();
+	private static final ArrayList<ProgressListener> listeners = new ArrayList<ProgressListener>();
+	private static final int TOTAL = FONTS.length+IMAGES.length;
+	private static int loaded = 0;
+	private static ExecutorService loader = null;
+
+	private Assets(){}
+
+	private static synchronized ExecutorService getLoader(){
+		if(loader==null){
+			loader = Executors.newFixedThreadPool(Math.max(2,Runtime.getRuntime().availableProcessors()),new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r,"AssetLoader");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return loader;
+	}
+	/**
+	 *	Starts decoding every resource used by the game in parallel, and returns immediately.
+	 *	<p> Resources are queued in the order they are first needed, starting with those of the main menu.
+	**/
+	public static void preload(){
+		for(String filename : FONTS){
+			fontFuture(filename,true);
+		}
+		for(String filename : IMAGES){
+			imageFuture(filename,true);
+		}
+	}
+	/**
+	 *	Registers a listener for the progress of {@link #preload() preload()}. The listener is immediately told the current progress.
+	 *	<p> Listeners are dropped once every resource has been decoded.
+	 *	@param listener the listener to add
+	**/
+	public static void addProgressListener(ProgressListener listener){
+		int current;
+		synchronized(listeners){
+			current = loaded;
+			if(current<TOTAL) listeners.add(listener);
+		}
+		listener.progressChanged(current,TOTAL);
+	}
+	private static void resourceLoaded(){
+		ProgressListener[] toNotify;
+		int current;
+		synchronized(listeners){
+			current = ++loaded;
+			toNotify = listeners.toArray(new ProgressListener[listeners.size()]);
+			if(current>=TOTAL) listeners.clear();
+		}
+		for(ProgressListener listener : toNotify){
+			listener.progressChanged(current,TOTAL);
+		}
+	}
+	private static Future<BufferedImage> imageFuture(final String filename, final boolean counted){
+		Future<BufferedImage> future = images.get(filename);
+		if(future!=null) return future;
+		FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>(){
+			public BufferedImage call(){
+				try{
+					return ImageIO.read(new File(filename));
+				}catch (IOException e){
+					System.out.println("Failed to load images.");
+					return null;
+				}finally{
+					if(counted) resourceLoaded();
+				}
+			}
+		});
+		future = images.putIfAbsent(filename,task);
+		if(future!=null) return future;
+		getLoader().execute(task);
+		return task;
+	}
+	private static Future<Font> fontFuture(final String filename, final boolean counted){
+		Future<Font> future = fonts.get(filename);
+		if(future!=null) return future;
+		FutureTask<Font> task = new FutureTask<Font>(new Callable<Font>(){
+			public Font call(){
+				try{
+					return Font.createFont(Font.TRUETYPE_FONT, new File(filename));
+				}catch (Exception e){
+					System.out.println("Failed to load resources.");
+					return null;
+				}finally{
+					if(counted) resourceLoaded();
+				}
+			}
+		});
+		future = fonts.putIfAbsent(filename,task);
+		if(future!=null) return future;
+		getLoader().execute(task);
+		return task;
+	}
+	private static <T> T await(Future<T> future){
+		boolean interrupted = false;
+		try{
+			while(true){
+				try{
+					return future.get();
+				}catch(InterruptedException e){
+					interrupted = true;
+				}catch(ExecutionException e){
+					return null;
+				}
+			}
+		}finally{
+			if(interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	private static boolean isPreloaded(String filename, String[] list){
+		for(String name : list){
+			if(name.equals(filename)) return true;
+		}
+		return false;
+	}
+	/**
+	 *	Returns a decoded image, waiting for it if it is still being loaded.
+	 *	@param filename the file name of the image
+	 *	@return the image, or <code>null</code> if it could not be loaded
+	**/
+	public static BufferedImage getImage(String filename){
+		return await(imageFuture(filename,isPreloaded(filename,IMAGES)));
+	}
+	/**
+	 *	Returns a decoded font with a size of 1, waiting for it if it is still being loaded.
+	 *	@param filename the file name of the font
+	 *	@return the font, or <code>null</code> if it could not be loaded
+	**/
+	public static Font getFont(String filename){
+		return await(fontFuture(filename,isPreloaded(filename,FONTS)));
+	}
+	/**
+	 *	Returns a font of a given size. Each size is derived only once.
+	 *	@param filename the file name of the font
+	 *	@param size the point size of the font
+	 *	@return the font, or <code>null</code> if it could not be loaded
+	**/
+	public static Font getFont(String filename, float size){
+		String key = filename+"@"+size;
+		Font font = derivedFonts.get(key);
+		if(font!=null) return font;
+		Font base = getFont(filename);
+		if(base==null) return null;
+		font = base.deriveFont(size);
+		Font previous = derivedFonts.putIfAbsent(key,font);
+		return previous!=null ? previous : font;
+	}
+	/**
+	 *	Returns an image scaled by a given factor. Each scale is rendered only once.
+	 *	@param filename the file name of the image
+	 *	@param scale the factor by which to scale both dimensions of the image
+	 *	@return the scaled image, or <code>null</code> if the image could not be loaded
+	**/
+	public static BufferedImage getScaledImage(String filename, double scale){
+		String key = filename+"@"+scale;
+		BufferedImage image = scaledImages.get(key);
+		if(image!=null) return image;
+		BufferedImage source = getImage(filename);
+		if(source==null) return null;
+		AffineTransform scaleTransform = new AffineTransform();
+		scaleTransform.scale(scale,scale);
+		AffineTransformOp scaleOp = new AffineTransformOp(
+			scaleTransform,
+			new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON)
+		);
+		image = scaleOp.filter(source,null);
+		BufferedImage previous = scaledImages.putIfAbsent(key,image);
+		return previous!=null ? previous : image;
+	}
+}
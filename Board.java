@@ -0,0 +1,405 @@
+/**
+ *	A packed grid of {@link Tile Tile} values, used by a {@link Playfield Playfield} to store its blocks.
+ *	<p> Each row is stored as an occupancy bitmask, where bit <code>j</code> is set if column <code>j</code> contains a block. In addition, each block color has its own bit plane, so that a row of a given color can also be read as a single bitmask.
+ *	<p> This allows collision checks, full line checks and color cluster searches to be done with word operations instead of walking a grid of references.
+ *	<p> The same occupancy is also kept per column, where bit <code>i</code> is set if row <code>i</code> contains a block. This index gives column heights and drop distances without scanning the column.
+ *	<p> Rows are kept in a circular buffer which starts at a moving base index. Pushing a row in from the bottom only moves the base index, and removing a row moves at most half of the rows. Each cell also has an alpha value used to animate clearing, which is stored with its row so that it moves along with the block.
+**/
+public class Board{
+	private static final Tile[] TILES = Tile.values();
+	private final int numRows;
+	private final int numColumns;
+	private final int fullRowMask;
+	private final int restingAlpha;
+	private final int[] occupied;
+	private final int[][] colorPlanes;
+	private final int[][] alpha;
+	private int base;
+	private final int[] changed;
+	private final int[] dirty;
+	private final int[] columns;
+	private int version;
+	/**
+	 *	Creates a new empty <code>Board</code>.
+	 *	@param numRows the number of rows of this <code>Board</code> (at most 31)
+	 *	@param numColumns the number of columns of this <code>Board</code> (at most 31)
+	 *	@param restingAlpha the alpha value given to cells which are not being cleared
+	**/
+	public Board(int numRows, int numColumns, int restingAlpha){
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.fullRowMask = (1<<numColumns)-1;
+		this.restingAlpha = restingAlpha;
+		this.occupied = new int[numRows];
+		this.colorPlanes = new int[TILES.length][numRows];
+		this.alpha = new int[numRows][numColumns];
+		this.base = 0;
+		this.changed = new int[numRows];
+		this.dirty = new int[numRows];
+		this.columns = new int[numColumns];
+		clear();
+	}
+	/**
+	 *	Returns the number of rows of this <code>Board</code>.
+	 *	@return the number of rows of this <code>Board</code>
+	**/
+	public int getNumRows(){
+		return numRows;
+	}
+	/**
+	 *	Returns the number of columns of this <code>Board</code>.
+	 *	@return the number of columns of this <code>Board</code>
+	**/
+	public int getNumColumns(){
+		return numColumns;
+	}
+	private int physical(int row){
+		int p = base+row;
+		return p>=numRows ? p-numRows : p;
+	}
+	private void emptyRow(int p){
+		occupied[p] = 0;
+		for(int t = 1; t<TILES.length; t++){
+			colorPlanes[t][p] = 0;
+		}
+		for(int j = 0; j<numColumns; j++){
+			alpha[p][j] = restingAlpha;
+		}
+	}
+	private void swapRows(int p, int q){
+		int temp = occupied[p];
+		occupied[p] = occupied[q];
+		occupied[q] = temp;
+		for(int t = 1; t<TILES.length; t++){
+			temp = colorPlanes[t][p];
+			colorPlanes[t][p] = colorPlanes[t][q];
+			colorPlanes[t][q] = temp;
+		}
+		int[] alphaRow = alpha[p];
+		alpha[p] = alpha[q];
+		alpha[q] = alphaRow;
+	}
+	/**
+	 *	Removes all blocks from this <code>Board</code>, and resets the alpha of every cell.
+	**/
+	public void clear(){
+		for(int i = 0; i<numRows; i++){
+			emptyRow(i);
+		}
+		for(int j = 0; j<numColumns; j++){
+			columns[j] = 0;
+		}
+		markAllChanged();
+	}
+	/**
+	 *	Copies every block of another <code>Board</code> of the same size into this <code>Board</code>, and resets the alpha of every cell.
+	 *	@param other the <code>Board</code> to copy
+	**/
+	public void copyFrom(Board other){
+		for(int i = 0; i<numRows; i++){
+			int p = physical(i);
+			int q = other.physical(i);
+			occupied[p] = other.occupied[q];
+			for(int t = 1; t<TILES.length; t++){
+				colorPlanes[t][p] = other.colorPlanes[t][q];
+			}
+			for(int j = 0; j<numColumns; j++){
+				alpha[p][j] = restingAlpha;
+			}
+		}
+		System.arraycopy(other.columns,0,columns,0,numColumns);
+		markAllChanged();
+	}
+	/**
+	 *	Returns the <code>Tile</code> at a given cell.
+	 *	@param row the row of the cell
+	 *	@param column the column of the cell
+	 *	@return the <code>Tile</code> at the given cell, or <code>Tile.NONE</code> if the cell is empty
+	**/
+	public Tile getTile(int row, int column){
+		int p = physical(row);
+		int bit = 1<<column;
+		if((occupied[p]&bit)==0) return Tile.NONE;
+		for(int t = 1; t<TILES.length; t++){
+			if((colorPlanes[t][p]&bit)!=0) return TILES[t];
+		}
+		return Tile.NONE;
+	}
+	/**
+	 *	Sets the <code>Tile</code> at a given cell.
+	 *	@param row the row of the cell
+	 *	@param column the column of the cell
+	 *	@param tile the new <code>Tile</code> of the cell; <code>Tile.NONE</code> empties the cell
+	**/
+	public void setTile(int row, int column, Tile tile){
+		int p = physical(row);
+		int bit = 1<<column;
+		int keep = ~bit;
+		changed[row] |= bit;
+		dirty[row] |= bit;
+		version++;
+		occupied[p] &= keep;
+		for(int t = 1; t<TILES.length; t++){
+			colorPlanes[t][p] &= keep;
+		}
+		columns[column] &= ~(1<<row);
+		if(tile!=Tile.NONE){
+			occupied[p] |= bit;
+			colorPlanes[tile.ordinal()][p] |= bit;
+			columns[column] |= 1<<row;
+		}
+	}
+	/**
+	 *	Returns the alpha value of a given cell.
+	 *	@param row the row of the cell
+	 *	@param column the column of the cell
+	 *	@return the alpha value of the cell
+	**/
+	public int getAlpha(int row, int column){
+		return alpha[physical(row)][column];
+	}
+	/**
+	 *	Sets the alpha value of a given cell.
+	 *	@param row the row of the cell
+	 *	@param column the column of the cell
+	 *	@param value the new alpha value of the cell
+	**/
+	public void setAlpha(int row, int column, int value){
+		int p = physical(row);
+		if(alpha[p][column]==value) return;
+		alpha[p][column] = value;
+		dirty[row] |= 1<<column;
+	}
+	/**
+	 *	Checks if a given cell contains a block.
+	 *	@param row the row of the cell
+	 *	@param column the column of the cell
+	 *	@return <code>true</code> if the cell contains a block, and <code>false</code> otherwise
+	**/
+	public boolean isOccupied(int row, int column){
+		return (occupied[physical(row)]&(1<<column))!=0;
+	}
+	/**
+	 *	Returns the occupancy bitmask of a row. Bit <code>j</code> is set if column <code>j</code> contains a block.
+	 *	@param row the row to read
+	 *	@return the occupancy bitmask of the row
+	**/
+	public int getRowMask(int row){
+		return occupied[physical(row)];
+	}
+	/**
+	 *	Returns the bitmask of the cells of a row which contain a given <code>Tile</code>.
+	 *	@param tile the color to look for
+	 *	@param row the row to read
+	 *	@return the bitmask of cells in the row with the given color
+	**/
+	public int getColorMask(Tile tile, int row){
+		if(tile==Tile.NONE) return ~occupied[physical(row)]&fullRowMask;
+		return colorPlanes[tile.ordinal()][physical(row)];
+	}
+	/**
+	 *	Checks if a row is completely filled with blocks.
+	 *	@param row the row to check
+	 *	@return <code>true</code> if every cell of the row contains a block, and <code>false</code> otherwise
+	**/
+	public boolean isRowFull(int row){
+		return occupied[physical(row)]==fullRowMask;
+	}
+	/**
+	 *	Checks if a set of cells on a row would collide with the blocks of this <code>Board</code>.
+	 *	<p> Rows outside of this <code>Board</code> always collide.
+	 *	@param row the row to test
+	 *	@param mask a bitmask of cells on the row
+	 *	@return <code>true</code> if any cell in <code>mask</code> is occupied or if <code>row</code> is out of bounds, and <code>false</code> otherwise
+	**/
+	public boolean collides(int row, int mask){
+		if(row<0 || row>=numRows) return true;
+		return (occupied[physical(row)]&mask)!=0;
+	}
+	/**
+	 *	Moves every row up by one, and adds an empty row at the bottom. The top row is discarded.
+	 *	<p> This only moves the base index of the row buffer, so it takes the same time regardless of the size of the <code>Board</code>.
+	**/
+	public void pushRow(){
+		int discarded = physical(0);
+		base = physical(1);
+		emptyRow(discarded);
+		for(int j = 0; j<numColumns; j++){
+			columns[j] >>>= 1;
+		}
+		markAllChanged();
+	}
+	/**
+	 *	Removes a row. Every row above it moves down by one, and an empty row is added at the top.
+	 *	<p> Whichever side of the removed row is smaller is moved, using the base index of the row buffer when the rows below are moved.
+	 *	@param row the row to remove
+	**/
+	public void removeRow(int row){
+		if(row<numRows/2){
+			for(int i = row; i>0; i--){
+				swapRows(physical(i),physical(i-1));
+			}
+			emptyRow(physical(0));
+		}else{
+			for(int i = row; i<numRows-1; i++){
+				swapRows(physical(i),physical(i+1));
+			}
+			base = physical(numRows-1);
+			emptyRow(physical(0));
+		}
+		int above = (1<<row)-1;
+		for(int j = 0; j<numColumns; j++){
+			columns[j] = ((columns[j]&above)<<1) | (columns[j]&~(above|(1<<row)));
+		}
+		markAllChanged();
+	}
+	/**
+	 *	Removes a single cell. Every cell above it in the same column moves down by one, along with its alpha value.
+	 *	@param row the row of the cell to remove
+	 *	@param column the column of the cell to remove
+	**/
+	public void removeCell(int row, int column){
+		int bit = 1<<column;
+		int keep = ~bit;
+		int below = physical(row);
+		for(int i = row; i>0; i--){
+			int above = physical(i-1);
+			occupied[below] = (occupied[below]&keep) | (occupied[above]&bit);
+			for(int t = 1; t<TILES.length; t++){
+				colorPlanes[t][below] = (colorPlanes[t][below]&keep) | (colorPlanes[t][above]&bit);
+			}
+			alpha[below][column] = alpha[above][column];
+			changed[i] |= bit;
+			dirty[i] |= bit;
+			below = above;
+		}
+		occupied[below] &= keep;
+		for(int t = 1; t<TILES.length; t++){
+			colorPlanes[t][below] &= keep;
+		}
+		alpha[below][column] = restingAlpha;
+		changed[0] |= bit;
+		dirty[0] |= bit;
+		int above = (1<<row)-1;
+		columns[column] = ((columns[column]&above)<<1) | (columns[column]&~(above|(1<<row)));
+		version++;
+	}
+	/**
+	 *	Returns the height of the stack in a column, i.e. the number of rows from the bottom of this <code>Board</code> up to and including the highest block of the column.
+	 *	@param column the column to check
+	 *	@return the height of the column, or 0 if the column is empty
+	**/
+	public int getColumnHeight(int column){
+		if(columns[column]==0) return 0;
+		return numRows-Integer.numberOfTrailingZeros(columns[column]);
+	}
+	/**
+	 *	Returns how many empty cells lie directly below a given cell, before reaching a block or the bottom of this <code>Board</code>.
+	 *	@param row the row of the cell
+	 *	@param column the column of the cell
+	 *	@return the number of rows a block at the given cell could fall
+	**/
+	public int getDropDistance(int row, int column){
+		int below = columns[column]>>>(row+1);
+		if(below==0) return numRows-1-row;
+		return Integer.numberOfTrailingZeros(below);
+	}
+	/**
+	 *	Returns a counter which changes every time the contents of this <code>Board</code> change.
+	 *	<p> This can be used to tell if a value computed from this <code>Board</code> is still up to date.
+	 *	@return the current modification counter
+	**/
+	public int getVersion(){
+		return version;
+	}
+	/**
+	 *	Marks every cell of this <code>Board</code> as changed, and as needing to be drawn again.
+	 *	@see #collectChanges(int[] result)
+	 *	@see #collectDirtyCells(int[] result)
+	**/
+	public void markAllChanged(){
+		version++;
+		for(int i = 0; i<numRows; i++){
+			changed[i] = fullRowMask;
+			dirty[i] = fullRowMask;
+		}
+	}
+	/**
+	 *	Marks every cell of this <code>Board</code> as needing to be drawn again, without affecting the cells reported by {@link #collectChanges(int[] result) collectChanges}.
+	**/
+	public void markAllDirty(){
+		for(int i = 0; i<numRows; i++){
+			dirty[i] = fullRowMask;
+		}
+	}
+	/**
+	 *	Adds the set of cells which need to be drawn again to <code>result</code>, then resets that set.
+	 *	<p> This set is kept apart from the one used by {@link #collectChanges(int[] result) collectChanges}, so that drawing does not interfere with clear detection. Unlike that set, it also includes cells whose alpha value changed.
+	 *	@param result an array with one entry per row, whose entries are OR-ed with the bitmask of cells to draw on each row
+	 *	@return <code>true</code> if any cell needs to be drawn, and <code>false</code> otherwise
+	**/
+	public boolean collectDirtyCells(int[] result){
+		boolean any = false;
+		for(int i = 0; i<numRows; i++){
+			result[i] |= dirty[i];
+			if(dirty[i]!=0) any = true;
+			dirty[i] = 0;
+		}
+		return any;
+	}
+	/**
+	 *	Copies the set of cells which have been modified since the last call to this method, then resets that set.
+	 *	<p> A cell counts as modified if it was written by {@link #setTile(int,int,Tile) setTile}, or if it was moved or cleared.
+	 *	@param result an array with one entry per row, which receives the bitmask of modified cells on each row
+	 *	@return <code>true</code> if any cell was modified, and <code>false</code> otherwise
+	**/
+	public boolean collectChanges(int[] result){
+		boolean any = false;
+		for(int i = 0; i<numRows; i++){
+			result[i] = changed[i];
+			if(changed[i]!=0) any = true;
+			changed[i] = 0;
+		}
+		return any;
+	}
+	/**
+	 *	Finds the group of same-colored blocks connected to a given cell.
+	 *	<p> The search grows the group one step in every direction at once using bitwise operations on the color plane, until the group stops growing.
+	 *	@param row the row of the starting cell
+	 *	@param column the column of the starting cell
+	 *	@param result an array with one entry per row, which receives the bitmask of the group on each row
+	 *	@return the number of blocks in the group, or 0 if the starting cell is empty
+	**/
+	public int findCluster(int row, int column, int[] result){
+		Tile tile = getTile(row,column);
+		for(int i = 0; i<numRows; i++) result[i] = 0;
+		if(tile==Tile.NONE) return 0;
+		int[] plane = colorPlanes[tile.ordinal()];
+		result[row] = 1<<column;
+		int top = row, bottom = row;
+		boolean growing = true;
+		while(growing){
+			growing = false;
+			int from = Math.max(0,top-1);
+			int to = Math.min(numRows-1,bottom+1);
+			for(int i = from; i<=to; i++){
+				int current = result[i];
+				int grown = current | (current<<1) | (current>>>1);
+				if(i>0) grown |= result[i-1];
+				if(i<numRows-1) grown |= result[i+1];
+				grown &= plane[physical(i)];
+				if(grown!=current){
+					result[i] = grown;
+					growing = true;
+					if(i<top) top = i;
+					if(i>bottom) bottom = i;
+				}
+			}
+		}
+		int count = 0;
+		for(int i = top; i<=bottom; i++){
+			count += Integer.bitCount(result[i]);
+		}
+		return count;
+	}
+}
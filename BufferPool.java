@@ -0,0 +1,47 @@
+import java.nio.*;
+import java.util.*;
+/**
+ *	A pool of direct <code>ByteBuffer</code>s of a single size, shared by the connections of a {@link GameServer GameServer}.
+ *	<p> Direct buffers are expensive to allocate and are only freed by the garbage collector, so they are handed back to the pool once they are no longer needed instead of being dropped.
+ *	At most a fixed number of free buffers are kept; any beyond that are left to the garbage collector.
+**/
+public class BufferPool{
+	private final int bufferSize;
+	private final int maxFree;
+	private final ArrayDeque<ByteBuffer> free;
+	/**
+	 *	Creates a new, empty <code>BufferPool</code>.
+	 *	@param bufferSize the capacity in bytes of every buffer in this pool
+	 *	@param maxFree the maximum number of free buffers kept for reuse
+	**/
+	public BufferPool(int bufferSize, int maxFree){
+		this.bufferSize = bufferSize;
+		this.maxFree = maxFree;
+		this.free = new ArrayDeque<ByteBuffer>();
+	}
+	/**
+	 *	Returns the capacity of the buffers in this pool.
+	 *	@return the capacity in bytes of every buffer in this pool
+	**/
+	public int getBufferSize(){
+		return bufferSize;
+	}
+	/**
+	 *	Takes a cleared buffer from this pool, allocating a new one if none is free.
+	 *	@return a cleared direct buffer of {@link #getBufferSize() getBufferSize()} bytes
+	**/
+	public synchronized ByteBuffer acquire(){
+		ByteBuffer buffer = free.pollFirst();
+		if(buffer==null) buffer = ByteBuffer.allocateDirect(bufferSize);
+		buffer.clear();
+		return buffer;
+	}
+	/**
+	 *	Returns a buffer to this pool. The buffer must not be used by the caller afterwards. Buffers which were not taken from a pool, such as read-only views of shared data, are ignored.
+	 *	@param buffer a buffer obtained from {@link #acquire() acquire()}
+	**/
+	public synchronized void release(ByteBuffer buffer){
+		if(buffer.isReadOnly() || !buffer.isDirect() || buffer.capacity()!=bufferSize || free.size()>=maxFree) return;
+		free.addFirst(buffer);
+	}
+}
@@ -0,0 +1,137 @@
+import java.util.*;
+/**
+ *	Replays the clears of a chain for display, after the chain has already been resolved by a {@link Playfield Playfield}.
+ *	<p> The animation keeps its own copy of the board as it was when the chain started. Each step of the chain (a <i>wave</i>) is recorded as the set of cells it removes.
+ *	Every frame, the alpha of each fading cell is lowered, and cells are removed once they become fully transparent, so that blocks fall exactly as they did in play.
+ *	Once a wave has fully faded out, the next wave starts fading on the following frame.
+**/
+public class ClearAnimation{
+	private static final int FADE_STEP = 20;
+	private final Board board;
+	private final int numRows;
+	private final int numColumns;
+	private final int restingAlpha;
+	private final ArrayList<int[]> waves;
+	private int numWaves;
+	private int nextWave;
+	private int fadingCount;
+	/**
+	 *	Creates a new, inactive <code>ClearAnimation</code>.
+	 *	@param numRows the number of rows of the animated board
+	 *	@param numColumns the number of columns of the animated board
+	 *	@param restingAlpha the alpha value of cells which are not fading
+	**/
+	public ClearAnimation(int numRows, int numColumns, int restingAlpha){
+		this.board = new Board(numRows,numColumns,restingAlpha);
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.restingAlpha = restingAlpha;
+		this.waves = new ArrayList<int[]>();
+		this.numWaves = 0;
+		this.nextWave = 0;
+		this.fadingCount = 0;
+	}
+	/**
+	 *	Starts recording a new chain. Any animation still in progress is discarded.
+	 *	@param source the board as it is before the first wave of the chain is removed
+	**/
+	public void start(Board source){
+		board.copyFrom(source);
+		numWaves = 0;
+		nextWave = 0;
+		fadingCount = 0;
+	}
+	/**
+	 *	Stops this animation immediately.
+	**/
+	public void cancel(){
+		numWaves = 0;
+		nextWave = 0;
+		fadingCount = 0;
+	}
+	/**
+	 *	Records the next wave of the chain. The first wave starts fading immediately.
+	 *	@param cleared a bitmask per row of the cells removed by this wave
+	 *	@param clearedTwice a bitmask per row of the cells which were flagged both as part of a color group and as part of a full line; these fade out one frame sooner
+	**/
+	public void addWave(int[] cleared, int[] clearedTwice){
+		int[] wave;
+		if(numWaves<waves.size()){
+			wave = waves.get(numWaves);
+		}else{
+			wave = new int[2*numRows];
+			waves.add(wave);
+		}
+		System.arraycopy(cleared,0,wave,0,numRows);
+		System.arraycopy(clearedTwice,0,wave,numRows,numRows);
+		numWaves++;
+		if(fadingCount==0 && nextWave==numWaves-1){
+			startWave(waves.get(nextWave++));
+		}
+	}
+	private void startWave(int[] wave){
+		for(int i = 0; i<numRows; i++){
+			int once = wave[i];
+			while(once!=0){
+				int j = Integer.numberOfTrailingZeros(once);
+				once &= once-1;
+				int twice = (wave[numRows+i]>>>j)&1;
+				board.setAlpha(i,j,restingAlpha-FADE_STEP*(1+twice));
+				fadingCount++;
+			}
+		}
+	}
+	private void nextFrame(int i){
+		int vanishing = 0;
+		for(int j = 0; j<numColumns; j++){
+			int alpha = board.getAlpha(i,j);
+			if(alpha<restingAlpha){
+				alpha = Math.max(0,alpha-FADE_STEP);
+				board.setAlpha(i,j,alpha);
+				if(alpha==0) vanishing |= 1<<j;
+			}
+		}
+		if(vanishing==0) return;
+		fadingCount -= Integer.bitCount(vanishing);
+		if(vanishing==(1<<numColumns)-1){
+			board.removeRow(i);
+			return;
+		}
+		while(vanishing!=0){
+			int j = Integer.numberOfTrailingZeros(vanishing);
+			vanishing &= vanishing-1;
+			board.removeCell(i,j);
+		}
+	}
+	/**
+	 *	Advances this animation by one frame.
+	 *	@return <code>true</code> if the animation has finished, and <code>false</code> otherwise
+	**/
+	public boolean advance(){
+		if(fadingCount>0){
+			for(int i = 0; i<numRows; i++){
+				nextFrame(i);
+			}
+			return false;
+		}
+		if(nextWave<numWaves){
+			startWave(waves.get(nextWave++));
+			return false;
+		}
+		return true;
+	}
+	/**
+	 *	Checks if this animation still has frames to show.
+	 *	@return <code>true</code> if some cells are still fading or waiting to fade, and <code>false</code> otherwise
+	**/
+	public boolean isActive(){
+		return fadingCount>0 || nextWave<numWaves;
+	}
+	/**
+	 *	Returns the board as it should currently be displayed.
+	 *	@return the animated <code>Board</code>
+	**/
+	public Board getBoard(){
+		return board;
+	}
+}
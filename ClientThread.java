@@ -4,49 +4,105 @@ import java.awt.*;
 import java.io.*;
 import java.util.*;
 import java.net.*;
+import java.nio.*;
 import java.awt.event.*;
 /**
- *	The <code>ClientThread</code> class is a <code>Thread</code> which handles the server side of a single client-server communication line.
+ *	The <code>ClientThread</code> class is a <code>Thread</code> which handles the client side of a single client-server communication line.
+ *	<p> Messages are exchanged as frames (see {@link MessageFraming MessageFraming}). The messages of a tick are queued by {@link #sendString(String) sendString} and {@link #sendState() sendState}, and written together by {@link #flush() flush}.
+ *	Received frames are read into a single reusable buffer, and state frames are decoded from it in place.
 **/
 public class ClientThread extends Thread{
 	private GameClient gameClient;
 	private Socket clientSocket;
-	private Scanner receiveStream; 
-	private PrintWriter sendStream;
+	private DataInputStream receiveStream; 
+	private OutputStream sendStream;
+	private ByteBuffer outgoing;
+	private ByteBuffer incoming;
 	private int currentScoreMilestone;
 	/**
 	 *	Creates a new <code>ClientThread</code>.
 	 *	@param gameClient the <code>GameClient</code> this <code>ClientThread</code> belongs to
-	 *	@param clientSocket the <code>Socket</code> this <code>ClientThread</code> communicates through
+	 *	@param clientSocket the <code>Socket</code> this <code>ClientThread</code> communicates through, configured by {@link MessageFraming#configure(Socket) MessageFraming.configure}
 	**/
 	public ClientThread(GameClient gameClient, Socket clientSocket) throws IOException{
 		super("Client thread");
 		this.gameClient = gameClient;
 		this.clientSocket = clientSocket;
-		this.sendStream = new PrintWriter(clientSocket.getOutputStream());
-		this.receiveStream = new Scanner(new InputStreamReader(clientSocket.getInputStream()));
+		this.sendStream = clientSocket.getOutputStream();
+		this.receiveStream = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream(),MessageFraming.SOCKET_BUFFER_BYTES));
+		this.outgoing = ByteBuffer.allocate(4096);
+		this.incoming = ByteBuffer.allocate(4096);
 		this.currentScoreMilestone = 150;
 	}
 	/**
-	 *	Sends a <code>String</code> to the server.
+	 *	Queues a <code>String</code> to be sent to the server in a {@link MessageFraming#TEXT TEXT} frame with the next {@link #flush() flush}.
 	 *	@param message the <code>String</code> to send.
 	**/
 	public synchronized void sendString(String message){
-		synchronized(this){
-			sendStream.println(message);
-			sendStream.flush();
-			sendStream.println("EOM");
-			sendStream.flush();
+		byte[] bytes = message.getBytes(MessageFraming.CHARSET);
+		ensureRoom(MessageFraming.HEADER_BYTES+1+bytes.length);
+		outgoing.putInt(1+bytes.length);
+		outgoing.put(MessageFraming.TEXT);
+		outgoing.put(bytes);
+	}
+	/**
+	 *	Queues the state of the client, written by {@link GameClient#writeState(ByteBuffer) GameClient.writeState} straight into the outgoing buffer, to be sent to the server in a {@link MessageFraming#STATE STATE} frame with the next {@link #flush() flush}.
+	**/
+	public synchronized void sendState(){
+		ensureRoom(MessageFraming.HEADER_BYTES+1+GameClient.STATE_BYTES);
+		int start = outgoing.position();
+		outgoing.position(start+MessageFraming.HEADER_BYTES);
+		outgoing.put(MessageFraming.STATE);
+		gameClient.writeState(outgoing);
+		outgoing.putInt(start,outgoing.position()-start-MessageFraming.HEADER_BYTES);
+	}
+	private void ensureRoom(int bytes){
+		if(outgoing.remaining()>=bytes) return;
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(outgoing.capacity()*2,outgoing.position()+bytes));
+		outgoing.flip();
+		larger.put(outgoing);
+		outgoing = larger;
+	}
+	/**
+	 *	Writes every queued message to the server, with a single write.
+	 *	@throws IOException if the connection fails
+	**/
+	public synchronized void flush() throws IOException{
+		if(outgoing.position()==0) return;
+		sendStream.write(outgoing.array(),0,outgoing.position());
+		sendStream.flush();
+		outgoing.clear();
+	}
+	/**
+	 *	Reads the next frame from the server. A state frame is handed to the <code>GameClient</code> as it is read.
+	 *	@return the text of the frame, or <code>null</code> if it was a state frame
+	 *	@throws IOException if the connection fails, or the frame is not valid
+	**/
+	private String receiveFrame() throws IOException{
+		int length = MessageFraming.checkLength(receiveStream.readInt(),MessageFraming.MAX_FRAME_BYTES);
+		if(length>incoming.capacity()) incoming = ByteBuffer.allocate(Math.max(length,incoming.capacity()*2));
+		receiveStream.readFully(incoming.array(),0,length);
+		incoming.clear();
+		incoming.limit(length);
+		byte type = incoming.get();
+		if(type==MessageFraming.STATE){
+			gameClient.processState(incoming);
+			return null;
 		}
+		if(type!=MessageFraming.TEXT) throw new IOException("Unknown frame type: "+type);
+		return MessageFraming.getText(incoming);
 	}
 	/**
-	 *	The communication loop of this <code>ServerThread</code>.
+	 *	The communication loop of this <code>ClientThread</code>.
+	 *	<p> Every tick, the state of the client is sent to the server, and messages are processed until the server's reply to it arrives.
 	**/
 	@Override
 	public void run(){
 		System.err.println("Thread index: "+Thread.getAllStackTraces().keySet().size());
 		try{
-			String[] input = receiveStream.nextLine().split(",");
+			String greeting = receiveFrame();
+			if(greeting==null) throw new IOException("No client ID received.");
+			String[] input = greeting.split(",");
 			gameClient.setClientID( Integer.parseInt(input[1]) );
 			System.out.println("Client has connected, player ID received:" + input[1] +".");
 			while(true){
@@ -54,12 +110,10 @@ public class ClientThread extends Thread{
 				if(newGarbage>0){
 					sendString(gameClient.getClientID() + ",sendGarbage,"+newGarbage);
 					currentScoreMilestone+=newGarbage*150;
-					sleep(20);
 				}
-				sendString(gameClient.getClientID() + ",PlayfieldDataBegin," +  gameClient.getMyField().toString() + ",PlayfieldDataEnd");
-				while(receiveStream.hasNextLine()) {
-					String feedback = receiveStream.nextLine();
-					if(feedback.equals("EOM")) break;
+				sendState();
+				flush();
+				for(String feedback; (feedback = receiveFrame())!=null;){
 					gameClient.process(feedback);
 				}
 				sleep(30);
@@ -67,6 +121,9 @@ public class ClientThread extends Thread{
 		}catch(InterruptedException e){
 			System.err.println("Thread:"+this.getName()+" properly interrupted");
 			return;
+		}catch(IOException e){
+			System.err.println("Connection to server lost: "+e.getMessage());
+			return;
 		}
 	}
 }
@@ -53,9 +53,7 @@ public final class Commands{
 	**/
 	public static class MoveLeft extends Command{
 		protected void execute(){
-			if(source.getCurrentPiece()!=null){
-				source.getCurrentPiece().move(-1,0);
-			}
+			source.applyInput(Input.LEFT);
 		}
 	}
 	/**
@@ -63,9 +61,7 @@ public final class Commands{
 	**/
 	public static class MoveRight extends Command{
 		protected void execute(){
-			if(source.getCurrentPiece()!=null){
-				source.getCurrentPiece().move(1,0);
-			}
+			source.applyInput(Input.RIGHT);
 		}
 	}
 	/**
@@ -73,9 +69,7 @@ public final class Commands{
 	**/
 	public static class MoveUp extends Command{
 		protected void execute(){
-			if(source.getCurrentPiece()!=null){
-				source.getCurrentPiece().move(0,-1);
-			}
+			source.applyInput(Input.UP);
 		}
 	}
 	/**
@@ -83,9 +77,7 @@ public final class Commands{
 	**/
 	public static class MoveDown extends Command{
 		protected void execute(){
-			if(source.getCurrentPiece()!=null){
-				source.getCurrentPiece().move(0,1);
-			}
+			source.applyInput(Input.DOWN);
 		}
 	}
 	/**
@@ -93,9 +85,7 @@ public final class Commands{
 	**/
 	public static class Rotate extends Command{
 		protected void execute(){
-			if(source.getCurrentPiece()!=null){
-				source.getCurrentPiece().rotate();
-			}
+			source.applyInput(Input.ROTATE);
 		}
 	}
 	/**
@@ -103,7 +93,7 @@ public final class Commands{
 	**/
 	public static class Hold extends Command{
 		protected void execute(){
-			source.hold();
+			source.applyInput(Input.HOLD);
 		}
 	}
 	/**
@@ -111,9 +101,7 @@ public final class Commands{
 	**/
 	public static class HardDrop extends Command{
 		protected void execute(){
-			if(source.getCurrentPiece()!=null){
-				source.getCurrentPiece().hardDrop();
-			}
+			source.applyInput(Input.HARD_DROP);
 		}
 	}
 	
@@ -0,0 +1,102 @@
+import java.awt.*;
+/**
+ *	The areas of a surface which need to be drawn again, kept as a short list of rectangles.
+ *	<p> A rectangle which overlaps or touches one already in the region is merged into it, so that changes close to each other are drawn again in one pass.
+ *	Once {@link #MAX_RECTANGLES MAX_RECTANGLES} rectangles are held, further rectangles are merged into the last one, so the region may cover more than what was added, but never less.
+ *	<p> Rectangles are added relative to an origin, so that an object can report its changes in its own coordinates.
+**/
+public class DirtyRegion{
+	/**
+	 *	The largest number of separate rectangles held by a <code>DirtyRegion</code>.
+	**/
+	public static final int MAX_RECTANGLES = 16;
+	private final Rectangle[] rectangles;
+	private final Rectangle added;
+	private int count;
+	private int originX, originY;
+	/**
+	 *	Creates a new, empty <code>DirtyRegion</code>, with its origin at (0, 0).
+	**/
+	public DirtyRegion(){
+		this.rectangles = new Rectangle[MAX_RECTANGLES];
+		for(int k = 0; k<rectangles.length; k++){
+			rectangles[k] = new Rectangle();
+		}
+		this.added = new Rectangle();
+		this.count = 0;
+	}
+	/**
+	 *	Sets the point which the coordinates given to {@link #add(int,int,int,int) add} are relative to.
+	 *	@param x the x coordinate of the origin
+	 *	@param y the y coordinate of the origin
+	**/
+	public void setOrigin(int x, int y){
+		originX = x;
+		originY = y;
+	}
+	/**
+	 *	Adds a rectangle to this region. Empty rectangles are ignored.
+	 *	@param x the x coordinate of the upper-left corner of the rectangle, relative to the origin
+	 *	@param y the y coordinate of the upper-left corner of the rectangle, relative to the origin
+	 *	@param width the width of the rectangle
+	 *	@param height the height of the rectangle
+	**/
+	public void add(int x, int y, int width, int height){
+		if(width<=0 || height<=0) return;
+		added.setBounds(originX+x,originY+y,width,height);
+		for(int k = 0; k<count; k++){
+			Rectangle r = rectangles[k];
+			if(r.x<=added.x+added.width && added.x<=r.x+r.width && r.y<=added.y+added.height && added.y<=r.y+r.height){
+				added.add(r);
+				count--;
+				rectangles[k] = rectangles[count];
+				rectangles[count] = r;
+				k = -1;
+			}
+		}
+		if(count==rectangles.length){
+			rectangles[count-1].add(added);
+		}else{
+			rectangles[count].setBounds(added);
+			count++;
+		}
+	}
+	/**
+	 *	Adds a rectangle to this region. Empty rectangles are ignored.
+	 *	@param r the rectangle to add, relative to the origin
+	**/
+	public void add(Rectangle r){
+		add(r.x,r.y,r.width,r.height);
+	}
+	/**
+	 *	Checks if this region is empty.
+	 *	@return <code>true</code> if nothing needs to be drawn again, and <code>false</code> otherwise
+	**/
+	public boolean isEmpty(){
+		return count==0;
+	}
+	/**
+	 *	Returns the number of rectangles in this region.
+	 *	@return the number of rectangles
+	**/
+	public int size(){
+		return count;
+	}
+	/**
+	 *	Returns one of the rectangles of this region. The rectangle is owned by the region, and is only valid until the region changes.
+	 *	@param n the index of the rectangle, from 0 to <code>size()-1</code>
+	 *	@return the rectangle at index <code>n</code>, in absolute coordinates
+	**/
+	public Rectangle get(int n){
+		if(n<0 || n>=count) throw new IndexOutOfBoundsException("Rectangle "+n+" of "+count);
+		return rectangles[n];
+	}
+	/**
+	 *	Removes every rectangle from this region, and moves its origin back to (0, 0).
+	**/
+	public void clear(){
+		count = 0;
+		originX = 0;
+		originY = 0;
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.*;
 import java.io.*;
 import java.util.*;
 import java.net.*;
+import java.nio.*;
 import java.awt.event.*;
 
 enum ClientState{
@@ -13,11 +14,17 @@ enum ClientState{
  *	The <code>GameClient</code> class handles a single {@link ClientThread ClientThread} and  {@link GameInstance GameInstance}.
 **/
 class GameClient extends NetworkingComponent{
+	/**
+	 *	Largest number of bytes written by {@link #writeState(ByteBuffer) writeState}.
+	**/
+	public static final int STATE_BYTES = 5+SnapshotSender.HEADER_BYTES+StateCodec.MAX_PLAYFIELD_BYTES;
 	private Integer myClientID;
 	private ClientThread myClientThread;
 	private GameInstance myGameInstance;
 	private ClientState currentState;
 	private Socket mySocket;
+	private final SnapshotSender snapshotSender;
+	private final SnapshotReceiver snapshotReceiver;
 	/**
 	 *	Creates a new  <code>GameClient</code> with an associated <code>GameInstance</code>.
 	 *	@param gameInstance the <code>GameInstance</code> to associate this <code>GameClient</code> with
@@ -28,6 +35,8 @@ class GameClient extends NetworkingComponent{
 		this.mySocket = null;
 		this.myClientID = null;
 		this.currentState = ClientState.INACTIVE;
+		this.snapshotSender = new SnapshotSender();
+		this.snapshotReceiver = new SnapshotReceiver();
 	}
 	/**
 	 *	Connects to a given IP address, and starts a new {@link ClientThread ClientThread}.
@@ -36,7 +45,9 @@ class GameClient extends NetworkingComponent{
 	**/
 	public boolean connectTo(String IPAddress){
 		try{
-			mySocket = new Socket(IPAddress,PORT_NUMBER);
+			mySocket = new Socket();
+			MessageFraming.configure(mySocket);
+			mySocket.connect(new InetSocketAddress(IPAddress,PORT_NUMBER));
 			myClientThread = new ClientThread(this,mySocket);
 			myClientThread.start();
 			return true;
@@ -88,12 +99,15 @@ class GameClient extends NetworkingComponent{
 	}
 	/**
 	 *	Processes an instruction from the server.
-	 *	@param data an instruction generated by a {@link GameServer GameServer} or {@link ServerThread ServerThread}
+	 *	@param data an instruction generated by a {@link GameServer GameServer} or {@link ServerConnection ServerConnection}
 	**/
 	public synchronized void process(String data){
 		if(currentState == ClientState.INACTIVE) return;
-		if(data.equals("StartGame")){
+		if(data.split(",")[0].equals("StartGame")){
 			System.err.println(myClientID+" received StartGame command.");
+			String[] startData = data.split(",");
+			long seed = startData.length>1 ? Long.parseLong(startData[1]) : new Random().nextLong();
+			myGameInstance.getPlayfield(myClientID).startMatch(seed);
 			myGameInstance.getPlayfield(myClientID).startLogic();
 			currentState = ClientState.INGAME;
 		}else if(data.equals("EndGame")){
@@ -103,8 +117,27 @@ class GameClient extends NetworkingComponent{
 		}else if(data.split(",")[0].equals("addGarbage")){
 			System.err.println(myClientID+" received addGarbage command.");
 			myGameInstance.getPlayfield(myClientID).addGarbageToQueue(Integer.parseInt(data.split(",")[1]));
-		}else if(data.indexOf("GameInstanceEnd")>=0){
-			myGameInstance.loadData(data,myClientID);
 		}
 	}
+	/**
+	 *	Processes the state of the game sent by the server, read in place from the frame it arrived in.
+	 *	@param state the body of a state frame assembled by {@link StateBroadcast StateBroadcast}: the acknowledgement of the latest snapshot the server has applied, as a signed varint, followed by a snapshot of the other players
+	**/
+	public synchronized void processState(ByteBuffer state){
+		if(currentState == ClientState.INACTIVE) return;
+		try{
+			snapshotSender.acknowledge(StateCodec.getSignedVarint(state));
+			snapshotReceiver.receive(state,myGameInstance,myClientID,true);
+		}catch(RuntimeException e){
+			System.err.println("Bad data received.");
+		}
+	}
+	/**
+	 *	Writes the next snapshot of the <code>Playfield</code> controlled by this <code>GameClient</code>, as the body of a state frame.
+	 *	@param buffer the buffer to write to, from its position, with room for {@link #STATE_BYTES STATE_BYTES} bytes
+	**/
+	public synchronized void writeState(ByteBuffer buffer){
+		StateCodec.putSignedVarint(buffer,snapshotReceiver.getAck());
+		snapshotSender.encode(myGameInstance,new int[]{myClientID},buffer);
+	}
 }
@@ -9,13 +9,40 @@ import javax.imageio.*;
 import java.util.*;
 /**
  *	A <code>JComponent</code> which displays a {@link GameInstance GameInstance}.
+ *	<p> Up to 4 players are shown with fixed layouts. With more players, the focused board is shown on the left and every other board is placed in a grid on the right, with the largest tile size that fits; such small boards are drawn at low detail by the {@link PlayfieldRenderer PlayfieldRenderer}.
+ *	<p> A <code>GameDisplay</code> does not schedule its own repaints. It is drawn into another surface through {@link #render(Graphics2D) render(Graphics2D)}, or through {@link #updateScene(Graphics2D) updateScene} and {@link #drawScene(Graphics2D) drawScene}, by a single caller which drives it every frame.
+ *	When Swing paints it along with its parent, the cached image is only copied, so that painting on the event dispatch thread never takes the changes which that caller has yet to copy.
+ *	<p> Everything is drawn into a cached image of the whole display. Each frame, the {@link PlayfieldRenderer PlayfieldRenderer} reports the areas of each board which changed, such as the cells of a locked piece, the old and new place of a moving piece, or a new score, and only those areas are cleared and drawn again. {@link #updateScene(Graphics2D) updateScene} returns them, so that a caller which keeps its own copy of the screen can also copy just those areas.
 **/
 public class GameDisplay extends JComponent{
 	private static int numObjects = 0;
+	private static final int MOSAIC_LEFT = 380;
+	private static final int MOSAIC_TOP = 30;
+	private static final int MOSAIC_WIDTH = 410;
+	private static final int MOSAIC_HEIGHT = 540;
+	private static final double MOSAIC_CELL_WIDTH = 11.25;
+	private static final double MOSAIC_CELL_HEIGHT = 25;
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 600;
+	private static final int TIME_X = 370;
+	private static final int TIME_BASELINE = 590;
 	private GameInstance gameInstance;
 	private int focusedPlayfield = 0;
-	private int[] playfieldOrder;
+	private int[] playfieldOrder = new int[0];
+	private int orderedFocus = -1;
+	private int mosaicColumns;
+	private int mosaicTileSize;
+	private int[] slotX = new int[0];
+	private int[] slotY = new int[0];
+	private int[] slotTileSize = new int[0];
+	private Rectangle[] slotBounds = new Rectangle[0];
+	private BufferedImage scene = null;
+	private final DirtyRegion dirtyRegion = new DirtyRegion();
+	private final Rectangle scratch = new Rectangle();
 	private Font uiFont;
+	private final PlayfieldRenderer playfieldRenderer;
+	private final TextLayer timeLayer = new TextLayer();
+	private int shownTime = -1;
 	
 	/**
 	 *	Creates a <code>GameDisplay</code> with an associated {@link GameInstance GameInstance}.
@@ -23,21 +50,10 @@ public class GameDisplay extends JComponent{
 	**/
 	public GameDisplay(GameInstance gameInstance){
 		this.gameInstance = gameInstance;
-		this.setPreferredSize(new Dimension(800,600));
+		this.setPreferredSize(new Dimension(WIDTH,HEIGHT));
 		this.setBorder(new EmptyBorder(0,0,0,0));
-		javax.swing.Timer timer = new javax.swing.Timer(30,new ActionListener(){
-			public void actionPerformed(ActionEvent e){
-				repaint();
-			}
-		});
-		timer.start();
-		try{
-			uiFont = Font.createFont(Font.TRUETYPE_FONT, new File("joystix monospace.ttf"));
-			uiFont = uiFont.deriveFont(24f);
-		}catch (Exception e){
-			uiFont = null;
-			System.out.println("Failed to load resources.");
-		}
+		this.playfieldRenderer = new PlayfieldRenderer();
+		uiFont = Assets.getFont(Assets.FONT_UI,24f);
 	}	
 	private void addCommand(KeyStroke ks, Commands.Command c){
 		this.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(ks,c.getCommandName());
@@ -58,59 +74,161 @@ public class GameDisplay extends JComponent{
 		focusedPlayfield = playerID;
 	}
 	/**
-	 *	Draws this <code>GameDisplay</code> using the provided <code>Graphics</code> context.
+	 *	Draws this <code>GameDisplay</code> using the provided <code>Graphics</code> context, as of the last call to {@link #updateScene(Graphics2D) updateScene}.
 	 *	@param g the <code>Graphics</code> context to draw this GameDisplay with.
 	**/
 	protected void paintComponent(Graphics g){
-		Graphics2D g2d = (Graphics2D)g;
-		
-		int time = gameInstance.getTime();
-		String timeString;
-		if(time%60<10) timeString = "0"+(time/60)+":0"+(time%60);
-		else timeString = "0"+(time/60)+":"+(time%60);
-		g2d.setPaint(Color.WHITE);
-		g2d.setFont(uiFont);
-		g2d.drawString(timeString,370,590);
-		
+		drawScene((Graphics2D)g);
+	}
+	/**
+	 *	Draws the contents of this <code>GameDisplay</code> at the origin of the given <code>Graphics2D</code> context. May be called from outside the event dispatch thread; calls are serialised, since the cached drawing resources are not thread-safe.
+	 *	<p> This is the same as calling {@link #updateScene(Graphics2D) updateScene}, then {@link #drawScene(Graphics2D) drawScene}, so the areas which changed are not reported to the next caller of <code>updateScene</code>.
+	 *	@param g2d the <code>Graphics2D</code> context with which to draw
+	**/
+	public synchronized void render(Graphics2D g2d){
+		updateScene(g2d);
+		drawScene(g2d);
+	}
+	/**
+	 *	Brings the cached image of this <code>GameDisplay</code> up to date, drawing again only the areas which changed since the previous call.
+	 *	<p> The whole image is drawn again when the number of players or the focused playfield changes.
+	 *	@param context a <code>Graphics2D</code> context of the surface on which the image will be drawn, whose device and rendering hints are used
+	 *	@return the areas of the image which changed, which are owned by this <code>GameDisplay</code> and only valid until the next call
+	**/
+	public synchronized DirtyRegion updateScene(Graphics2D context){
 		int numPlayers = gameInstance.getNumberOfPlayers();
+		boolean redrawAll = scene==null;
+		if(numPlayers!=playfieldOrder.length || focusedPlayfield!=orderedFocus){
+			updateLayout(numPlayers);
+			redrawAll = true;
+		}
+		if(scene==null){
+			scene = context.getDeviceConfiguration().createCompatibleImage(WIDTH,HEIGHT,Transparency.TRANSLUCENT);
+		}
+		Graphics2D g2d = scene.createGraphics();
+		try{
+			g2d.setRenderingHints(context.getRenderingHints());
+			dirtyRegion.clear();
+			int time = gameInstance.getTime();
+			if(time!=shownTime){
+				String timeString;
+				if(time%60<10) timeString = "0"+(time/60)+":0"+(time%60);
+				else timeString = "0"+(time/60)+":"+(time%60);
+				g2d.setPaint(Color.WHITE);
+				dirtyRegion.add(timeLayer.getBounds(g2d,TIME_X,TIME_BASELINE,scratch));
+				timeLayer.setText(timeString,uiFont);
+				dirtyRegion.add(timeLayer.getBounds(g2d,TIME_X,TIME_BASELINE,scratch));
+				shownTime = time;
+			}
+			for(int i = 0; i<playfieldOrder.length; i++){
+				Playfield playfield = gameInstance.getPlayfield(playfieldOrder[i]);
+				dirtyRegion.setOrigin(slotX[i],slotY[i]);
+				g2d.translate(slotX[i],slotY[i]);
+				playfieldRenderer.update(g2d,playfield,slotTileSize[i],i==0,dirtyRegion);
+				g2d.translate(-slotX[i],-slotY[i]);
+				slotBounds[i].setBounds(playfieldRenderer.getBounds(playfield));
+				slotBounds[i].translate(slotX[i],slotY[i]);
+			}
+			dirtyRegion.setOrigin(0,0);
+			if(redrawAll){
+				dirtyRegion.clear();
+				dirtyRegion.add(0,0,WIDTH,HEIGHT);
+			}
+			for(int n = 0; n<dirtyRegion.size(); n++){
+				Rectangle area = dirtyRegion.get(n);
+				g2d.setClip(area);
+				g2d.setComposite(AlphaComposite.Clear);
+				g2d.fill(area);
+				g2d.setComposite(AlphaComposite.SrcOver);
+				g2d.setPaint(Color.WHITE);
+				timeLayer.draw(g2d,TIME_X,TIME_BASELINE);
+				for(int i = 0; i<playfieldOrder.length; i++){
+					if(!slotBounds[i].intersects(area)) continue;
+					g2d.translate(slotX[i],slotY[i]);
+					playfieldRenderer.paint(g2d,gameInstance.getPlayfield(playfieldOrder[i]),slotTileSize[i],i==0);
+					g2d.translate(-slotX[i],-slotY[i]);
+				}
+			}
+		}finally{
+			g2d.dispose();
+		}
+		return dirtyRegion;
+	}
+	/**
+	 *	Draws the cached image of this <code>GameDisplay</code>, as of the last call to {@link #updateScene(Graphics2D) updateScene}, at the origin of the given <code>Graphics2D</code> context. Only the part inside the clip of the context is copied.
+	 *	@param g2d the <code>Graphics2D</code> context with which to draw
+	**/
+	public synchronized void drawScene(Graphics2D g2d){
+		if(scene!=null) g2d.drawImage(scene,0,0,null);
+	}
+	private void updateLayout(int numPlayers){
 		playfieldOrder = new int[numPlayers];
+		orderedFocus = focusedPlayfield;
 		for(int i = 0; i<numPlayers; i++){
 			playfieldOrder[i] = i;
 		}
 		if(numPlayers>1){
 			playfieldOrder[0] = focusedPlayfield;
 			playfieldOrder[focusedPlayfield] = 0;
-			Arrays.sort(playfieldOrder,1,numPlayers-1);
+			Arrays.sort(playfieldOrder,1,numPlayers);
+		}
+		int numBoards = Math.max(1,numPlayers-1);
+		mosaicColumns = 1;
+		mosaicTileSize = 0;
+		for(int columns = 1; columns<=numBoards; columns++){
+			int rows = (numBoards+columns-1)/columns;
+			int ts = (int)Math.min(MOSAIC_WIDTH/(MOSAIC_CELL_WIDTH*columns),MOSAIC_HEIGHT/(MOSAIC_CELL_HEIGHT*rows));
+			if(ts>mosaicTileSize){
+				mosaicTileSize = ts;
+				mosaicColumns = columns;
+			}
+		}
+		slotX = new int[numPlayers];
+		slotY = new int[numPlayers];
+		slotTileSize = new int[numPlayers];
+		slotBounds = new Rectangle[numPlayers];
+		for(int i = 0; i<numPlayers; i++){
+			slotBounds[i] = new Rectangle();
 		}
 		switch(numPlayers){
+			case 0:
+			break;
 			case 1:
-			g2d.translate(320,50);
-			gameInstance.getPlayfield(playfieldOrder[0]).draw(g2d,20,true);
+			setSlot(0,320,50,20);
 			break;
 			case 2:
-			g2d.translate(120,50);
-			gameInstance.getPlayfield(playfieldOrder[0]).draw(g2d,20,true);
-			g2d.translate(360,0);
-			gameInstance.getPlayfield(playfieldOrder[1]).draw(g2d,20,false);
+			setSlot(0,120,50,20);
+			setSlot(1,480,50,20);
 			break;
 			case 3:
-			g2d.translate(90,50);
-			gameInstance.getPlayfield(playfieldOrder[0]).draw(g2d,20,true);
-			g2d.translate(320,30);
-			gameInstance.getPlayfield(playfieldOrder[1]).draw(g2d,15,false);
-			g2d.translate(170,0);
-			gameInstance.getPlayfield(playfieldOrder[2]).draw(g2d,15,false);
+			setSlot(0,90,50,20);
+			setSlot(1,410,80,15);
+			setSlot(2,580,80,15);
 			break;
 			case 4:
-			g2d.translate(90,50);
-			gameInstance.getPlayfield(playfieldOrder[0]).draw(g2d,20,true);
-			g2d.translate(300,50);
-			gameInstance.getPlayfield(playfieldOrder[1]).draw(g2d,12,false);
-			g2d.translate(135,0);
-			gameInstance.getPlayfield(playfieldOrder[2]).draw(g2d,12,false);
-			g2d.translate(135,0);
-			gameInstance.getPlayfield(playfieldOrder[3]).draw(g2d,12,false);
+			setSlot(0,90,50,20);
+			setSlot(1,390,100,12);
+			setSlot(2,525,100,12);
+			setSlot(3,660,100,12);
+			break;
+			default:
+			setSlot(0,90,50,20);
+			int ts = mosaicTileSize;
+			for(int i = 1; i<numPlayers; i++){
+				int column = (i-1)%mosaicColumns;
+				int row = (i-1)/mosaicColumns;
+				setSlot(i,
+					MOSAIC_LEFT+(int)((column*MOSAIC_CELL_WIDTH+0.2)*ts),
+					MOSAIC_TOP+(int)((row*MOSAIC_CELL_HEIGHT+2)*ts),
+					ts
+				);
+			}
 		}
 	}
+	private void setSlot(int i, int x, int y, int tileSize){
+		slotX[i] = x;
+		slotY[i] = y;
+		slotTileSize[i] = tileSize;
+	}
 	
 }
\ No newline at end of file
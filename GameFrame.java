@@ -4,11 +4,13 @@ import java.awt.*;
 import java.awt.event.*;
 /**
  *	Main frame of the game. Stores high-level objects, namely one {@link GameServer GameServer} and one {@link GameClient GameClient}.
+ *	<p> The current {@link MenuState.MenuPanel MenuPanel} is drawn by a single {@link RenderLoop RenderLoop}, which is handed the new panel on every state change.
 **/
 public class GameFrame extends JFrame{
 	private GameServer gameServer = null;
 	private GameClient gameClient = null;
 	public String playerName = null;
+	private final RenderLoop renderLoop = new RenderLoop();
 	/**
 	 *	Creates a new <code>GameFrame</code>, and sets it to the {@link MenuState.MainMenu MenuState.MainMenu} state.
 	**/
@@ -20,6 +22,7 @@ public class GameFrame extends JFrame{
 		this.setResizable(false);
 		this.pack();
 		this.setVisible(true);
+		renderLoop.start();
 	}
 	/**
 	 *	Sets the state of this <code>GameFrame</code>.
@@ -30,6 +33,14 @@ public class GameFrame extends JFrame{
 		this.getContentPane().add(newState);
 		this.revalidate();
 		this.repaint();
+		renderLoop.setTarget(newState);
+	}
+	/**
+	 *	Returns the {@link RenderLoop RenderLoop} which draws this <code>GameFrame</code>.
+	 *	@return the <code>RenderLoop</code> of this <code>GameFrame</code>
+	**/
+	public RenderLoop getRenderLoop(){
+		return renderLoop;
 	}
 	/**
 	 *	Instantiates a {@link GameServer GameServer}, properly destroying any existing <code>GameServer</code>s if they exist.
@@ -1,3 +1,4 @@
+import java.nio.*;
 import java.util.*;
 import java.util.concurrent.*;
 /**
@@ -97,6 +98,14 @@ public class GameInstance{
 		while(playfields.get(playerID)==null){addPlayer();}
 		return playfields.get(playerID);
 	}
+	/**
+	 *	Obtains the <code>Playfield</code> associated with a given player ID, without creating it.
+	 * @param playerID a player ID
+	 * @return the <code>Playfield</code> associated with the given player ID, or <code>null</code> if there is none
+	**/
+	public Playfield findPlayfield(int playerID){
+		return playfields.get(playerID);
+	}
 	
 	private String getDataBlock(String data, String startToken, String endToken){
 		int startIndex = data.indexOf(startToken)+startToken.length()+1;
@@ -121,6 +130,47 @@ public class GameInstance{
 			}
 		}
 	}
+	/**
+	 *	Writes all the data of this <code>GameInstance</code> in the binary format of {@link StateCodec StateCodec}: the version of the format, the game time, and the player ID and data of every {@link Playfield Playfield}.
+	 *	<p> The data of each <code>Playfield</code> is preceded by its length in two bytes, so that a reader can skip it.
+	 *	@param buffer the buffer to write to; it needs {@link StateCodec#MAX_PLAYFIELD_BYTES StateCodec.MAX_PLAYFIELD_BYTES} bytes per player
+	**/
+	public synchronized void writeTo(ByteBuffer buffer){
+		StateCodec.putVersion(buffer);
+		StateCodec.putVarint(buffer,gameTime);
+		StateCodec.putVarint(buffer,numPlayers);
+		for(int i = 0; i<numPlayers; i++){
+			StateCodec.putVarint(buffer,i);
+			int start = buffer.position();
+			buffer.putShort((short)0);
+			playfields.get(i).writeTo(buffer);
+			buffer.putShort(start,(short)(buffer.position()-start-2));
+		}
+	}
+	/**
+	 *	Sets the data of this <code>GameInstance</code> from data written by {@link #writeTo(ByteBuffer) writeTo(ByteBuffer)}.
+	 *	<p> If <code>playerIDToOmit</code> is not <code>null</code>, the data under the player ID specified by <code>playerIDToOmit</code> will <b>NOT</b> be overwritten.
+	 *	@param buffer the buffer to read from
+	 *	@param playerIDToOmit if this parameter is not <code>null</code>, data for this player ID will be ignored.
+	 *	@throws IllegalArgumentException if the data was written with another version of the format, or is not valid
+	 *	@throws BufferUnderflowException if the data is truncated
+	**/
+	public synchronized void readFrom(ByteBuffer buffer, Integer playerIDToOmit){
+		StateCodec.checkVersion(buffer);
+		gameTime = StateCodec.getVarint(buffer);
+		int count = StateCodec.getVarint(buffer);
+		for(int i = 0; i<count; i++){
+			int playerID = StateCodec.getVarint(buffer);
+			int length = buffer.getShort() & 0xFFFF;
+			int end = buffer.position()+length;
+			if(end>buffer.limit()) throw new BufferUnderflowException();
+			if(playerIDToOmit==null || playerIDToOmit!=playerID){
+				while(playfields.get(playerID)==null){addPlayer();}
+				playfields.get(playerID).readFrom(buffer);
+			}
+			buffer.position(end);
+		}
+	}
 	/**
 	 *	Generates a <code>String</code> containing all the data of this <code>GameInstance</code>.
 	 *	<p> This string returned by this function can be parsed by  {@link #loadData(String,Integer) loadData(String objectData, Integer playerIDToOmit)}.
@@ -0,0 +1,103 @@
+import java.util.*;
+/**
+ *	Drives the logic of every running {@link Playfield Playfield} from a single thread.
+ *	<p> The loop advances in fixed steps of {@link #STEP_NANOS STEP_NANOS} using an accumulator over <code>System.nanoTime()</code>.
+ *	Playfields are ticked in the order they were registered. If the loop falls behind, at most
+ *	{@link #MAX_STEPS_PER_FRAME MAX_STEPS_PER_FRAME} steps are run at once and the remaining time is dropped.
+**/
+public class GameLoop extends Thread{
+	/**
+	 *	Length of a single logic step, in nanoseconds.
+	**/
+	public static final long STEP_NANOS = 33000000L;
+	/**
+	 *	Maximum number of steps run back to back when catching up.
+	**/
+	public static final int MAX_STEPS_PER_FRAME = 5;
+	private static GameLoop instance = null;
+
+	private final ArrayList<Playfield> playfields;
+	private volatile Playfield[] snapshot;
+
+	private GameLoop(){
+		super("GameLoop");
+		this.playfields = new ArrayList<Playfield>();
+		this.snapshot = new Playfield[0];
+		setDaemon(true);
+	}
+	/**
+	 *	Returns the shared <code>GameLoop</code>, starting it if it is not yet running.
+	 *	@return the shared <code>GameLoop</code>
+	**/
+	public static synchronized GameLoop getInstance(){
+		if(instance==null){
+			instance = new GameLoop();
+			instance.start();
+		}
+		return instance;
+	}
+	/**
+	 *	Adds a <code>Playfield</code> to this loop. It is ticked after every <code>Playfield</code> registered before it.
+	 *	<p> Registering a <code>Playfield</code> that is already registered has no effect.
+	 *	@param p the <code>Playfield</code> to tick
+	**/
+	public synchronized void register(Playfield p){
+		if(playfields.contains(p)) return;
+		playfields.add(p);
+		snapshot = playfields.toArray(new Playfield[playfields.size()]);
+		notifyAll();
+	}
+	/**
+	 *	Removes a <code>Playfield</code> from this loop. The <code>Playfield</code> is not ticked again after the step in progress, if any.
+	 *	@param p the <code>Playfield</code> to stop ticking
+	**/
+	public synchronized void deregister(Playfield p){
+		if(!playfields.remove(p)) return;
+		snapshot = playfields.toArray(new Playfield[playfields.size()]);
+	}
+	private synchronized boolean awaitPlayfields() throws InterruptedException{
+		boolean waited = false;
+		while(playfields.isEmpty()){
+			wait();
+			waited = true;
+		}
+		return waited;
+	}
+	/**
+	 *	The loop. Sleeps while no <code>Playfield</code> is registered.
+	**/
+	public void run(){
+		try{
+			long previous = System.nanoTime();
+			long accumulator = STEP_NANOS;
+			while(true){
+				if(awaitPlayfields()){
+					previous = System.nanoTime();
+					accumulator = STEP_NANOS;
+				}
+				long now = System.nanoTime();
+				accumulator += now - previous;
+				previous = now;
+				int steps = 0;
+				while(accumulator >= STEP_NANOS && steps < MAX_STEPS_PER_FRAME){
+					for(Playfield p : snapshot){
+						try{
+							p.tick();
+						}catch(RuntimeException e){
+							e.printStackTrace();
+						}
+					}
+					accumulator -= STEP_NANOS;
+					steps++;
+				}
+				if(accumulator >= STEP_NANOS){
+					accumulator = 0;
+				}
+				long sleepNanos = STEP_NANOS - accumulator;
+				sleep(sleepNanos/1000000L, (int)(sleepNanos%1000000L));
+			}
+		}catch(InterruptedException e){
+			e.printStackTrace();
+		}
+	}
+}
@@ -4,82 +4,205 @@ import java.awt.*;
 import java.io.*;
 import java.util.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
 import java.awt.event.*;
 /**
- *	Manages multiple {@link ServerThread ServerThreads}  and provides a central {@link GameInstance GameInstance} and server time.
+ *	Manages the connections of every client and provides a central {@link GameInstance GameInstance} and server time.
+ *	<p> All connections are served by a single event loop thread built on a <code>Selector</code>, which accepts new clients, reads from every {@link ServerConnection ServerConnection} and writes their queued output.
+ *	The number of threads used by a <code>GameServer</code> therefore does not depend on the number of connected clients.
 **/
 public class GameServer extends NetworkingComponent{
+	/**
+	 *	Maximum number of players accepted by a <code>GameServer</code>.
+	**/
+	public static final int MAX_PLAYERS = 256;
+	private static final int BUFFER_SIZE = 8192;
 	private int numberOfPlayers;
-	private final ArrayList<ServerThread> serverThreads;
+	private final ArrayList<ServerConnection> connections;
+	private final BufferPool bufferPool;
 	private GameInstance gameInstance;
 	private int serverTime;
+	private final StateBroadcast broadcast;
 	/**
 	 *	Creates a new <code>GameServer</code> associated with a <code>GameInstance</code>.
 	 *	@param gameInstance the <code>GameInstance</code> to associate with this <code>GameServer</code>
 	**/
 	public GameServer(GameInstance gameInstance){
-		this.serverThreads = new ArrayList<ServerThread>();
+		this.connections = new ArrayList<ServerConnection>();
+		this.bufferPool = new BufferPool(BUFFER_SIZE,4*MAX_PLAYERS);
 		this.numberOfPlayers = 0;
 		this.gameInstance = gameInstance;
 		this.serverTime = 180;
+		this.broadcast = new StateBroadcast(GameLoop.STEP_NANOS);
 	}
 	
-	private class AcceptConnectionsThread extends Thread{
-		private int newClientID;
-		private Socket newSocket;
-		private ServerSocket serverSocket;
+	private class EventLoopThread extends Thread{
+		private Selector selector;
+		private ServerSocketChannel serverChannel;
+		private final ConcurrentLinkedQueue<ServerConnection> pendingWrites = new ConcurrentLinkedQueue<ServerConnection>();
+		private volatile boolean running = true;
+		public EventLoopThread(){
+			super("Server event loop");
+		}
+		public void open() throws IOException{
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().setReceiveBufferSize(MessageFraming.SOCKET_BUFFER_BYTES);
+			serverChannel.socket().bind(new InetSocketAddress(PORT_NUMBER));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector,SelectionKey.OP_ACCEPT);
+		}
+		public boolean isAccepting(){
+			return serverChannel!=null && serverChannel.isOpen();
+		}
 		public void stopAcceptingConnections(){
 			try{
-				serverSocket.close();
+				if(serverChannel!=null) serverChannel.close();
 			}catch(IOException e){
 				e.printStackTrace();
 			}
+			if(selector!=null) selector.wakeup();
+		}
+		public void requestWrite(ServerConnection connection){
+			pendingWrites.add(connection);
+			if(Thread.currentThread()!=this && selector!=null) selector.wakeup();
+		}
+		public void shutdown(){
+			running = false;
+			stopAcceptingConnections();
+		}
+		private void accept(){
+			SocketChannel channel;
+			try{
+				channel = serverChannel.accept();
+			}catch(IOException e){
+				e.printStackTrace();
+				return;
+			}
+			if(channel==null) return;
+			synchronized(GameServer.this){
+				int newClientID = numberOfPlayers;
+				ServerConnection newConnection;
+				try{
+					channel.configureBlocking(false);
+					MessageFraming.configure(channel.socket());
+					newConnection = new ServerConnection(GameServer.this,channel,selector,newClientID,bufferPool);
+				}catch(IOException e){
+					System.err.println("Could not set up connection: "+e);
+					try{
+						channel.close();
+					}catch(IOException closeException){
+						closeException.printStackTrace();
+					}
+					return;
+				}
+				gameInstance.getPlayfield(newClientID);
+				connections.add(newConnection);
+				numberOfPlayers++;
+				System.out.println("Player accepted, ID: "+newClientID);
+				if(numberOfPlayers>=MAX_PLAYERS) stopAcceptingConnections();
+				try{
+					newConnection.sendString("clientID,"+newClientID);
+					sendState(newConnection);
+				}catch(RuntimeException e){
+					drop(newConnection,e);
+				}
+			}
+		}
+		private void handle(SelectionKey key){
+			ServerConnection connection = (ServerConnection)key.attachment();
+			try{
+				if(key.isReadable()) connection.handleRead();
+				if(key.isValid() && key.isWritable()) connection.flush();
+			}catch(RuntimeException e){
+				drop(connection,e);
+			}
+		}
+		private void flushPendingWrites(){
+			for(ServerConnection connection; (connection = pendingWrites.poll())!=null;){
+				try{
+					connection.flush();
+				}catch(RuntimeException e){
+					drop(connection,e);
+				}
+			}
+		}
+		private void drop(ServerConnection connection, RuntimeException e){
+			System.err.println("Error on connection to client "+connection.getClientID()+": "+e);
+			connection.close();
 		}
 		public void run(){
 			try{
-				serverSocket = new ServerSocket(PORT_NUMBER);
-				while(numberOfPlayers<4){
-					this.newClientID = numberOfPlayers;
-					
-					System.out.println("Waiting for client . . .");
-					this.newSocket = serverSocket.accept();
-					ServerThread newConnection = new ServerThread(GameServer.this,newSocket, newClientID);
-					
-					System.out.println("Player accepted, ID: "+this.newClientID);
-
-					serverThreads.add(newConnection);
-					numberOfPlayers++;
-					
-					newConnection.start();
+				while(running){
+					try{
+						selector.select();
+					}catch(IOException e){
+						e.printStackTrace();
+						continue;
+					}
+					flushPendingWrites();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						if(!key.isValid()) continue;
+						if(key.isAcceptable()){
+							accept();
+						}else{
+							handle(key);
+						}
+					}
+					flushPendingWrites();
 				}
-				serverSocket.close();
-			}catch(SocketException e){
-				System.out.println("Socket.accept() has been terminated.");
-				return;
-			}catch(Exception e){
-				e.printStackTrace();
+			}finally{
+				synchronized(GameServer.this){
+					for(ServerConnection connection : connections){
+						connection.close();
+					}
+				}
+				try{
+					selector.close();
+				}catch(IOException e){
+					e.printStackTrace();
+				}
+				System.err.println("Thread:"+this.getName()+" stopped");
 			}
 		}
 	}
-	private final AcceptConnectionsThread acceptThread = new AcceptConnectionsThread();
+	private final EventLoopThread eventLoop = new EventLoopThread();
 	/**
-	 *	Starts a thread which continuously searches for client connections.
+	 *	Opens the server socket and starts the event loop, which accepts client connections until {@link #stopAcceptingConnections() stopAcceptingConnections()} is called or {@link #MAX_PLAYERS MAX_PLAYERS} players have joined.
 	**/
 	public void startAcceptingConnections(){
-		acceptThread.start();
+		try{
+			eventLoop.open();
+			eventLoop.start();
+			System.out.println("Waiting for clients . . .");
+		}catch(IOException e){
+			e.printStackTrace();
+		}
 	}
 	/**
 	 *	Checks if this <code>GameServer</code> server is currently accepting connections.
 	 *	@return <code>true</code> if this <code>GameServer</code> is currently accepting connections, and <code>false</code> otherwise.
 	**/
 	public boolean isAcceptingConnnections(){
-		return acceptThread.isAlive();
+		return eventLoop.isAccepting();
 	}
 	/**
-	 *	Stops a thread which continuously searches for client connections, started by {@link #startAcceptingConnections() startAcceptingConnections()}.
+	 *	Stops accepting client connections, started by {@link #startAcceptingConnections() startAcceptingConnections()}. Clients which are already connected are still served.
 	**/
 	public void stopAcceptingConnections(){
-		acceptThread.stopAcceptingConnections();
+		eventLoop.stopAcceptingConnections();
+	}
+	/**
+	 *	Asks the event loop to write the queued output of a connection.
+	 *	@param connection the <code>ServerConnection</code> with output to write
+	**/
+	void requestWrite(ServerConnection connection){
+		eventLoop.requestWrite(connection);
 	}
 	private java.util.Timer timer = new java.util.Timer();
 	private TimerTask timerTick = new TimerTask(){
@@ -98,19 +221,18 @@ public class GameServer extends NetworkingComponent{
 	 *	Destroys all threads handled by this <code>GameServer</code>.
 	**/
 	public synchronized void destroy(){
-		stopAcceptingConnections();
 		timer.cancel();
-		for(ServerThread st : serverThreads){
-			st.interrupt();
-		}
+		eventLoop.shutdown();
 	}
 	/**
 	 *	Broadcasts a signal to all clients to start the game logic, and starts the server timer.
+	 *	<p> Every client starts its match with the same random seed.
 	**/
 	public synchronized void startGame(){
+		long seed = new Random().nextLong();
 		synchronized(this){
-			for(ServerThread st : serverThreads){
-				st.sendString("StartGame");
+			for(ServerConnection connection : connections){
+				connection.sendString("StartGame,"+seed);
 			}
 		}
 		timer.scheduleAtFixedRate(timerTick,0, 1000);
@@ -119,8 +241,8 @@ public class GameServer extends NetworkingComponent{
 	 *	Broadcasts a signal to all clients to stop the game logic.
 	**/
 	public synchronized void endGame(){
-		for(ServerThread st : serverThreads){
-			st.sendString("EndGame");
+		for(ServerConnection connection : connections){
+			connection.sendString("EndGame");
 		}
 	}
 	/**
@@ -135,15 +257,6 @@ public class GameServer extends NetworkingComponent{
 		}
 		return sb.toString();
 	}
-	private String getDataBlock(String data, String startToken, String endToken){
-		int startIndex = data.indexOf(startToken)+startToken.length()+1;
-		int endIndex = data.indexOf(endToken)-1;
-		if(startIndex<0 || endIndex<0){
-			System.err.println("Bad data received.");
-			return "";
-		}
-		return data.substring(startIndex,endIndex);
-	}
 	/**
 	 *	Processes an instruction from a client.
 	 *	@param data an instruction generated by a {@link GameClient GameClient} or {@link ClientThread ClientThread}
@@ -151,22 +264,31 @@ public class GameServer extends NetworkingComponent{
 	public synchronized void process(String data){
 		String[] dataBlocks = data.split(",");
 		int clientID = Integer.parseInt(dataBlocks[0]);
-		if(data.indexOf("PlayfieldDataEnd")>=0){
-			String playfieldData = getDataBlock(data,"PlayfieldDataBegin","PlayfieldDataEnd");
-			if(!playfieldData.equals(""))gameInstance.getPlayfield(clientID).loadData(playfieldData);
-		}else if(dataBlocks[1].equals("sendGarbage")){
-			for(ServerThread st : serverThreads){
-				if(st.getClientID()==clientID) continue;
-				st.sendString("addGarbage,"+dataBlocks[2]);
+		if(dataBlocks[1].equals("sendGarbage")){
+			for(ServerConnection connection : connections){
+				if(connection.getClientID()==clientID) continue;
+				connection.sendString("addGarbage,"+dataBlocks[2]);
 			}
 		}
 	}
 	/**
-	 *	Obtains the String representation of the server's central game instance.
-	 *	@return a String representation of the {@link GameInstance GameInstance} stored on the server.
+	 *	Processes the state of a client's <code>Playfield</code>, read in place from the frame it arrived in.
+	 *	@param source the <code>ServerConnection</code> of the client
+	 *	@param state the body of a state frame written by {@link GameClient#writeState(ByteBuffer) GameClient.writeState}: the acknowledgement of the latest frame the client has applied, as a signed varint, followed by the client's snapshot
+	 *	@throws IllegalArgumentException if the snapshot is not valid, or holds any other player than the client
+	 *	@throws BufferUnderflowException if the state is truncated
+	**/
+	public synchronized void processState(ServerConnection source, ByteBuffer state){
+		source.acknowledge(StateCodec.getSignedVarint(state));
+		source.getSnapshotReceiver().receiveFrom(state,gameInstance,source.getClientID());
+	}
+	/**
+	 *	Queues the current state of the server's central game instance on a client's connection, through the shared {@link StateBroadcast StateBroadcast}.
+	 *	The client's own <code>Playfield</code> is left out, since the client already holds it.
+	 *	@param destination the <code>ServerConnection</code> of the client to send the state to
 	**/
-	public synchronized String getSendableData(){
-		return gameInstance.toString();
+	public void sendState(ServerConnection destination){
+		broadcast.sendTo(gameInstance,destination,destination.getSnapshotReceiver().getAck());
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+/**
+ *	A numbered copy of the networked state of some of the {@link Playfield Playfield}s of a {@link GameInstance GameInstance}, and of its game time.
+ *	<p> Snapshots are kept in fixed rings by {@link SnapshotSender SnapshotSender} and {@link SnapshotReceiver SnapshotReceiver}, and are overwritten in place rather than reallocated.
+**/
+public class GameSnapshot{
+	int seq;
+	int gameTime;
+	int count;
+	int[] playerIDs;
+	PlayfieldSnapshot[] fields;
+	/**
+	 *	Creates a new, empty snapshot.
+	**/
+	public GameSnapshot(){
+		this.seq = -1;
+		this.count = 0;
+		this.playerIDs = new int[0];
+		this.fields = new PlayfieldSnapshot[0];
+	}
+	/**
+	 *	Returns the sequence number of this snapshot.
+	 *	@return the sequence number, or -1 if this snapshot does not hold a complete state
+	**/
+	public int getSeq(){
+		return seq;
+	}
+	void setCount(int newCount){
+		if(newCount>fields.length){
+			int[] newIDs = new int[newCount];
+			PlayfieldSnapshot[] newFields = new PlayfieldSnapshot[newCount];
+			System.arraycopy(playerIDs,0,newIDs,0,fields.length);
+			System.arraycopy(fields,0,newFields,0,fields.length);
+			for(int k = fields.length; k<newCount; k++){
+				newFields[k] = Playfield.newSnapshot();
+			}
+			playerIDs = newIDs;
+			fields = newFields;
+		}
+		count = newCount;
+	}
+	/**
+	 *	Copies the state of some players of a <code>GameInstance</code> into this snapshot.
+	 *	@param instance the <code>GameInstance</code> to copy
+	 *	@param ids the player IDs of the <code>Playfield</code>s to copy
+	 *	@param newSeq the sequence number of this snapshot
+	**/
+	public void capture(GameInstance instance, int[] ids, int newSeq){
+		setCount(ids.length);
+		gameTime = instance.getTime();
+		for(int k = 0; k<ids.length; k++){
+			playerIDs[k] = ids[k];
+			instance.getPlayfield(ids[k]).captureSnapshot(fields[k]);
+		}
+		seq = newSeq;
+	}
+	/**
+	 *	Finds the state of a player in this snapshot.
+	 *	@param playerID the player ID to look for
+	 *	@return the snapshot of the player's <code>Playfield</code>, or <code>null</code> if this snapshot does not hold it
+	**/
+	public PlayfieldSnapshot find(int playerID){
+		for(int k = 0; k<count; k++){
+			if(playerIDs[k]==playerID) return fields[k];
+		}
+		return null;
+	}
+}
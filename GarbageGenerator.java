@@ -0,0 +1,92 @@
+import java.util.*;
+/**
+ *	Generates rows of garbage blocks and pushes them into a {@link Board Board} from the bottom.
+ *	<p> Every garbage row has exactly one free column, which is the same for all rows added in one batch. Every other cell gets a random color which differs from the cell to its left and the cell below it.
+ *	<p> Colors are chosen from a bitmask of allowed colors, so generating garbage does not allocate any objects.
+**/
+public class GarbageGenerator{
+	private static final Tile[] TILES = Tile.values();
+	private static final int ALL_COLORS = ((1<<TILES.length)-1) & ~(1<<Tile.NONE.ordinal());
+	private final Random rand;
+	/**
+	 *	Creates a new <code>GarbageGenerator</code> with a given seed.
+	 *	@param seed the seed of the random number generator
+	**/
+	public GarbageGenerator(long seed){
+		this(new Random(seed));
+	}
+	/**
+	 *	Creates a new <code>GarbageGenerator</code> which draws from an existing random number generator.
+	 *	@param rand the random number generator to use
+	**/
+	public GarbageGenerator(Random rand){
+		this.rand = rand;
+	}
+	/**
+	 *	Resets the random number generator of this <code>GarbageGenerator</code> with a given seed.
+	 *	@param seed the new seed
+	**/
+	public void setSeed(long seed){
+		rand.setSeed(seed);
+	}
+	/**
+	 *	Chooses a random free column for a batch of garbage rows.
+	 *	@param numColumns the number of columns of the board
+	 *	@return the free column
+	**/
+	public int chooseFreeColumn(int numColumns){
+		return rand.nextInt(numColumns);
+	}
+	/**
+	 *	Chooses a random block color which differs from the given neighbors.
+	 *	@param left the color of the cell to the left, or <code>Tile.NONE</code>
+	 *	@param right the color of the cell to the right, or <code>Tile.NONE</code>
+	 *	@param below the color of the cell below, or <code>Tile.NONE</code>
+	 *	@return a color which is none of the given colors
+	**/
+	public Tile chooseColor(Tile left, Tile right, Tile below){
+		int allowed = ALL_COLORS & ~(1<<left.ordinal()) & ~(1<<right.ordinal()) & ~(1<<below.ordinal());
+		int choice = rand.nextInt(Integer.bitCount(allowed));
+		while(choice>0){
+			allowed &= allowed-1;
+			choice--;
+		}
+		return TILES[Integer.numberOfTrailingZeros(allowed)];
+	}
+	/**
+	 *	Pushes garbage rows into a <code>Board</code>, using a random free column.
+	 *	@param board the <code>Board</code> to add garbage to
+	 *	@param numLines the number of rows to add
+	 *	@return the number of rows added, which is less than <code>numLines</code> if the board overflowed
+	 *	@see #addRows(Board board, int numLines, int freeColumn)
+	**/
+	public int addRows(Board board, int numLines){
+		return addRows(board,numLines,chooseFreeColumn(board.getNumColumns()));
+	}
+	/**
+	 *	Pushes garbage rows into a <code>Board</code>.
+	 *	<p> A row is only added if the top row of the board is empty. Adding stops at the first row which would push blocks out of the board.
+	 *	@param board the <code>Board</code> to add garbage to
+	 *	@param numLines the number of rows to add
+	 *	@param freeColumn the column which is left empty in every row
+	 *	@return the number of rows added, which is less than <code>numLines</code> if the board overflowed
+	**/
+	public int addRows(Board board, int numLines, int freeColumn){
+		int numRows = board.getNumRows();
+		int numColumns = board.getNumColumns();
+		for(int k = 0; k<numLines; k++){
+			if(board.getRowMask(0)!=0) return k;
+			board.pushRow();
+			Tile left = Tile.NONE;
+			for(int i = 0; i<numColumns; i++){
+				Tile tile = Tile.NONE;
+				if(i!=freeColumn){
+					tile = chooseColor(left,Tile.NONE,board.getTile(numRows-2,i));
+					board.setTile(numRows-1,i,tile);
+				}
+				left = tile;
+			}
+		}
+		return numLines;
+	}
+}
@@ -0,0 +1,13 @@
+/**
+ *	The inputs a player can apply to a {@link Playfield Playfield}.
+ *	@see Playfield#applyInput(Input)
+**/
+enum Input{
+	LEFT,
+	RIGHT,
+	UP,
+	DOWN,
+	ROTATE,
+	HOLD,
+	HARD_DROP
+}
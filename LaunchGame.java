@@ -4,9 +4,10 @@
 **/
 public class LaunchGame{
 	/**
-	 *	Creates a new GameFrame.
+	 *	Starts preloading all game resources, and creates a new GameFrame.
 	**/
 	public static void main(String[] args){
+		Assets.preload();
 		GameFrame test = new GameFrame();
 	}
 }
\ No newline at end of file
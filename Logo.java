@@ -16,12 +16,7 @@ public class Logo extends JComponent{
 	**/
 	public Logo(){
 		this.setPreferredSize(new Dimension(583,77));
-		try{
-			this.image = ImageIO.read(new File("Kolortris Logo.png"));
-		}catch (IOException e){
-			this.image = null;
-			System.out.println("Failed to load images.");
-		}
+		this.image = Assets.getImage("Kolortris Logo.png");
 	}
 	/**
 	 *	Draws this component using a given <code>Graphics</code> context.
@@ -0,0 +1,176 @@
+/**
+ *	A record of everything needed to reproduce the match of a single {@link Playfield Playfield}.
+ *	<p> A match is fully determined by its seed and by the events applied to the <code>Playfield</code> between ticks. Each event is stored with the number of ticks which had completed when it was applied:
+ *	<ul>
+ *		<li> an {@link Input Input} from the player, or </li>
+ *		<li> a number of incoming garbage lines. </li>
+ *	</ul>
+ *	<p> A <code>MatchLog</code> can be replayed by {@link ReplayRunner ReplayRunner}, and can be converted to and from a <code>String</code>.
+**/
+public class MatchLog{
+	private static final int GARBAGE = -1;
+	private final long seed;
+	private final boolean clearAnimationEnabled;
+	private int[] ticks;
+	private int[] kinds;
+	private int[] values;
+	private int size;
+	private int endTick;
+	/**
+	 *	Creates a new empty <code>MatchLog</code>.
+	 *	@param seed the seed of the match
+	 *	@param clearAnimationEnabled whether clears were animated during the match, since this changes how many ticks a reload takes
+	**/
+	public MatchLog(long seed, boolean clearAnimationEnabled){
+		this.seed = seed;
+		this.clearAnimationEnabled = clearAnimationEnabled;
+		this.ticks = new int[64];
+		this.kinds = new int[64];
+		this.values = new int[64];
+		this.size = 0;
+		this.endTick = -1;
+	}
+	/**
+	 *	Creates a new <code>MatchLog</code> from a String generated by {@link #toString() toString()}.
+	 *	@param objectData the string to be parsed
+	**/
+	public MatchLog(String objectData){
+		this(
+			Long.parseLong(getDataBlock(objectData,"seedStart","seedEnd")),
+			Boolean.parseBoolean(getDataBlock(objectData,"clearAnimationStart","clearAnimationEnd"))
+		);
+		this.endTick = Integer.parseInt(getDataBlock(objectData,"endTickStart","endTickEnd"));
+		String events = getDataBlock(objectData,"eventsStart","eventsEnd");
+		if(events.length()==0) return;
+		String[] eventData = events.split(",");
+		for(int i = 0; i+2<eventData.length; i+=3){
+			add(Integer.parseInt(eventData[i]),Integer.parseInt(eventData[i+1]),Integer.parseInt(eventData[i+2]));
+		}
+	}
+	private static String getDataBlock(String data, String startToken, String endToken){
+		int startIndex = data.indexOf(startToken)+startToken.length()+1;
+		int endIndex = data.indexOf(endToken)-1;
+		if(endIndex<startIndex) return "";
+		return data.substring(startIndex,endIndex);
+	}
+	private void add(int tick, int kind, int value){
+		if(size==ticks.length){
+			ticks = java.util.Arrays.copyOf(ticks,2*size);
+			kinds = java.util.Arrays.copyOf(kinds,2*size);
+			values = java.util.Arrays.copyOf(values,2*size);
+		}
+		ticks[size] = tick;
+		kinds[size] = kind;
+		values[size] = value;
+		size++;
+	}
+	/**
+	 *	Records an input from the player.
+	 *	@param tick the number of ticks completed when the input was applied
+	 *	@param input the input
+	**/
+	public synchronized void addInput(int tick, Input input){
+		add(tick,input.ordinal(),0);
+	}
+	/**
+	 *	Records incoming garbage.
+	 *	@param tick the number of ticks completed when the garbage was received
+	 *	@param numLines the number of garbage lines received
+	**/
+	public synchronized void addGarbage(int tick, int numLines){
+		add(tick,GARBAGE,numLines);
+	}
+	/**
+	 *	Marks the end of the match.
+	 *	@param tick the number of ticks completed when the match ended
+	**/
+	public synchronized void setEndTick(int tick){
+		this.endTick = tick;
+	}
+	/**
+	 *	Returns the number of ticks the match lasted. If the end of the match was not recorded, this is the tick of the last event.
+	 *	@return the number of ticks to replay
+	**/
+	public synchronized int getEndTick(){
+		if(endTick>=0) return endTick;
+		return size==0 ? 0 : ticks[size-1];
+	}
+	/**
+	 *	Returns the seed of the match.
+	 *	@return the seed of the match
+	**/
+	public long getSeed(){
+		return seed;
+	}
+	/**
+	 *	Checks whether clears were animated during the match.
+	 *	@return <code>true</code> if clears were animated, and <code>false</code> otherwise
+	**/
+	public boolean isClearAnimationEnabled(){
+		return clearAnimationEnabled;
+	}
+	/**
+	 *	Returns the number of recorded events.
+	 *	@return the number of recorded events
+	**/
+	public synchronized int size(){
+		return size;
+	}
+	/**
+	 *	Returns the tick at which an event was applied.
+	 *	@param i the index of the event
+	 *	@return the number of ticks completed when the event was applied
+	**/
+	public synchronized int getTick(int i){
+		return ticks[i];
+	}
+	/**
+	 *	Checks whether an event is incoming garbage.
+	 *	@param i the index of the event
+	 *	@return <code>true</code> if the event is incoming garbage, and <code>false</code> if it is an input
+	**/
+	public synchronized boolean isGarbage(int i){
+		return kinds[i]==GARBAGE;
+	}
+	/**
+	 *	Returns the input of an event.
+	 *	@param i the index of an input event
+	 *	@return the input of the event
+	**/
+	public synchronized Input getInput(int i){
+		return Input.values()[kinds[i]];
+	}
+	/**
+	 *	Returns the number of garbage lines of an event.
+	 *	@param i the index of a garbage event
+	 *	@return the number of garbage lines received
+	**/
+	public synchronized int getGarbage(int i){
+		return values[i];
+	}
+	/**
+	 *	Generates a <code>String</code> containing all the data of this <code>MatchLog</code>.
+	 *	@return A <code>String</code> which represents the data of this <code>MatchLog</code>
+	**/
+	@Override
+	public synchronized String toString(){
+		StringBuilder sb = new StringBuilder();
+		sb.append("seedStart,");
+		sb.append(seed);
+		sb.append(",seedEnd,");
+		sb.append("clearAnimationStart,");
+		sb.append(clearAnimationEnabled);
+		sb.append(",clearAnimationEnd,");
+		sb.append("endTickStart,");
+		sb.append(endTick);
+		sb.append(",endTickEnd,");
+		sb.append("eventsStart,");
+		for(int i = 0; i<size; i++){
+			sb.append(ticks[i]).append(",");
+			sb.append(kinds[i]).append(",");
+			sb.append(values[i]).append(",");
+		}
+		sb.append("eventsEnd");
+		return sb.toString();
+	}
+}
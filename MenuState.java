@@ -4,6 +4,7 @@ import javax.swing.border.*;
 import java.awt.geom.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.*;
 import java.io.*;
 import java.util.*;
 /**
@@ -16,13 +17,13 @@ public final class MenuState{
 	 *	<p> This abstract base class handles the following common operations:
 	 *	<ul>
 	 *		<li> Setting the preferred size of the <code>JPanel</code> </li>
-	 *		<li> Creating and starting a <code>javax.swing.timer</code> which regularly repaints the <code>JPanel</code> </li>
+	 *		<li> Repainting the <code>JPanel</code> once per frame while it is the {@link RenderTarget RenderTarget} of the {@link RenderLoop RenderLoop} of its frame </li>
 	 *		<li> Loading the font used for the GUI </li>
 	 *		<li> Adding an <code>ActionListener</code> to all <code>JButton</code> components: instead of having to create a new <code>ActionListener</code> for each subclass, one should needs to implement the {@link #handleEvent(ActionEvent e) handleEvent(ActionEvent e)} method. </li>
 	 *		<li> Casting the <code>Graphics</code> object passed to <code>paintComponent(Graphics)</code> to a <code>Graphics2D</code> object and applying antialiasing: instead of overriding <code>paintComponent(Graphics)</code> directly, one should implement the {@link #paint(Graphics2D g2d) paint(Graphics2D g2d)} method.</li>
 	 *	</ul>
 	 */
-	public abstract static class MenuPanel extends JPanel{
+	public abstract static class MenuPanel extends JPanel implements RenderTarget{
 		/**
 		 *	The {@link GameFrame GameFrame} which is the parent of this <code>MenuPanel</code>.
 		**/
@@ -39,19 +40,7 @@ public final class MenuState{
 		private MenuPanel(){
 			this.setPreferredSize(new Dimension(800,600));
 			this.parentFrame = null;
-			javax.swing.Timer timer = new javax.swing.Timer(30,new ActionListener(){
-			public void actionPerformed(ActionEvent e){
-				repaint();
-			}
-			});
-			timer.start();
-			try{
-				uiFont = Font.createFont(Font.TRUETYPE_FONT, new File("joystix monospace.ttf"));
-				uiFont = uiFont.deriveFont(12f);
-			}catch (Exception e){
-				uiFont = null;
-				System.out.println("Failed to load resources.");
-			}
+			uiFont = Assets.getFont(Assets.FONT_UI,12f);
 		}
 		/**
 		 *	<b> Copied from online documentation:</b> Appends the specified component to the end of this container.
@@ -92,6 +81,13 @@ public final class MenuState{
 			g2d.setRenderingHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON));
 			paint(g2d);
 		}
+		/**
+		 *	Requests a repaint of this <code>MenuPanel</code>. Repaint requests are coalesced by Swing, so a slow event dispatch thread skips frames instead of queueing them.
+		**/
+		@Override
+		public void renderFrame(){
+			repaint();
+		}
 		/**
 		 *	Processes an <code>ActionEvent</code> generated from this <code>MenuPanel</code>.
 		 *	@param e the <code>ActionEvent</code> to process
@@ -105,12 +101,15 @@ public final class MenuState{
 	}
 	/**
 	 *	The {@link MenuState.MenuPanel MenuPanel} corresponding to the main menu.
+	 *	<p> While game resources are still being preloaded by {@link Assets Assets}, a progress bar is shown at the bottom of the screen.
 	**/
-	public static class MainMenu extends MenuPanel{
+	public static class MainMenu extends MenuPanel implements Assets.ProgressListener{
 		private final ScrollingBackgroundThread background = new ScrollingBackgroundThread("MainMenuBackground.png");
 		private final Logo logo = new Logo();
 		private final JButton buttonPlay = new JButton("Play");
 		private final JButton buttonExit = new JButton("Exit");
+		private volatile int assetsLoaded = 0;
+		private volatile int assetsTotal = 0;
 
 		/**
 		 *	Creates a new <code>MainMenu</code> with the given parent {@link GameFrame GameFrame}.
@@ -144,9 +143,20 @@ public final class MenuState{
 			c.gridy = 1;
 			this.add(buttonExit,c);
 
+			Assets.addProgressListener(this);
 			revalidate();
 			repaint();
 		}
+		/**
+		 *	Records the progress of resource preloading, to be shown on the next repaint.
+		 *	@param loaded the number of resources decoded so far
+		 *	@param total the number of resources being preloaded
+		**/
+		@Override
+		public void progressChanged(int loaded, int total){
+			this.assetsTotal = total;
+			this.assetsLoaded = loaded;
+		}
 		@Override
 		protected void handleEvent(ActionEvent e){
 			if(e.getSource() instanceof JButton){
@@ -161,6 +171,14 @@ public final class MenuState{
 		@Override
 		protected void paint(Graphics2D g2d){
 			background.draw(g2d);
+			int loaded = assetsLoaded;
+			int total = assetsTotal;
+			if(loaded<total){
+				g2d.setPaint(new Color(0,0,0,175));
+				g2d.fillRect(200,560,400,12);
+				g2d.setPaint(Color.WHITE);
+				g2d.fillRect(202,562,396*loaded/total,8);
+			}
 		}
 	}
 	/**
@@ -185,7 +203,7 @@ public final class MenuState{
 					if (str == null)
 					  return;
 
-					if ((getLength() + str.length()) <= 10) {
+					if ((getLength() + str.length()) <= Playfield.MAX_NAME_LENGTH) {
 					  super.insertString(offset, str, attr);
 					}
 				}
@@ -421,18 +439,45 @@ public final class MenuState{
 	}
 	/**
 	 *	The {@link MenuState.MenuPanel MenuPanel} corresponding to the game screen.
+	 *	<p> The game screen is drawn actively: every frame is rendered by the {@link RenderLoop RenderLoop} into a <code>VolatileImage</code> holding a copy of the screen, then presented through the double-buffered <code>BufferStrategy</code> of a <code>Canvas</code> covering the panel, without going through the event dispatch thread.
+	 *	Only the areas reported by {@link GameDisplay#updateScene(Graphics2D) GameDisplay.updateScene} are drawn again, and only they are copied to the back buffer when the strategy keeps its contents across <code>show()</code>. The whole screen is drawn again when the scrolling background has moved by a pixel, and copied in full when the canvas has been exposed or a buffer was lost.
+	 *	Frames in which nothing changed are not presented at all.
+	 *	The {@link GameDisplay GameDisplay} stays underneath the canvas so that it keeps receiving key bindings.
 	**/
 	public static class GamePanel extends MenuPanel{
 		private final ScrollingBackgroundThread background = new ScrollingBackgroundThread("GameBackground.png");
 		private final GameDisplay gameDisplay;
+		private final Canvas canvas = new Canvas(){
+			@Override
+			public void update(Graphics g){
+				paint(g);
+			}
+			@Override
+			public void paint(Graphics g){
+				exposed = true;
+			}
+		};
+		private final Point backgroundOffset = new Point();
+		private final Point shownBackgroundOffset = new Point();
+		private VolatileImage screen = null;
+		private BufferStrategy strategy = null;
+		private boolean keepsBackBuffer = false;
+		private volatile boolean exposed = true;
+		private boolean finished = false;
 		/**
 		 *	Creates a new <code>GamePanel</code> with the given parent {@link GameFrame GameFrame}.
 		 *	@param parentFrame the {@link GameFrame GameFrame} which is the parent of this {@link MenuState.MenuPanel MenuPanel}
 		**/
 		public GamePanel(GameFrame parentFrame){
 			this.parentFrame = parentFrame;
+			this.setLayout(null);
+			this.setIgnoreRepaint(true);
+			canvas.setBounds(0,0,800,600);
+			canvas.setFocusable(false);
+			this.add(canvas);
 			if(parentFrame.getGameClient().getGameInstance()!=null){
 				gameDisplay = new GameDisplay(parentFrame.getGameClient().getGameInstance());
+				gameDisplay.setBounds(0,0,800,600);
 				this.add(gameDisplay);
 			}else gameDisplay = null;
 			int clientID = parentFrame.getGameClient().getClientID();
@@ -448,11 +493,92 @@ public final class MenuState{
 		}
 		@Override
 		protected void handleEvent(ActionEvent e){}
+		/**
+		 *	Draws the areas of the screen which changed into its copy, and presents them through the <code>BufferStrategy</code> of the canvas, creating the copy and the strategy first if needed. Once the game is over, switches to the {@link Results Results} screen on the event dispatch thread.
+		**/
 		@Override
-		protected void paint(Graphics2D g2d){
+		public void renderFrame(){
+			if(finished) return;
 			if(parentFrame.getGameClient()!=null && parentFrame.getGameClient().isGameOver()){
-				parentFrame.setState(new Results(parentFrame));
+				finished = true;
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						parentFrame.setState(new Results(parentFrame));
+					}
+				});
+				return;
 			}
+			if(!canvas.isDisplayable()) return;
+			boolean redrawAll = false;
+			if(strategy==null){
+				canvas.createBufferStrategy(2);
+				strategy = canvas.getBufferStrategy();
+				BufferCapabilities capabilities = strategy.getCapabilities();
+				keepsBackBuffer = !capabilities.isPageFlipping() || capabilities.getFlipContents()==BufferCapabilities.FlipContents.COPIED;
+				redrawAll = true;
+			}
+			int status = screen==null ? VolatileImage.IMAGE_INCOMPATIBLE : screen.validate(canvas.getGraphicsConfiguration());
+			if(status==VolatileImage.IMAGE_INCOMPATIBLE){
+				screen = canvas.createVolatileImage(canvas.getWidth(),canvas.getHeight());
+				if(screen==null) return;
+				redrawAll = true;
+			}else if(status==VolatileImage.IMAGE_RESTORED){
+				redrawAll = true;
+			}
+			background.getOffset(backgroundOffset);
+			if(!backgroundOffset.equals(shownBackgroundOffset)){
+				shownBackgroundOffset.setLocation(backgroundOffset);
+				redrawAll = true;
+			}
+			DirtyRegion changed = null;
+			Graphics2D g2d = screen.createGraphics();
+			try{
+				g2d.setRenderingHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON));
+				if(gameDisplay!=null) changed = gameDisplay.updateScene(g2d);
+				if(redrawAll || changed==null){
+					drawScreen(g2d);
+				}else{
+					for(int n = 0; n<changed.size(); n++){
+						g2d.setClip(changed.get(n));
+						drawScreen(g2d);
+					}
+				}
+			}finally{
+				g2d.dispose();
+			}
+			if(screen.contentsLost()) return;
+			boolean showAll = redrawAll || exposed || changed==null || !keepsBackBuffer;
+			if(!showAll && changed.isEmpty()) return;
+			exposed = false;
+			do{
+				do{
+					Graphics2D target = (Graphics2D)strategy.getDrawGraphics();
+					try{
+						if(showAll){
+							target.drawImage(screen,0,0,null);
+						}else{
+							for(int n = 0; n<changed.size(); n++){
+								Rectangle area = changed.get(n);
+								target.drawImage(screen,area.x,area.y,area.x+area.width,area.y+area.height,area.x,area.y,area.x+area.width,area.y+area.height,null);
+							}
+						}
+					}finally{
+						target.dispose();
+					}
+					showAll = true;
+				}while(strategy.contentsRestored());
+				strategy.show();
+			}while(strategy.contentsLost());
+			Toolkit.getDefaultToolkit().sync();
+		}
+		private void drawScreen(Graphics2D g2d){
+			g2d.setColor(getBackground());
+			g2d.fillRect(0,0,canvas.getWidth(),canvas.getHeight());
+			background.draw(g2d,shownBackgroundOffset);
+			if(gameDisplay!=null) gameDisplay.drawScene(g2d);
+		}
+		@Override
+		protected void paint(Graphics2D g2d){
 			background.draw(g2d);
 		}
 	}
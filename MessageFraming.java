@@ -0,0 +1,96 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
+/**
+ *	Helpers for the framing of the messages exchanged by {@link GameServer GameServer} and {@link GameClient GameClient}.
+ *	<p> Every message is sent as a frame: its length in bytes, as a 4-byte big-endian integer, followed by a type byte and the body of the message.
+ *	A receiver therefore knows where a message ends without scanning it.
+ *	<ul>
+ *		<li> The body of a {@link #TEXT TEXT} frame is UTF-8 text, and may hold any text, including line breaks. Control messages are text. </li>
+ *		<li> The body of a {@link #STATE STATE} frame is binary game state, as written by {@link StateCodec StateCodec}, so it is read in place without being converted to text. </li>
+ *	</ul>
+ *	<p> Both ends queue the messages of a tick and write them with a single call, so Nagle's algorithm is disabled on every socket through {@link #configure(Socket) configure}, instead of being relied upon to merge small writes.
+**/
+public final class MessageFraming{
+	/**
+	 *	Length in bytes of the header of a frame.
+	**/
+	public static final int HEADER_BYTES = 4;
+	/**
+	 *	Type of a frame holding text.
+	**/
+	public static final byte TEXT = 0;
+	/**
+	 *	Type of a frame holding binary game state.
+	**/
+	public static final byte STATE = 1;
+	/**
+	 *	Largest frame accepted, in bytes, header excluded.
+	**/
+	public static final int MAX_FRAME_BYTES = 1<<22;
+	/**
+	 *	Size requested for the send and receive buffers of every socket.
+	**/
+	public static final int SOCKET_BUFFER_BYTES = 1<<16;
+	/**
+	 *	The charset of the text of every message.
+	**/
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private MessageFraming(){}
+
+	/**
+	 *	Configures a socket for the exchange of frames: disables Nagle's algorithm and sizes its buffers.
+	 *	<p> To take effect on the TCP window, the receive buffer size must be set before the socket is connected.
+	 *	@param socket the socket to configure
+	 *	@throws SocketException if an option cannot be set
+	**/
+	public static void configure(Socket socket) throws SocketException{
+		socket.setTcpNoDelay(true);
+		socket.setSendBufferSize(SOCKET_BUFFER_BYTES);
+		socket.setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+	}
+	/**
+	 *	Checks the length read from the header of a frame. Every frame holds at least its type byte.
+	 *	@param length the length read
+	 *	@param limit the largest length the reader can accept
+	 *	@return <code>length</code>
+	 *	@throws IOException if the length is not positive or larger than <code>limit</code>
+	**/
+	public static int checkLength(int length, int limit) throws IOException{
+		if(length<1 || length>limit) throw new IOException("Invalid frame length: "+length);
+		return length;
+	}
+	/**
+	 *	Reads the next frame from a buffer of received bytes, if all of it has arrived.
+	 *	<p> If the buffer only holds the start of a frame, nothing is consumed, so that the call can be repeated once more bytes have been appended.
+	 *	The frame is not copied: the returned buffer shares the bytes of <code>buffer</code>, so it is only valid until <code>buffer</code> is modified.
+	 *	@param buffer the received bytes, between its position and its limit; on success, its position is moved past the frame
+	 *	@param limit the largest length the reader can accept
+	 *	@return a buffer holding the type byte and the body of the frame, or <code>null</code> if the frame is not complete yet
+	 *	@throws IOException if the length of the frame is not positive or larger than <code>limit</code>
+	**/
+	public static ByteBuffer readFrame(ByteBuffer buffer, int limit) throws IOException{
+		if(buffer.remaining()<HEADER_BYTES) return null;
+		int length = checkLength(buffer.getInt(buffer.position()),limit);
+		if(buffer.remaining()<HEADER_BYTES+length) return null;
+		int start = buffer.position()+HEADER_BYTES;
+		int end = start+length;
+		int oldLimit = buffer.limit();
+		buffer.position(start);
+		buffer.limit(end);
+		ByteBuffer frame = buffer.slice();
+		buffer.limit(oldLimit);
+		buffer.position(end);
+		return frame;
+	}
+	/**
+	 *	Decodes the rest of a frame as text.
+	 *	@param frame the body of a {@link #TEXT TEXT} frame, between its position and its limit
+	 *	@return the text of the frame
+	**/
+	public static String getText(ByteBuffer frame){
+		return CHARSET.decode(frame).toString();
+	}
+}
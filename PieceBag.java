@@ -0,0 +1,132 @@
+import java.util.*;
+/**
+ *	A queue of upcoming pieces, generated by shuffling bags which contain one piece of each {@link PieceType PieceType}.
+ *	<p> Pieces are stored in a fixed-size ring buffer as single <code>int</code> entries, holding the ordinal of the piece type in the low 3 bits and the packed colors of its blocks above them (see {@link Playfield.Piece#packColor(int,int,Tile) Playfield.Piece.packColor}).
+ *	No {@link Playfield.Piece Piece} is created until an entry is spawned.
+ *	<p> Every shuffle and color is drawn from the <code>Random</code> given to this <code>PieceBag</code>, so the sequence of pieces can be reproduced from its seed.
+**/
+public class PieceBag{
+	private static final PieceType[] TYPES = PieceType.values();
+	private static final Tile[] TILES = Tile.values();
+	/**
+	 *	The number of entries this <code>PieceBag</code> keeps ready after every refill.
+	**/
+	public static final int MIN_SIZE = TYPES.length;
+	/**
+	 *	The maximum number of entries a <code>PieceBag</code> can hold.
+	**/
+	public static final int CAPACITY = 16;
+	private final int[] entries;
+	private final int[] bag;
+	private final Random rand;
+	private int head;
+	private int size;
+	/**
+	 *	Creates a new, full <code>PieceBag</code>.
+	 *	@param rand the source of randomness for shuffles and colors
+	**/
+	public PieceBag(Random rand){
+		this.entries = new int[CAPACITY];
+		this.bag = new int[TYPES.length];
+		this.rand = rand;
+		this.head = 0;
+		this.size = 0;
+		refill();
+	}
+	/**
+	 *	Packs a piece type and its colors into a single entry.
+	 *	@param type the type of the piece
+	 *	@param colors the packed colors of the blocks of the piece
+	 *	@return the entry
+	**/
+	public static int pack(PieceType type, int colors){
+		return (colors<<3) | type.ordinal();
+	}
+	/**
+	 *	Returns the piece type of an entry.
+	 *	@param entry an entry generated by {@link #pack(PieceType,int) pack}
+	 *	@return the type of the piece
+	**/
+	public static PieceType getType(int entry){
+		return TYPES[entry&7];
+	}
+	/**
+	 *	Returns the packed colors of an entry.
+	 *	@param entry an entry generated by {@link #pack(PieceType,int) pack}
+	 *	@return the packed colors of the blocks of the piece
+	**/
+	public static int getColors(int entry){
+		return entry>>>3;
+	}
+	/**
+	 *	Shuffles and appends whole bags until at least {@link #MIN_SIZE MIN_SIZE} entries are queued.
+	**/
+	public void refill(){
+		while(size<MIN_SIZE){
+			for(int i = 0; i<bag.length; i++){
+				bag[i] = i;
+			}
+			for(int i = bag.length-1; i>0; i--){
+				int k = rand.nextInt(i+1);
+				int temp = bag[i];
+				bag[i] = bag[k];
+				bag[k] = temp;
+			}
+			for(int i = 0; i<bag.length; i++){
+				add(pack(TYPES[bag[i]],randomColors()));
+			}
+		}
+	}
+	private int randomColors(){
+		int colors = 0;
+		for(int k = 0; k<PieceType.NUM_CELLS; k++){
+			colors = Playfield.Piece.packColor(colors,k,TILES[rand.nextInt(TILES.length-1)+1]);
+		}
+		return colors;
+	}
+	/**
+	 *	Removes and returns the next entry, then refills this <code>PieceBag</code>.
+	 *	@return the next entry
+	**/
+	public int poll(){
+		if(size==0) refill();
+		int entry = entries[head];
+		head = (head+1)&(CAPACITY-1);
+		size--;
+		refill();
+		return entry;
+	}
+	/**
+	 *	Returns an upcoming entry without removing it.
+	 *	@param n the position of the entry, where <code>0</code> is the next piece
+	 *	@return the entry at position <code>n</code>
+	 *	@throws IndexOutOfBoundsException if <code>n</code> is not less than {@link #size() size()}
+	**/
+	public int peek(int n){
+		if(n<0 || n>=size) throw new IndexOutOfBoundsException("No piece at position "+n);
+		return entries[(head+n)&(CAPACITY-1)];
+	}
+	/**
+	 *	Returns the number of queued entries.
+	 *	@return the number of queued entries
+	**/
+	public int size(){
+		return size;
+	}
+	/**
+	 *	Removes every queued entry, without refilling.
+	**/
+	public void clear(){
+		head = 0;
+		size = 0;
+	}
+	/**
+	 *	Appends an entry at the end of the queue. Entries beyond the capacity of this <code>PieceBag</code> are ignored.
+	 *	@param entry an entry generated by {@link #pack(PieceType,int) pack}
+	**/
+	public void add(int entry){
+		if(size==CAPACITY) return;
+		entries[(head+size)&(CAPACITY-1)] = entry;
+		size++;
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ *	Smooths the displayed position of the current piece of a {@link Playfield Playfield} between updates of its state.
+ *	<p> Every time the state of the <code>Playfield</code> is about to change, either by a logic tick or by a snapshot received from the network, the pose of the piece is recorded as the start of a <i>motion</i>.
+ *	While drawing, the piece is then placed between the recorded pose and its current pose, in proportion to the time elapsed since the motion started.
+ *	A motion lasts one logic step for local updates, and the average interval between snapshots for remote updates, so that the display rate does not depend on either rate.
+ *	<p> Only short slides are smoothed. The position snaps whenever the piece is replaced, rotated, or moved further than {@link #MAX_SLIDE_CELLS MAX_SLIDE_CELLS} cells (for example, when it is hard dropped).
+**/
+public class PieceMotion{
+	/**
+	 *	The longest move, in cells summed over both axes, which is animated rather than shown immediately.
+	**/
+	public static final int MAX_SLIDE_CELLS = 2;
+	private static final long MAX_SNAPSHOT_INTERVAL = 1000000000L;
+	private int fromX, fromY;
+	private int fromRotation;
+	private int fromSerial;
+	private long startNanos;
+	private long durationNanos;
+	private long lastSnapshotNanos;
+	private long snapshotInterval;
+	private double x, y;
+	/**
+	 *	Creates a new <code>PieceMotion</code> with no motion in progress.
+	**/
+	public PieceMotion(){
+		this.fromSerial = -1;
+		this.startNanos = 0;
+		this.durationNanos = 0;
+		this.lastSnapshotNanos = 0;
+		this.snapshotInterval = GameLoop.STEP_NANOS;
+	}
+	private void begin(Playfield.Piece piece, int serial, long now, long duration){
+		if(piece==null){
+			fromSerial = -1;
+		}else{
+			fromX = piece.getX();
+			fromY = piece.getY();
+			fromRotation = piece.getRotationState().ordinal();
+			fromSerial = serial;
+		}
+		startNanos = now;
+		durationNanos = duration;
+	}
+	/**
+	 *	Starts a motion lasting a single logic step. Called before a local logic tick.
+	 *	@param piece the current piece, before the tick; may be <code>null</code>
+	 *	@param serial the serial number of <code>piece</code>
+	 *	@param now the current value of <code>System.nanoTime()</code>
+	**/
+	public void beginStep(Playfield.Piece piece, int serial, long now){
+		begin(piece,serial,now,GameLoop.STEP_NANOS);
+	}
+	/**
+	 *	Starts a motion lasting the average interval between snapshots. Called before a snapshot from the network is loaded.
+	 *	@param piece the current piece, before the snapshot is loaded; may be <code>null</code>
+	 *	@param serial the serial number of <code>piece</code>
+	 *	@param now the current value of <code>System.nanoTime()</code>
+	**/
+	public void beginSnapshot(Playfield.Piece piece, int serial, long now){
+		long interval = now-lastSnapshotNanos;
+		if(lastSnapshotNanos!=0 && interval>0 && interval<MAX_SNAPSHOT_INTERVAL){
+			snapshotInterval = (3*snapshotInterval+interval)/4;
+		}
+		lastSnapshotNanos = now;
+		begin(piece,serial,now,snapshotInterval);
+	}
+	/**
+	 *	Computes the position at which to draw a piece at a given time. The result is read through {@link #getX() getX()} and {@link #getY() getY()}.
+	 *	@param piece the current piece
+	 *	@param serial the serial number of <code>piece</code>
+	 *	@param now the current value of <code>System.nanoTime()</code>
+	**/
+	public void interpolate(Playfield.Piece piece, int serial, long now){
+		x = piece.getX();
+		y = piece.getY();
+		if(serial!=fromSerial || piece.getRotationState().ordinal()!=fromRotation || durationNanos<=0) return;
+		int dx = piece.getX()-fromX;
+		int dy = piece.getY()-fromY;
+		if(Math.abs(dx)+Math.abs(dy)>MAX_SLIDE_CELLS) return;
+		long elapsed = now-startNanos;
+		if(elapsed>=durationNanos) return;
+		double remaining = 1.0-Math.max(0.0,(double)elapsed/durationNanos);
+		x -= dx*remaining;
+		y -= dy*remaining;
+	}
+	/**
+	 *	Returns the column at which to draw the piece, as computed by the last call to {@link #interpolate(Playfield.Piece,int,long) interpolate}.
+	 *	@return the interpolated column, in cells
+	**/
+	public double getX(){
+		return x;
+	}
+	/**
+	 *	Returns the row at which to draw the piece, as computed by the last call to {@link #interpolate(Playfield.Piece,int,long) interpolate}.
+	 *	@return the interpolated row, in cells
+	**/
+	public double getY(){
+		return y;
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ *	The seven piece shapes, with the positions of their blocks precomputed for every rotation.
+**/
+enum PieceType{
+	O	( new int[][]{
+		{1, 1},
+		{1, 1},
+		} ), 
+	I	( new int[][]{
+		{0, 0, 0, 0},
+		{1, 1, 1, 1},
+		{0, 0, 0, 0},
+		{0, 0, 0, 0}
+		} ), 
+	Z	( new int[][]{
+		{1, 1, 0},
+		{0, 1, 1},
+		{0, 0, 0},
+		} ), 
+	S	( new int[][]{
+		{0, 1, 1},
+		{1, 1, 0},
+		{0, 0, 0},
+		} ), 
+	J	( new int[][]{
+		{1, 0, 0},
+		{1, 1, 1},
+		{0, 0, 0},
+		} ), 
+	L	( new int[][]{
+		{0, 0, 1},
+		{1, 1, 1},
+		{0, 0, 0},
+		} ), 
+	T	( new int[][]{
+		{0, 1, 0},
+		{1, 1, 1},
+		{0, 0, 0},
+		} );
+	/**
+	 *	The number of blocks in every piece.
+	**/
+	public static final int NUM_CELLS = 4;
+	private int[][] blueprint;
+	private final int size;
+	private final int[][] cellRows;
+	private final int[][] cellColumns;
+	private final int[][] rowMasks;
+	private final int[] minColumns;
+	private final int[] maxColumns;
+	private final int[] rotationOrder;
+	PieceType( int[][] blueprint ){
+		this.blueprint = blueprint;
+		this.size = blueprint.length;
+		this.cellRows = new int[4][NUM_CELLS];
+		this.cellColumns = new int[4][NUM_CELLS];
+		this.rowMasks = new int[4][size];
+		this.minColumns = new int[4];
+		this.maxColumns = new int[4];
+		int k = 0;
+		for(int i = 0; i<size; i++){
+			for(int j = 0; j<size; j++){
+				if(blueprint[i][j]!=0){
+					cellRows[0][k] = i;
+					cellColumns[0][k] = j;
+					k++;
+				}
+			}
+		}
+		//	A clockwise turn moves the cell at (row, column) to (column, size-1-row).
+		for(int r = 1; r<4; r++){
+			for(k = 0; k<NUM_CELLS; k++){
+				cellRows[r][k] = cellColumns[r-1][k];
+				cellColumns[r][k] = size-1-cellRows[r-1][k];
+			}
+		}
+		for(int r = 0; r<4; r++){
+			minColumns[r] = size;
+			maxColumns[r] = -1;
+			for(k = 0; k<NUM_CELLS; k++){
+				rowMasks[r][cellRows[r][k]] |= 1<<cellColumns[r][k];
+				minColumns[r] = Math.min(minColumns[r],cellColumns[r][k]);
+				maxColumns[r] = Math.max(maxColumns[r],cellColumns[r][k]);
+			}
+		}
+		this.rotationOrder = new int[NUM_CELLS];
+		for(k = 0; k<NUM_CELLS; k++){
+			rotationOrder[k] = getCellIndex(0,cellRows[1][k],cellColumns[1][k]);
+		}
+	}
+	public int[][] getBlueprint(){
+		int size = this.blueprint.length;
+		int[][] copy = new int[size][size];
+		for(int i = 0; i<size; i++)
+			for(int j = 0; j<size; j++)
+				copy[i][j] = blueprint[i][j];
+		return copy;
+	}
+	/**
+	 *	Returns the length of the sides of the bounding box of this piece type.
+	 *	@return the bounding box size of this piece type
+	**/
+	public int getSize(){
+		return size;
+	}
+	/**
+	 *	Returns the row of a block within the bounding box, for a given rotation.
+	 *	<p> Blocks are numbered in reading order of the spawn orientation, so block <code>k</code> is the same block in every rotation.
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@param cell the index of the block (0-3)
+	 *	@return the row of the block within the bounding box
+	**/
+	public int getCellRow(int rotation, int cell){
+		return cellRows[rotation][cell];
+	}
+	/**
+	 *	Returns the column of a block within the bounding box, for a given rotation.
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@param cell the index of the block (0-3)
+	 *	@return the column of the block within the bounding box
+	 *	@see #getCellRow(int rotation, int cell)
+	**/
+	public int getCellColumn(int rotation, int cell){
+		return cellColumns[rotation][cell];
+	}
+	/**
+	 *	Returns the bitmask of blocks on one row of the bounding box, for a given rotation. Bit <code>j</code> is set if column <code>j</code> of the bounding box contains a block.
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@param row the row of the bounding box
+	 *	@return the bitmask of blocks on the row
+	**/
+	public int getRowMask(int rotation, int row){
+		return rowMasks[rotation][row];
+	}
+	/**
+	 *	Returns the leftmost column of the bounding box which contains a block, for a given rotation.
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@return the leftmost occupied column
+	**/
+	public int getMinColumn(int rotation){
+		return minColumns[rotation];
+	}
+	/**
+	 *	Returns the rightmost column of the bounding box which contains a block, for a given rotation.
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@return the rightmost occupied column
+	**/
+	public int getMaxColumn(int rotation){
+		return maxColumns[rotation];
+	}
+	/**
+	 *	Returns the index of the block found at a position of the bounding box, for a given rotation.
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@param row the row of the bounding box
+	 *	@param column the column of the bounding box
+	 *	@return the index of the block at the given position, or -1 if there is none
+	**/
+	public int getCellIndex(int rotation, int row, int column){
+		for(int k = 0; k<NUM_CELLS; k++){
+			if(cellRows[rotation][k]==row && cellColumns[rotation][k]==column) return k;
+		}
+		return -1;
+	}
+	/**
+	 *	Returns where a block ends up in the spawn orientation if the whole piece is turned clockwise in place.
+	 *	<p> This is used for pieces whose shape does not change when rotated, where only the color layout turns.
+	 *	@param cell the index of the block (0-3)
+	 *	@return the index of the block which occupies the rotated position
+	**/
+	public int getRotatedCellIndex(int cell){
+		return rotationOrder[cell];
+	}
+}
@@ -1,173 +1,50 @@
+import java.nio.*;
 import java.util.*;
-import java.util.concurrent.*;
-import java.awt.*;
-import java.awt.geom.*;
-import java.io.*;
-import java.awt.image.*;
-import javax.imageio.*;
 
-enum RotationState{
-	SPAWN,
-	CW,
-	FLIP,
-	CCW
-}
-enum PieceType{
-	O	( new int[][]{
-		{1, 1},
-		{1, 1},
-		} ), 
-	I	( new int[][]{
-		{0, 0, 0, 0},
-		{1, 1, 1, 1},
-		{0, 0, 0, 0},
-		{0, 0, 0, 0}
-		} ), 
-	Z	( new int[][]{
-		{1, 1, 0},
-		{0, 1, 1},
-		{0, 0, 0},
-		} ), 
-	S	( new int[][]{
-		{0, 1, 1},
-		{1, 1, 0},
-		{0, 0, 0},
-		} ), 
-	J	( new int[][]{
-		{1, 0, 0},
-		{1, 1, 1},
-		{0, 0, 0},
-		} ), 
-	L	( new int[][]{
-		{0, 0, 1},
-		{1, 1, 1},
-		{0, 0, 0},
-		} ), 
-	T	( new int[][]{
-		{0, 1, 0},
-		{1, 1, 1},
-		{0, 0, 0},
-		} );
-	private int[][] blueprint;
-	PieceType( int[][] blueprint ){
-		this.blueprint = blueprint;
-	}
-	public int[][] getBlueprint(){
-		int size = this.blueprint.length;
-		int[][] copy = new int[size][size];
-		for(int i = 0; i<size; i++)
-			for(int j = 0; j<size; j++)
-				copy[i][j] = blueprint[i][j];
-		return copy;
-	}
-}
-enum Tile {
-	NONE 	(new Color(0,0,0,0),	new Color(0,0,0,0)),
-	RED 	(new Color(120, 0, 0),	new Color(210, 24, 10)),
-	BLUE 	(new Color(49, 97, 255),new Color(0, 195, 255)),
-	YELLOW 	(new Color(191, 191, 0),new Color(255, 255, 50)),
-	GREEN 	(new Color(0, 145, 0),	new Color(0, 247, 37)),
-	PURPLE 	(new Color(115, 0, 186),new Color(163, 55, 230));
-	private final String STR_BLOCK_IMAGE_FILENAME = "FinalBlock.png";
-	private BufferedImage IMG_BLOCK_IMAGE;
-	private Color color1,color2;
-	private boolean clearing;
-	private int currentFrame;
-	Tile(Color color1, Color color2){
-		try{
-			this.IMG_BLOCK_IMAGE = ImageIO.read(new File(STR_BLOCK_IMAGE_FILENAME));
-		}catch (IOException e){
-			this.IMG_BLOCK_IMAGE = null;
-			System.out.println("Failed to load images.");
-		}
-		this.color1 = color1;
-		this.color2 = color2;
-		this.clearing = false;
-		this.currentFrame = 0;
-	}
-	public Paint getPaint(Rectangle2D.Double tile, int alpha){
-		if(this==Tile.NONE) return color1;
-		Color color1 = new Color(
-			this.color1.getRed(),
-			this.color1.getGreen(),
-			this.color1.getBlue(),
-			alpha
-		);
-		Color color2 = new Color(
-			this.color2.getRed(),
-			this.color2.getGreen(),
-			this.color2.getBlue(),
-			alpha
-		);
-		return new GradientPaint(
-			(float)(tile.x+tile.width/2),
-			(float)(tile.y+tile.height),
-			color1,
-			(float)(tile.x+tile.width/2),
-			(float)(tile.y),
-			color2
-		);
-	}
-	public static int getTileCode(Tile tile){
-		switch(tile){
-			case RED: 		return 1;
-			case BLUE: 		return 2;
-			case YELLOW: 	return 3;
-			case GREEN: 	return 4;
-			case PURPLE: 	return 5;
-		}
-		return 0;
-	}
-	public void draw(Graphics2D context, int x, int y, int tileSize, int alpha){
-		if(this!=Tile.NONE){
-			AffineTransform scaleTransform = new AffineTransform();
-			scaleTransform.scale(tileSize/64.0,tileSize/64.0);
-			AffineTransformOp drawOp = new AffineTransformOp(
-				scaleTransform, 
-				null
-			);
-			Rectangle2D.Double cell = new Rectangle2D.Double(x,y,tileSize,tileSize);
-			if(this!=Tile.NONE && IMG_BLOCK_IMAGE != null){
-				context.drawImage(IMG_BLOCK_IMAGE, drawOp, x,y);
-			}
-			context.setPaint(getPaint(cell,alpha));
-			context.fill(cell);
-			context.setPaint(new Color(0,0,0,(int)Math.max(0,(255-alpha*1.4))));
-			context.fill(cell);
-		}
-	}
-	public void draw(Graphics2D context, Rectangle2D.Double tileArea, int alpha){
-		draw(context, (int)tileArea.x,(int)tileArea.y,(int)tileArea.width,alpha);
-	}
-}
 /**
  *	Represents a single playfield, and contains most game logic.
 **/
 public class Playfield{
-	private final String STR_PLAYFIELD_FILENAME = "Playfield2.png";
-	private final String STR_SMALL_PLAYFIELD_FILENAME = "Playfield2_2.png";
-	private final String STR_UIFONT_FILENAME = "joystix monospace.ttf";
-	private BufferedImage IMG_PLAYFIELD_IMAGE;
-	private BufferedImage IMG_SMALL_PLAYFIELD_IMAGE;
-	private Font FNT_UIFONT;
-	private final int normalAlpha = 180;
-	private final int ghostAlpha = 100;
-	private final int NUM_ROWS = 21;
-	private final int NUM_COLUMNS = 10;
+	/**
+	 *	The alpha value of blocks which are not being cleared.
+	**/
+	public static final int NORMAL_ALPHA = 180;
+	/**
+	 *	The maximum number of characters in a player name.
+	**/
+	public static final int MAX_NAME_LENGTH = 10;
+	private static final int NUM_ROWS = 21;
+	private static final int NUM_COLUMNS = 10;
 	private Random rand;
-	private Tile[][] playfield;
-	private int[][] drawAlpha;
+	private GarbageGenerator garbage;
+	private Board board;
+	private int[] clusterMask;
+	private int[] checkedMask;
+	private int[] changedMask;
+	private int[] clearedMask;
+	private int[] clearedTwiceMask;
+	private final ClearAnimation clearAnimation;
+	private boolean clearAnimationEnabled = true;
+	private int chainLength;
 	
-	private LinkedList<Piece> pieceQueue;
+	private final PieceBag pieceQueue;
 	private Piece currentPiece, heldPiece;
+	private final Piece activePiece = new Piece(PieceType.O,0);
+	private final Piece heldSlot = new Piece(PieceType.O,0);
+	private final Piece ghostPiece = new Piece(PieceType.O,0);
+	private final Piece ghostSource = new Piece(PieceType.O,0);
+	private int ghostBoardVersion;
+	private final Piece queuedPiece = new Piece(PieceType.O,0);
+	private int pieceSerial = 0;
+	private Board lastDisplayedBoard = null;
+	private PieceType snapshotType;
+	private final PlayfieldSnapshot wireSnapshot = newSnapshot();
+	private int snapshotColors;
+	private final PieceMotion pieceMotion = new PieceMotion();
 	
+	private final PlayfieldState.State[] states;
 	private PlayfieldState.State currentState;
-	java.util.Timer logicTimer;
-	private TimerTask logic = new TimerTask(){
-		public void run(){
-			currentState.update();
-		}
-	};
+	private volatile PlayfieldState.Listener[] stateListeners = new PlayfieldState.Listener[0];
 	
 	private int score;
 	private String playerName;
@@ -179,6 +56,7 @@ public class Playfield{
 	 *	@param numLines the number of garbage to add. 
 	**/
 	public synchronized void addGarbageToQueue(int numLines){
+		matchLog.addGarbage(tickCount,numLines);
 		if(numLines>=0)
 			garbageWaiting+=numLines;
 	}
@@ -187,60 +65,146 @@ public class Playfield{
 	 *	<p> If the garbage overflows this <code>Playfield</code>, the <code>Playfield</code> is reset and all remaining incoming garbage is ignored.
 	**/
 	public synchronized void spawnGarbage(){
-		int freeColumn = rand.nextInt(NUM_COLUMNS);
-		for(int k = 0; k<garbageWaiting; k++){
-			for(int i = 0; i<NUM_COLUMNS; i++){
-				if(playfield[0][i]!=Tile.NONE){
-					setState(new PlayfieldState.GameOver(this));
-					garbageWaiting = 0;
-					return;
-				}
-			}
-			Tile[] newRow = new Tile[NUM_COLUMNS];
-			for(int i = 0; i<NUM_COLUMNS; i++){
-				if(i==freeColumn){
-					newRow[i] = Tile.NONE;
-					continue;
-				}
-				ArrayList<Tile> choices = new ArrayList<Tile>();
-				for(Tile t : Tile.values()){
-					choices.add(t);
-				}
-				choices.remove(Tile.NONE);
-				choices.remove(playfield[NUM_ROWS-1][i]);
-				if(i>0) choices.remove(newRow[i-1]);
-				if(i<NUM_COLUMNS-1) choices.remove(newRow[i+1]);
-				
-				newRow[i] = choices.get(rand.nextInt(choices.size()));
-			}
-			for(int i = 0; i<NUM_ROWS-1; i++){
-				playfield[i] = playfield[i+1];
-			}
-			playfield[NUM_ROWS-1] = newRow;
+		if(garbage.addRows(board,garbageWaiting)<garbageWaiting){
+			setState(PlayfieldState.Id.GAMEOVER);
 		}
 		garbageWaiting = 0;
 	}
 	/**
-	 *	Sets the current behavior of this <code>Playfield</code> using a {@link PlayfieldState.State PlayfieldState.State} object.
-	 *	@param newState the new state object to assign to this <code>Playfield</code>
+	 *	Sets the current behavior of this <code>Playfield</code> to one of its {@link PlayfieldState.State PlayfieldState.State} objects.
+	 *	<p> The state object is reset through {@link PlayfieldState.State#enter() enter()}, and every registered {@link PlayfieldState.Listener PlayfieldState.Listener} is notified.
+	 *	@param id the <code>Id</code> of the new state of this <code>Playfield</code>
+	**/
+	public void setState(PlayfieldState.Id id){
+		PlayfieldState.Id previous = currentState==null ? null : currentState.getId();
+		this.currentState = states[id.ordinal()];
+		PlayfieldState.Listener[] listeners = stateListeners;
+		for(int i = 0; i<listeners.length; i++){
+			listeners[i].stateChanged(this,previous,id);
+		}
+		currentState.enter();
+	}
+	/**
+	 *	Returns the <code>Id</code> of the current state of this <code>Playfield</code>.
+	 *	@return the <code>Id</code> of the current state
+	**/
+	public PlayfieldState.Id getStateId(){
+		return currentState.getId();
+	}
+	/**
+	 *	Registers a listener which is notified every time this <code>Playfield</code> changes state.
+	 *	@param listener the listener to add
+	**/
+	public synchronized void addStateListener(PlayfieldState.Listener listener){
+		PlayfieldState.Listener[] listeners = Arrays.copyOf(stateListeners,stateListeners.length+1);
+		listeners[listeners.length-1] = listener;
+		stateListeners = listeners;
+	}
+	/**
+	 *	Removes a listener added by {@link #addStateListener(PlayfieldState.Listener) addStateListener(PlayfieldState.Listener)}.
+	 *	@param listener the listener to remove
 	**/
-	public void setState(PlayfieldState.State newState){
-		this.currentState = newState;
+	public synchronized void removeStateListener(PlayfieldState.Listener listener){
+		for(int i = 0; i<stateListeners.length; i++){
+			if(stateListeners[i]==listener){
+				PlayfieldState.Listener[] listeners = new PlayfieldState.Listener[stateListeners.length-1];
+				System.arraycopy(stateListeners,0,listeners,0,i);
+				System.arraycopy(stateListeners,i+1,listeners,i,listeners.length-i);
+				stateListeners = listeners;
+				return;
+			}
+		}
 	}
 	private boolean logicEnabled = false;
+	private boolean scheduled = false;
+	private int tickCount = 0;
+	private MatchLog matchLog;
 	/**
-	 *	Starts executing the internal logic of this <code>Playfield</code>.
+	 *	Starts executing the internal logic of this <code>Playfield</code>, ticked by the shared {@link GameLoop GameLoop}.
 	**/
 	public void startLogic(){
-		this.logicTimer.scheduleAtFixedRate(logic,0, 33);
+		startLogic(true);
+	}
+	/**
+	 *	Starts executing the internal logic of this <code>Playfield</code>.
+	 *	@param useGameLoop <code>true</code> to have the shared {@link GameLoop GameLoop} tick this <code>Playfield</code>, or <code>false</code> if the caller will call {@link #tick() tick()} itself
+	**/
+	public void startLogic(boolean useGameLoop){
 		this.logicEnabled = true;
+		this.scheduled = useGameLoop;
+		if(useGameLoop) GameLoop.getInstance().register(this);
 	}
 	/**
-	 *	Stops executing the internal logic of this <code>Playfield</code>.
+	 *	Stops executing the internal logic of this <code>Playfield</code>, and marks the end of the current match in its {@link MatchLog MatchLog}.
 	**/
 	public void stopLogic(){
-		this.logic.cancel();
-		this.logicEnabled = false;
+		if(scheduled) GameLoop.getInstance().deregister(this);
+		synchronized(this){
+			this.scheduled = false;
+			this.logicEnabled = false;
+			matchLog.setEndTick(tickCount);
+		}
+	}
+	/**
+	 *	Advances the internal logic of this <code>Playfield</code> by a single step.
+	 *	<p> This is called by the shared {@link GameLoop GameLoop} while the logic of this <code>Playfield</code> is enabled.
+	 *	Inputs and garbage are never applied in the middle of a step, so a match can be reproduced from its {@link MatchLog MatchLog}.
+	**/
+	public synchronized void tick(){
+		pieceMotion.beginStep(currentPiece,pieceSerial,System.nanoTime());
+		currentState.update();
+		tickCount++;
+	}
+	/**
+	 *	Returns the number of ticks completed since the current match started.
+	 *	@return the number of ticks completed in the current match
+	**/
+	public synchronized int getTickCount(){
+		return tickCount;
+	}
+	/**
+	 *	Returns the log of the current match, which records every input and incoming garbage since {@link #startMatch(long) startMatch(long)}.
+	 *	@return the log of the current match
+	**/
+	public synchronized MatchLog getMatchLog(){
+		return matchLog;
+	}
+	/**
+	 *	Resets this <code>Playfield</code> for a new match, and starts a new {@link MatchLog MatchLog}.
+	 *	<p> All the randomness of the match (the piece queue, the piece colors and garbage) is drawn from <code>seed</code>, so two matches with the same seed and the same events are identical.
+	 *	@param seed the seed of the match
+	**/
+	public synchronized void startMatch(long seed){
+		rand.setSeed(seed);
+		clearField();
+		score = 0;
+		garbageWaiting = 0;
+		chainLength = 0;
+		heldPiece = null;
+		pieceQueue.clear();
+		pieceQueue.refill();
+		tickCount = 0;
+		matchLog = new MatchLog(seed,clearAnimationEnabled);
+		getNextPiece();
+		setState(PlayfieldState.Id.NORMAL);
+	}
+	/**
+	 *	Applies an input from the player to the current piece, and records it in the {@link MatchLog MatchLog} of the current match.
+	 *	<p> Inputs have no effect while the logic of this <code>Playfield</code> is stopped, so they are not recorded either; otherwise an input sent after the end of a match would be applied when the match is replayed.
+	 *	@param input the input to apply
+	**/
+	public synchronized void applyInput(Input input){
+		if(!logicEnabled) return;
+		matchLog.addInput(tickCount,input);
+		switch(input){
+			case LEFT:		movePiece(-1,0);	break;
+			case RIGHT:		movePiece(1,0);		break;
+			case UP:		movePiece(0,-1);	break;
+			case DOWN:		movePiece(0,1);		break;
+			case ROTATE:	rotatePiece();		break;
+			case HOLD:		hold();				break;
+			case HARD_DROP:	hardDrop();			break;
+		}
 	}
 	/**
 	 *	Checks if the internal logic of this <code>Playfield</code> is enabled.
@@ -253,29 +217,25 @@ public class Playfield{
 	 *	Creates a new blank <code>Playfield</code>.
 	**/
 	public Playfield(){
-		try{
-			this.IMG_PLAYFIELD_IMAGE = ImageIO.read(new File(STR_PLAYFIELD_FILENAME));
-			this.IMG_SMALL_PLAYFIELD_IMAGE = ImageIO.read(new File(STR_SMALL_PLAYFIELD_FILENAME));
-			this.FNT_UIFONT = Font.createFont(Font.TRUETYPE_FONT, new File(STR_UIFONT_FILENAME));
-		}catch (Exception e){
-			this.IMG_PLAYFIELD_IMAGE = null;
-			this.IMG_SMALL_PLAYFIELD_IMAGE = null;
-			this.FNT_UIFONT = null;
-			System.out.println("Failed to load resources.");
-		}
 		this.rand = new Random();
-		this.playfield = new Tile[NUM_ROWS][NUM_COLUMNS];
-		this.drawAlpha = new int[NUM_ROWS][NUM_COLUMNS];
+		this.garbage = new GarbageGenerator(rand);
+		this.board = new Board(NUM_ROWS,NUM_COLUMNS,NORMAL_ALPHA);
+		this.clusterMask = new int[NUM_ROWS];
+		this.checkedMask = new int[NUM_ROWS];
+		this.changedMask = new int[NUM_ROWS];
+		this.clearedMask = new int[NUM_ROWS];
+		this.clearedTwiceMask = new int[NUM_ROWS];
+		this.clearAnimation = new ClearAnimation(NUM_ROWS,NUM_COLUMNS,NORMAL_ALPHA);
 		this.currentPiece = null;
 		this.heldPiece = null;
-		this.pieceQueue = new LinkedList<Piece>();
-		this.logicTimer = new java.util.Timer();
+		this.pieceQueue = new PieceBag(rand);
 		this.score = 0;
 		this.playerName = "Loading name...";
-		setState(new PlayfieldState.Normal(this));
+		this.states = PlayfieldState.createStates(this);
+		setState(PlayfieldState.Id.NORMAL);
 		this.clearField();
-		reloadQueue();
 		getNextPiece();
+		this.matchLog = new MatchLog(0,clearAnimationEnabled);
 	}
 	/**
 	 *	Creates a new <code>Playfield</code> from a String generated by {@link #toString() toString()}.
@@ -288,10 +248,15 @@ public class Playfield{
 		loadData(objectData);
 	}
 	/**
-	 *	Sets the player name of this <code>Playfield</code>.
+	 *	Sets the player name of this <code>Playfield</code>. Names longer than {@link #MAX_NAME_LENGTH MAX_NAME_LENGTH} characters are cut short.
 	 *	@param newName the new player name of this <code>Playfield</code>.
 	**/
 	public void setName(String newName){
+		if(newName.length()>MAX_NAME_LENGTH){
+			int end = MAX_NAME_LENGTH;
+			if(Character.isHighSurrogate(newName.charAt(end-1))) end--;
+			newName = newName.substring(0,end);
+		}
 		playerName = newName;
 	}
 	/**
@@ -317,101 +282,113 @@ public class Playfield{
 	}
 	
 	/**
-	 *	Draws this <code>Playfield</code> at the origin of the given <code>Graphics2D</code> context.
-	 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Playfield</code>
-	 *	@param tileSize the length in pixels of each side of a single tile
-	**/
-	public synchronized void draw(Graphics2D context, int tileSize, boolean fullUI){
-		AffineTransform scaleTransform = new AffineTransform();
-		scaleTransform.scale(tileSize/20.0,tileSize/20.0);
-		AffineTransformOp drawOp = new AffineTransformOp(
-			scaleTransform, 
-			new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON)
-		);
-		
-		context.setPaint(new Color(0,0,0,175));
-		context.fill(new Rectangle2D.Double(0,0,NUM_COLUMNS*tileSize,NUM_ROWS*tileSize));
-		
-		
-		for(int x = 0; x<NUM_COLUMNS; x++){
-			for(int y = 0; y<NUM_ROWS; y++){
-				context.setPaint(new Color(100,100,100,175));
-				context.draw(new Rectangle2D.Double(x*tileSize,y*tileSize,tileSize,tileSize));
-				playfield[y][x].draw(context,x*tileSize,y*tileSize,tileSize,drawAlpha[y][x]);
-			}
-		}
-		if(fullUI){
-			if(IMG_PLAYFIELD_IMAGE!=null){
-				context.drawImage(IMG_PLAYFIELD_IMAGE,drawOp,-4*tileSize,(int)(-1.5*tileSize));
-			}
-		}else{
-			if(IMG_SMALL_PLAYFIELD_IMAGE!=null){
-				context.drawImage(IMG_SMALL_PLAYFIELD_IMAGE,drawOp,(int)(-0.2*tileSize),(int)(-1.5*tileSize));
-			}
-		}
-		
-		context.setPaint(Color.WHITE);
-		context.setFont(FNT_UIFONT.deriveFont((float)tileSize));
-		int width = context.getFontMetrics().stringWidth(playerName);
-		context.drawString(playerName, (NUM_COLUMNS*tileSize-width)/2, -tileSize/2);
-
-		width = context.getFontMetrics().stringWidth(Integer.toString(score));
-		context.drawString(Integer.toString(score), (NUM_COLUMNS*tileSize-width)/2, (int)((NUM_ROWS*tileSize)+tileSize*1.1));
-		
-		if(fullUI){
-			if(garbageWaiting>0){
-				width = context.getFontMetrics().stringWidth("Warning! "+Integer.toString(garbageWaiting)+" incoming!");
-				context.drawString("Warning! "+Integer.toString(garbageWaiting)+" incoming!", (NUM_COLUMNS*tileSize-width)/2, (int)((NUM_ROWS*tileSize)+tileSize*3));
-			}
-		}
-		if(currentPiece!=null){
-			Piece ghostPiece = new Piece(currentPiece);
-			while(!ghostPiece.isGrounded()){
-				ghostPiece.move(0,1);
-			}
-			ghostPiece.draw(context,tileSize,ghostPiece.x*tileSize,ghostPiece.y*tileSize,ghostAlpha);
-			currentPiece.draw(context,tileSize,currentPiece.x*tileSize,currentPiece.y*tileSize,normalAlpha);
-		}
-		if(!fullUI) return;
-		if(heldPiece!=null){
-			heldPiece.draw(context,tileSize*2/3,(int)(-3.4*tileSize),(int)(1.2*tileSize),normalAlpha);
-		}
-		if(pieceQueue!=null){
-			pieceQueue.get(0).draw(context,tileSize*2/3,(int)((NUM_COLUMNS+0.6)*tileSize),(int)(1.2*tileSize),normalAlpha);
-			pieceQueue.get(1).draw(context,tileSize*2/3,(int)((NUM_COLUMNS+0.6)*tileSize),(int)(5*tileSize),normalAlpha);
-			pieceQueue.get(2).draw(context,tileSize*2/3,(int)((NUM_COLUMNS+0.6)*tileSize),(int)(8.8*tileSize),normalAlpha);
+	 *	Returns the number of incoming garbage lines which have not been spawned yet.
+	 *	@return the number of incoming garbage lines
+	**/
+	public synchronized int getGarbageWaiting(){
+		return garbageWaiting;
+	}
+	/**
+	 *	Returns the {@link Board Board} as it should currently be displayed. While a chain is being animated, this is the board of the {@link ClearAnimation ClearAnimation}.
+	 *	@return the <code>Board</code> to display
+	**/
+	public synchronized Board getDisplayedBoard(){
+		return clearAnimation.isActive() ? clearAnimation.getBoard() : board;
+	}
+	/**
+	 *	Adds the cells of the displayed board which need to be drawn again to <code>result</code>, and resets that set.
+	 *	<p> Cells become dirty when a piece locks, when a chain or its animation changes them, when garbage rises, or when a snapshot changes them. Every cell is dirty after the displayed board switches between the field and its {@link ClearAnimation ClearAnimation}.
+	 *	The current piece is not part of the board, so its cells are never reported. Each set is only reported once, so a <code>Playfield</code> should be drawn from a single cache.
+	 *	@param result an array with one entry per row, whose entries are OR-ed with the bitmask of cells to draw on each row
+	 *	@return <code>true</code> if any cell needs to be drawn, and <code>false</code> otherwise
+	**/
+	public synchronized boolean collectDirtyCells(int[] result){
+		Board shown = getDisplayedBoard();
+		if(shown!=lastDisplayedBoard){
+			lastDisplayedBoard = shown;
+			shown.markAllDirty();
 		}
+		return shown.collectDirtyCells(result);
+	}
+	/**
+	 *	Returns the piece to display as the current piece. Unlike {@link #getCurrentPiece() getCurrentPiece()}, this does not depend on whether the logic of this <code>Playfield</code> is enabled.
+	 *	@return the current piece, or <code>null</code> if there is none
+	**/
+	public synchronized Piece getDisplayedPiece(){
+		return currentPiece;
+	}
+	/**
+	 *	Returns the ghost piece, showing where the current piece would land if it were hard dropped.
+	 *	@return the ghost piece, or <code>null</code> if there is no current piece
+	**/
+	public synchronized Piece getGhostPiece(){
+		if(currentPiece==null) return null;
+		updateGhostPiece();
+		return ghostPiece;
+	}
+	/**
+	 *	Returns the held piece.
+	 *	@return the held piece, or <code>null</code> if no piece is held
+	**/
+	public synchronized Piece getHeldPiece(){
+		return heldPiece;
+	}
+	/**
+	 *	Returns the number of pieces in the piece queue.
+	 *	@return the number of queued pieces
+	**/
+	public synchronized int getQueueSize(){
+		return pieceQueue.size();
+	}
+	/**
+	 *	Returns a number which changes every time the current piece is replaced by another piece, so that a replaced piece is not animated as if it had moved.
+	 *	@return the serial number of the current piece
+	**/
+	public synchronized int getPieceSerial(){
+		return pieceSerial;
+	}
+	/**
+	 *	Returns the {@link PieceMotion PieceMotion} which smooths the displayed position of the current piece between updates.
+	 *	@return the motion of the current piece
+	**/
+	public synchronized PieceMotion getPieceMotion(){
+		return pieceMotion;
+	}
+	private void updateGhostPiece(){
+		if(ghostBoardVersion==board.getVersion() && ghostSource.equals(currentPiece)) return;
+		ghostSource.set(currentPiece);
+		ghostPiece.set(currentPiece);
+		ghostPiece.drop(board);
+		ghostBoardVersion = board.getVersion();
 	}
 	/**
 	 *	Clears all the tiles in this <code>Playfield</code>.
 	**/
 	public synchronized void clearField(){
-		for(int i = 0; i<NUM_ROWS; i++){
-			for(int j = 0; j<NUM_COLUMNS; j++){
-				this.playfield[i][j] = Tile.NONE;
-				this.drawAlpha[i][j] = normalAlpha;
-			}
-		}
+		board.clear();
+		clearAnimation.cancel();
 	}
 	
-	private synchronized void reloadQueue(){
-		while(pieceQueue.size()<7){
-			PieceType[] types = PieceType.values();
-			ArrayList<Integer> insertOrder = new ArrayList<Integer>();
-			for(int i = 0; i<types.length; i++) insertOrder.add(i);
-			Collections.shuffle(insertOrder);
-			for(int i : insertOrder){
-				pieceQueue.offerLast(new Piece(PieceType.values()[i]));
-			}
-		}
+	/**
+	 *	Returns an upcoming piece of the piece queue.
+	 *	<p> The returned <code>Piece</code> is reused by every call, so it is only valid until the next call.
+	 *	@param n the position of the piece in the queue, where <code>0</code> is the next piece
+	 *	@return the piece at position <code>n</code>
+	**/
+	public synchronized Piece getQueuedPiece(int n){
+		int entry = pieceQueue.peek(n);
+		queuedPiece.reset(PieceBag.getType(entry),PieceBag.getColors(entry));
+		return queuedPiece;
 	}
 	
 	/**
 	 *	Discards the current {@link Piece Piece} in play, and obtains a new <code>Piece</code> from the piece queue.
 	**/
 	public synchronized void getNextPiece(){
-		currentPiece = pieceQueue.poll();
-		reloadQueue();
+		int next = pieceQueue.poll();
+		activePiece.reset(PieceBag.getType(next),PieceBag.getColors(next));
+		currentPiece = activePiece;
+		pieceSerial++;
 	}
 	/**
 	 *	Returns the current <code>Piece</code> in play.
@@ -421,107 +398,149 @@ public class Playfield{
 		if(!logicEnabled) return null;
 		return currentPiece;
 	}
+	/**
+	 *	Returns the {@link Board Board} which holds the blocks of this <code>Playfield</code>.
+	 *	@return the <code>Board</code> of this <code>Playfield</code>
+	**/
+	public Board getBoard(){
+		return board;
+	}
+	/**
+	 *	Moves the current piece by an x,y offset, measured in number of tiles.
+	 *	<p> Nothing happens if there is no piece in play, or if the movement is currently impossible.
+	 *	@param dx the x offset, measured in number of tiles
+	 *	@param dy the y offset, measured in number of tiles
+	 *	@see Piece#move(Board board, int dx, int dy)
+	**/
+	public synchronized void movePiece(int dx, int dy){
+		if(getCurrentPiece()!=null) currentPiece.move(board,dx,dy);
+	}
+	/**
+	 *	Rotates the current piece clockwise, using wall kicks if necessary.
+	 *	<p> Nothing happens if there is no piece in play, or if the rotation is currently impossible.
+	 *	@see Piece#rotate(Board board)
+	**/
+	public synchronized void rotatePiece(){
+		if(getCurrentPiece()!=null) currentPiece.rotate(board);
+	}
+	/**
+	 *	Drops the current piece to the bottom of this <code>Playfield</code>.
+	 *	<p> This <code>Playfield</code> is then set to the {@link PlayfieldState.Reload Reload} state.
+	**/
+	public synchronized void hardDrop(){
+		if(getCurrentPiece()==null) return;
+		currentPiece.drop(board);
+		setState(PlayfieldState.Id.RELOAD);
+	}
+	/**
+	 *	Returns <code>true</code> if the current piece cannot move further downward.
+	 *	@return <code>true</code> if there is a piece in play and it cannot move further downward, and <code>false</code> otherwise.
+	**/
+	public synchronized boolean isPieceGrounded(){
+		return getCurrentPiece()!=null && currentPiece.isGrounded(board);
+	}
+	/**
+	 *	Copies the tiles of the current piece to this <code>Playfield</code>, at its current position.
+	 *	@return <code>true</code> if the current position of the piece is valid, and <code>false</code> otherwise.
+	**/
+	public synchronized boolean lockPiece(){
+		if(currentPiece==null) return false;
+		return currentPiece.addToBoard(board);
+	}
 	
-	private synchronized void flag(int i,int j){
-		drawAlpha[i][j]-=20;
-	}
-	private synchronized boolean isFlagged(int i, int j){
-		return drawAlpha[i][j]<normalAlpha;
-	}
-	private synchronized void nextFrame(int i, int j){
-		drawAlpha[i][j] = Math.max(0,drawAlpha[i][j]-20);
-		if(drawAlpha[i][j]==0){
-			drawAlpha[i][j] = normalAlpha;
-			playfield[i][j] = Tile.NONE;
-			score+=10;
-			for(int k = i; k>0; k--){
-				if(playfield[k][j]==Tile.NONE && playfield[k-1][j]!=Tile.NONE){
-					playfield[k][j] = playfield[k-1][j];
-					playfield[k-1][j] = Tile.NONE;
+	private int findClears(){
+		if(!board.collectChanges(changedMask)) return 0;
+		for(int i = 0; i<NUM_ROWS; i++){
+			checkedMask[i] = 0;
+			clearedMask[i] = 0;
+			clearedTwiceMask[i] = 0;
+		}
+		for(int i = 0; i<NUM_ROWS; i++){
+			int unchecked = changedMask[i]&board.getRowMask(i)&~checkedMask[i];
+			while(unchecked!=0){
+				int j = Integer.numberOfTrailingZeros(unchecked);
+				int count = board.findCluster(i,j,clusterMask);
+				for(int k = 0; k<NUM_ROWS; k++){
+					checkedMask[k] |= clusterMask[k];
+				}
+				if(count>=4){
+					for(int k = 0; k<NUM_ROWS; k++){
+						clearedMask[k] |= clusterMask[k];
+					}
 				}
+				unchecked &= ~clusterMask[i];
 			}
 		}
-	}
-	private boolean[][] visited;
-	private int countAdjacent(int i, int j, Tile match){
-		if(i<0 || j<0 || i>=NUM_ROWS || j>=NUM_COLUMNS) return 0;
-		if(playfield[i][j]!=match) return 0;
-		if(visited[i][j]) return 0;
-		visited[i][j] = true;
-		int count = 1;
-		count += countAdjacent(i+1,j,match);
-		count += countAdjacent(i-1,j,match);
-		count += countAdjacent(i,j+1,match);
-		count += countAdjacent(i,j-1,match);
-		return count;
-	}
-	private void flagAdjacent(int i, int j, Tile match){
-		if(i<0 || j<0 || i>=NUM_ROWS || j>=NUM_COLUMNS) return;
-		if(playfield[i][j]!=match) return;
-		if(isFlagged(i,j)) return;
-		flag(i,j);
-		flagAdjacent(i+1,j,match);
-		flagAdjacent(i-1,j,match);
-		flagAdjacent(i,j+1,match);
-		flagAdjacent(i,j-1,match);
-		return;
-	}
-	/**
-	 *	Flags for deletion any lines or color matches currently in the field.
-	**/
-	public void clear(){
-		if(!logicEnabled) return;
-		currentPiece = null;
-		visited = new boolean[NUM_ROWS][NUM_COLUMNS];
+		int total = 0;
 		for(int i = 0; i<NUM_ROWS; i++){
-			for(int j = 0; j<NUM_COLUMNS; j++){
-				if(playfield[i][j]!=Tile.NONE && countAdjacent(i,j,playfield[i][j])>=4){
-					flagAdjacent(i,j,playfield[i][j]);
-				}
+			if(changedMask[i]!=0 && board.isRowFull(i)){
+				clearedTwiceMask[i] = clearedMask[i];
+				clearedMask[i] = board.getRowMask(i);
 			}
+			total += Integer.bitCount(clearedMask[i]);
 		}
-		for(int i = NUM_ROWS-1; i>=0; i--){
-			boolean fullLine = true;
-			for(int j = 0; j<NUM_COLUMNS; j++){
-				if(playfield[i][j]==Tile.NONE){
-					fullLine = false;
-					break;
-				}
+		return total;
+	}
+	private void removeCleared(){
+		for(int i = 0; i<NUM_ROWS; i++){
+			int remaining = clearedMask[i];
+			if(remaining==0) continue;
+			if(remaining==(1<<NUM_COLUMNS)-1){
+				board.removeRow(i);
+				continue;
 			}
-			if(fullLine){
-				for(int j = 0; j<NUM_COLUMNS; j++){
-					flag(i,j);
-				}
+			while(remaining!=0){
+				int j = Integer.numberOfTrailingZeros(remaining);
+				remaining &= remaining-1;
+				board.removeCell(i,j);
 			}
 		}
 	}
 	/**
-	 *	Returns <code>true</code> if all blocks flagged for deletion are cleared.
-	 *	<p> Otherwise, all blocks flagged for deletion proceed to the next frame of animation.
-	 *	@return	<code>true</code> if all blocks flagged for deletion are cleared, and <code>false</code> otherwise.
+	 *	Removes any lines or color matches currently in the field, along with every chain that follows, and adds the resulting score.
+	 *	<p> The whole chain is resolved by this call. Only cells which have changed since the last call (because of a locked piece, falling blocks or garbage) are used as starting points, since any other group of blocks has already been checked.
+	 *	<p> If the clear animation is enabled, the chain is also recorded so that it can be replayed by {@link #isDoneClearing() isDoneClearing()}.
+	 *	@return the number of blocks removed
 	**/
-	public synchronized boolean isDoneClearing(){
-		boolean isDone = true;
-		for(int i = 0; i<NUM_ROWS; i++){
-			for(int j = 0; j<NUM_COLUMNS; j++){
-				if(isFlagged(i,j)){
-					isDone = false;
-					nextFrame(i,j);
-				}
-			}
-		}
-		//Check again for any chains
-		if(isDone){
-			clear();
-			for(int i = 0; i<NUM_ROWS; i++){
-				for(int j = 0; j<NUM_COLUMNS; j++){
-					if(isFlagged(i,j)){
-						isDone = false;
-					}
-				}
-			}
+	public synchronized int resolveChain(){
+		if(!logicEnabled) return 0;
+		currentPiece = null;
+		chainLength = 0;
+		if(clearAnimationEnabled) clearAnimation.start(board);
+		int removed = 0;
+		int count;
+		while((count = findClears())>0){
+			if(clearAnimationEnabled) clearAnimation.addWave(clearedMask,clearedTwiceMask);
+			removeCleared();
+			score += 10*count;
+			removed += count;
+			chainLength++;
 		}
-		return isDone;
+		return removed;
+	}
+	/**
+	 *	Returns the number of consecutive clears made by the last call to {@link #resolveChain() resolveChain()}.
+	 *	@return the length of the last chain, or <code>0</code> if nothing was cleared
+	**/
+	public synchronized int getChainLength(){
+		return chainLength;
+	}
+	/**
+	 *	Returns <code>true</code> if the animation of the last chain has finished.
+	 *	<p> Otherwise, the animation proceeds to its next frame.
+	 *	@return	<code>true</code> if the clear animation has finished or is disabled, and <code>false</code> otherwise.
+	**/
+	public synchronized boolean isDoneClearing(){
+		return !clearAnimationEnabled || clearAnimation.advance();
+	}
+	/**
+	 *	Sets whether or not chains are recorded and animated.
+	 *	<p> When disabled, pieces are reloaded as soon as a chain is resolved. This is useful when this <code>Playfield</code> is not displayed.
+	 *	@param enabled <code>true</code> to animate clears, and <code>false</code> otherwise
+	**/
+	public synchronized void setClearAnimationEnabled(boolean enabled){
+		clearAnimationEnabled = enabled;
+		if(!enabled) clearAnimation.cancel();
 	}
 	private boolean holdEnabled = false;
 	/**
@@ -541,13 +560,13 @@ public class Playfield{
 		if(logicEnabled==false || currentPiece==null) return;
 		if(holdEnabled==false) return;
 		if(heldPiece==null){
-			heldPiece = new Piece(currentPiece);
+			heldSlot.set(currentPiece);
+			heldPiece = heldSlot;
 			getNextPiece();
 		}else{
-			Piece temp = heldPiece;
-			heldPiece = currentPiece;
-			currentPiece = temp;
+			currentPiece.swap(heldPiece);
 			currentPiece.setToSpawnPosition();
+			pieceSerial++;
 		}
 		heldPiece.setToSpawnPosition();
 		setHoldEnabled(false);
@@ -563,13 +582,14 @@ public class Playfield{
 	 *	@param objectData the string to be parsed and loaded as <code>Playfield</code> data.
 	**/
 	public synchronized void loadData(String objectData){
-		playerName = getDataBlock(objectData,"playerNameStart","playerNameEnd");
+		beginSnapshot();
+		setName(getDataBlock(objectData,"playerNameStart","playerNameEnd"));
 		score = Integer.parseInt(getDataBlock(objectData,"scoreStart","scoreEnd"));
 		
 		String[] playfieldData = getDataBlock(objectData,"playfieldStart","playfieldEnd").split(",");
 		for(int i = 0; i<NUM_ROWS; i++){
 			for(int j = 0; j<NUM_COLUMNS; j++){
-				playfield[i][j] = Tile.values()[Integer.parseInt(playfieldData[i*NUM_COLUMNS+j])];
+				loadTile(i,j,Tile.values()[Integer.parseInt(playfieldData[i*NUM_COLUMNS+j])]);
 			}
 		}
 		
@@ -577,21 +597,148 @@ public class Playfield{
 		if(currentPieceData.equals("null")){
 			currentPiece = null;
 		}else{
-			currentPiece = new Piece(currentPieceData);
+			activePiece.loadData(currentPieceData);
+			currentPiece = activePiece;
 		}
 		
 		String heldPieceData = getDataBlock(objectData,"heldPieceStart","heldPieceEnd");
 		if(heldPieceData.equals("null")){
 			heldPiece =null;
 		}else{
-			heldPiece = new Piece(heldPieceData);
+			heldSlot.loadData(heldPieceData);
+			heldPiece = heldSlot;
 		}
 		String[] pieceQueueData = getDataBlock(objectData,"pieceQueueStart","pieceQueueEnd").split("PieceData,");
-		LinkedList<Piece> newPieceQueue = new LinkedList<Piece>();
+		pieceQueue.clear();
 		for(int i = 1; i<pieceQueueData.length; i++){
-			newPieceQueue.add(new Piece(pieceQueueData[i]));
+			queuedPiece.loadData(pieceQueueData[i]);
+			pieceQueue.add(PieceBag.pack(queuedPiece.type,queuedPiece.colors));
+		}
+		endSnapshot();
+	}
+	private void beginSnapshot(){
+		pieceMotion.beginSnapshot(currentPiece,pieceSerial,System.nanoTime());
+		snapshotType = currentPiece==null ? null : currentPiece.type;
+		snapshotColors = currentPiece==null ? 0 : currentPiece.colors;
+	}
+	private void endSnapshot(){
+		if(currentPiece!=null && (currentPiece.type!=snapshotType || currentPiece.colors!=snapshotColors)) pieceSerial++;
+	}
+	private void loadTile(int row, int column, Tile tile){
+		if(board.getTile(row,column)!=tile) board.setTile(row,column,tile);
+	}
+	/**
+	 *	Creates an empty {@link PlayfieldSnapshot PlayfieldSnapshot} with one cell per cell of a <code>Playfield</code>.
+	 *	@return a new snapshot
+	**/
+	public static PlayfieldSnapshot newSnapshot(){
+		return new PlayfieldSnapshot(NUM_ROWS*NUM_COLUMNS);
+	}
+	/**
+	 *	Copies the data of this <code>Playfield</code> which is sent over the network into a {@link PlayfieldSnapshot PlayfieldSnapshot}.
+	 *	@param snapshot the snapshot to fill
+	**/
+	public synchronized void captureSnapshot(PlayfieldSnapshot snapshot){
+		snapshot.name = playerName;
+		snapshot.score = score;
+		for(int i = 0; i<NUM_ROWS; i++){
+			for(int j = 0; j<NUM_COLUMNS; j++){
+				snapshot.cells[i*NUM_COLUMNS+j] = (byte)Tile.getTileCode(board.getTile(i,j));
+			}
+		}
+		snapshot.hasCurrent = currentPiece!=null;
+		if(currentPiece!=null){
+			snapshot.currentHeader = (currentPiece.type.ordinal()<<2) | currentPiece.currRotationState.ordinal();
+			snapshot.currentX = currentPiece.x;
+			snapshot.currentY = currentPiece.y;
+			snapshot.currentColors = currentPiece.colors;
 		}
-		pieceQueue = newPieceQueue;
+		snapshot.hasHeld = heldPiece!=null;
+		if(heldPiece!=null){
+			snapshot.heldHeader = (heldPiece.type.ordinal()<<2) | heldPiece.currRotationState.ordinal();
+			snapshot.heldX = heldPiece.x;
+			snapshot.heldY = heldPiece.y;
+			snapshot.heldColors = heldPiece.colors;
+		}
+		snapshot.queueSize = pieceQueue.size();
+		for(int n = 0; n<snapshot.queueSize; n++){
+			snapshot.queue[n] = pieceQueue.peek(n);
+		}
+	}
+	/**
+	 *	Sets the data of this <code>Playfield</code> from a {@link PlayfieldSnapshot PlayfieldSnapshot}, which must have been validated when it was read.
+	 *	<p> The data currently in this <code>Playfield</code> will be overwritten. Only the cells which differ are written to the board.
+	 *	@param snapshot the snapshot to apply
+	**/
+	public synchronized void applySnapshot(PlayfieldSnapshot snapshot){
+		beginSnapshot();
+		playerName = snapshot.name;
+		score = snapshot.score;
+		Tile[] tiles = Tile.values();
+		for(int i = 0; i<NUM_ROWS; i++){
+			for(int j = 0; j<NUM_COLUMNS; j++){
+				loadTile(i,j,tiles[snapshot.cells[i*NUM_COLUMNS+j]]);
+			}
+		}
+		if(snapshot.hasCurrent){
+			loadPiece(activePiece,snapshot.currentHeader,snapshot.currentX,snapshot.currentY,snapshot.currentColors);
+			currentPiece = activePiece;
+		}else{
+			currentPiece = null;
+		}
+		if(snapshot.hasHeld){
+			loadPiece(heldSlot,snapshot.heldHeader,snapshot.heldX,snapshot.heldY,snapshot.heldColors);
+			heldPiece = heldSlot;
+		}else{
+			heldPiece = null;
+		}
+		pieceQueue.clear();
+		for(int n = 0; n<snapshot.queueSize; n++){
+			pieceQueue.add(snapshot.queue[n]);
+		}
+		endSnapshot();
+	}
+	/**
+	 *	Checks if every block of a piece lies inside the board, whether or not it overlaps other blocks.
+	 *	@param type the type of the piece
+	 *	@param rotation the number of clockwise turns from the spawn orientation (0-3)
+	 *	@param x the column of the upper-left corner of the bounding box of the piece
+	 *	@param y the row of the upper-left corner of the bounding box of the piece
+	 *	@return <code>true</code> if the piece lies inside the board, and <code>false</code> otherwise
+	**/
+	static boolean isInBounds(PieceType type, int rotation, int x, int y){
+		for(int k = 0; k<PieceType.NUM_CELLS; k++){
+			int row = y+type.getCellRow(rotation,k);
+			int column = x+type.getCellColumn(rotation,k);
+			if(row<0 || row>=NUM_ROWS || column<0 || column>=NUM_COLUMNS) return false;
+		}
+		return true;
+	}
+	private void loadPiece(Piece target, int header, int x, int y, int colors){
+		target.reset(PieceType.values()[header>>>2],colors);
+		target.currRotationState = RotationState.values()[header&3];
+		target.x = x;
+		target.y = y;
+	}
+	/**
+	 *	Writes all the data of this <code>Playfield</code> in the binary format of {@link StateCodec StateCodec}, as a full {@link PlayfieldSnapshot PlayfieldSnapshot}.
+	 *	<p> This holds the same data as {@link #toString() toString()}: the player name, the score as a varint, every cell of the board packed at 3 bits per cell, the current and held pieces, and the piece queue.
+	 *	@param buffer the buffer to write to; {@link StateCodec#MAX_PLAYFIELD_BYTES StateCodec.MAX_PLAYFIELD_BYTES} bytes are enough for any name allowed by {@link #setName(String) setName}
+	**/
+	public synchronized void writeTo(ByteBuffer buffer){
+		captureSnapshot(wireSnapshot);
+		wireSnapshot.writeFull(buffer);
+	}
+	/**
+	 *	Sets the data of this <code>Playfield</code> from data written by {@link #writeTo(ByteBuffer) writeTo(ByteBuffer)}.
+	 *	<p> The data currently in this <code>Playfield</code> will be overwritten. Only the cells which differ are written to the board.
+	 *	@param buffer the buffer to read from
+	 *	@throws IllegalArgumentException if the data is not a valid <code>Playfield</code>
+	 *	@throws BufferUnderflowException if the data is truncated
+	**/
+	public synchronized void readFrom(ByteBuffer buffer){
+		wireSnapshot.readFull(buffer);
+		applySnapshot(wireSnapshot);
 	}
 	/**
 	 *	Generates a <code>String</code> containing all the data of this <code>Playfield</code>.
@@ -613,7 +760,7 @@ public class Playfield{
 		sb.append("playfieldStart,");
 		for(int i = 0; i<NUM_ROWS; i++){
 			for(int j = 0; j<NUM_COLUMNS; j++){
-				sb.append(Tile.getTileCode(playfield[i][j]));
+				sb.append(Tile.getTileCode(board.getTile(i,j)));
 				sb.append(",");
 			}
 		}
@@ -635,347 +782,353 @@ public class Playfield{
 		}
 		sb.append(",heldPieceEnd,");
 		sb.append("pieceQueueStart,");
-		for(Piece p : pieceQueue){
+		for(int n = 0; n<pieceQueue.size(); n++){
 			sb.append("PieceData,");
-			sb.append(p.toString());
+			sb.append(getQueuedPiece(n).toString());
 			sb.append(",");
 		}
 		sb.append("pieceQueueEnd");
 		return sb.toString();
 	}
 	
-	public class Piece{
+	/**
+	 *	A small value object describing a piece: its type, rotation, position and block colors.
+	 *	<p> A <code>Piece</code> does not belong to any particular <code>Playfield</code>; operations which depend on the contents of the field take the {@link Board Board} to check against. The shape data and wall kick tables are shared by every piece through {@link PieceType PieceType} and static tables, and pieces are updated in place rather than reallocated.
+	**/
+	public static class Piece{
+		private static final int numChecks = 5;
+		//	SRS wall kick offsets, indexed by the rotation state the piece is turning from.
+		private static final int[][] WALLKICKTABLE_SIZE3_X = {
+			{ 0,-1,-1, 0,-1},
+			{ 0, 1, 1, 0, 1},
+			{ 0, 1, 1, 0, 1},
+			{ 0,-1,-1, 0,-1}
+		};
+		private static final int[][] WALLKICKTABLE_SIZE3_Y = {
+			{ 0, 0,-1, 2, 2},
+			{ 0, 0, 1,-2,-2},
+			{ 0, 0,-1, 2, 2},
+			{ 0, 0, 1,-2,-2}
+		};
+		private static final int[][] WALLKICKTABLE_SIZE4_X = {
+			{ 0,-2, 1,-2, 1},
+			{ 0,-1, 2,-1, 2},
+			{ 0, 2,-1, 2,-1},
+			{ 0, 1,-2, 1,-2}
+		};
+		private static final int[][] WALLKICKTABLE_SIZE4_Y = {
+			{ 0, 0, 0, 1,-2},
+			{ 0, 0, 0,-2, 1},
+			{ 0, 0, 0,-1, 2},
+			{ 0, 0, 0, 2,-1}
+		};
+		private static final Tile[] TILES = Tile.values();
+		private static final RotationState[] ROTATIONS = RotationState.values();
 		private int x, y;
-		private int SIZE;
-		private int[][] body;
+		private PieceType type;
+		private int colors;
 		private RotationState currRotationState;
-		private Piece(PieceType p){
-			this.body = p.getBlueprint();
-			this.SIZE = body.length;
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					if(body[i][j]!=0){
-						body[i][j] = rand.nextInt(Tile.values().length-1)+1;
-					}
-				}	
-			}
-			currRotationState = RotationState.SPAWN;
-			setToSpawnPosition();
-		}
-		private Piece(){
-			this( PieceType.values()[rand.nextInt(PieceType.values().length)] );
+		/**
+		 *	Creates a new <code>Piece</code> of a given type, at the spawn position.
+		 *	@param type the type of the piece
+		 *	@param colors the packed colors of the blocks of the piece
+		 *	@see #packColor(int colors, int cell, Tile tile)
+		**/
+		public Piece(PieceType type, int colors){
+			reset(type,colors);
 		}
-		private Piece(String objectData){
+		/**
+		 *	Creates a new <code>Piece</code> from a String generated by {@link #toString() toString()}.
+		 *	@param objectData the string to be parsed and loaded as <code>Piece</code> data.
+		**/
+		public Piece(String objectData){
 			loadData(objectData);
 		}
-		private Piece(Piece other){
+		/**
+		 *	Creates a copy of another <code>Piece</code>.
+		 *	@param other the <code>Piece</code> to copy
+		**/
+		public Piece(Piece other){
+			set(other);
+		}
+		/**
+		 *	Stores the color of one block in a packed color value. Each block uses 3 bits, with block 0 in the lowest bits.
+		 *	@param colors the packed color value to modify
+		 *	@param cell the index of the block (0-3)
+		 *	@param tile the color of the block
+		 *	@return the modified packed color value
+		**/
+		public static int packColor(int colors, int cell, Tile tile){
+			int shift = 3*cell;
+			return (colors & ~(7<<shift)) | (tile.ordinal()<<shift);
+		}
+		/**
+		 *	Changes this <code>Piece</code> into a new piece of a given type, at the spawn position.
+		 *	@param type the type of the piece
+		 *	@param colors the packed colors of the blocks of the piece
+		**/
+		public void reset(PieceType type, int colors){
+			this.type = type;
+			this.colors = colors;
+			setToSpawnPosition();
+		}
+		/**
+		 *	Copies the state of another <code>Piece</code> into this one.
+		 *	@param other the <code>Piece</code> to copy
+		**/
+		public void set(Piece other){
 			this.x = other.x;
 			this.y = other.y;
-			this.SIZE = other.SIZE;
+			this.type = other.type;
+			this.colors = other.colors;
 			this.currRotationState = other.currRotationState;
-			this.body = new int[SIZE][SIZE];
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					this.body[i][j] = other.body[i][j];
-				}
-			}
 		}
-		
-		private int[][] rotateClockwise(int[][] array){
-			/*
-				0 1 2 3   2 8 4 0
-				4 5 6 7   7 9 5 1 
-				8 9 0 1   4 0 6 2
-				2 3 4 5   5 1 7 3
-			*/
-			int[][] result = new int[SIZE][SIZE];
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					result[i][j] = array[SIZE-j-1][i];
-				}
-			}
-			return result;
+		/**
+		 *	Exchanges the state of this <code>Piece</code> with another one.
+		 *	@param other the <code>Piece</code> to swap with
+		**/
+		public void swap(Piece other){
+			int x = this.x, y = this.y, colors = this.colors;
+			PieceType type = this.type;
+			RotationState rotation = this.currRotationState;
+			set(other);
+			other.x = x;
+			other.y = y;
+			other.type = type;
+			other.colors = colors;
+			other.currRotationState = rotation;
+		}
+		/**
+		 *	Returns the type of this <code>Piece</code>.
+		 *	@return the type of this <code>Piece</code>
+		**/
+		public PieceType getType(){
+			return type;
+		}
+		/**
+		 *	Returns the column of the upper-left corner of the bounding box of this <code>Piece</code>.
+		 *	@return the column of this <code>Piece</code>
+		**/
+		public int getX(){
+			return x;
+		}
+		/**
+		 *	Returns the row of the upper-left corner of the bounding box of this <code>Piece</code>.
+		 *	@return the row of this <code>Piece</code>
+		**/
+		public int getY(){
+			return y;
+		}
+		/**
+		 *	Returns the current rotation of this <code>Piece</code>.
+		 *	@return the rotation state of this <code>Piece</code>
+		**/
+		public RotationState getRotationState(){
+			return currRotationState;
+		}
+		/**
+		 *	Returns the color of one block of this <code>Piece</code>.
+		 *	@param cell the index of the block (0-3)
+		 *	@return the color of the block
+		**/
+		public Tile getColor(int cell){
+			return TILES[(colors>>>(3*cell))&7];
 		}
 		
-		private boolean isValidPosition(int dx, int dy, int rotation){
-			Tile grid[][] = playfield;
+		private boolean isValidPosition(Board board, int dx, int dy, int rotation){
 			int x = this.x+dx;
 			int y = this.y+dy;
-			int[][] body = this.body;
-			for(int i = 0; i<rotation; i++){
-				body = rotateClockwise(body);
+			int r = (currRotationState.ordinal()+rotation)%4;
+			//	Check if piece lies out of bounds horizontally.
+			if(x+type.getMinColumn(r)<0 || x+type.getMaxColumn(r)>=NUM_COLUMNS){
+				return false;
 			}
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					if(body[i][j]!=0){
-						//	Check if piece lies out of bounds.
-						if(y+i<0 || y+i>=NUM_ROWS || x+j<0 || x+j>=NUM_COLUMNS){
-							return false;
-						}
-						//	Check if piece overlaps with current field
-						if(grid[y+i][x+j]!=Tile.NONE){
-							return false;
-						}
-					}	
+			for(int i = 0; i<type.getSize(); i++){
+				int rowMask = type.getRowMask(r,i);
+				if(rowMask==0) continue;
+				rowMask = x>=0 ? rowMask<<x : rowMask>>>-x;
+				//	Check if piece lies out of bounds vertically, or overlaps with current field
+				if(board.collides(y+i,rowMask)){
+					return false;
 				}
 			}
 			return true;
 		}
-		
+		/**
+		 *	Checks if this <code>Piece</code> fits in a <code>Board</code> at its current position.
+		 *	@param board the <code>Board</code> to check against
+		 *	@return <code>true</code> if the piece is within bounds and does not overlap any block, and <code>false</code> otherwise
+		**/
+		public boolean fits(Board board){
+			return isValidPosition(board,0,0,0);
+		}
 		/**
 		 *	Returns <code>true</code> if this <code>Piece</code> cannot move further downward.
+		 *	@param board the <code>Board</code> to check against
 		 *	@return <code>true</code> if this <code>Piece</code> cannot move further downward, and <code>false</code> otherwise.
 		**/
-		public synchronized boolean isGrounded(){
-			return !isValidPosition(0,1,0);
+		public boolean isGrounded(Board board){
+			return !isValidPosition(board,0,1,0);
 		}
 		
 		/**
-		 *	Moves the current piece by an x,y offset, measured in number of tiles.
+		 *	Moves this piece by an x,y offset, measured in number of tiles.
 		 *	<p>By convention, a positive x offset indicates a rightward offset, and a positive y offset indicates a downward offset.
 		 *	<p> No change to the state of the piece is made if a movement is currently impossible.
+		 *	@param board the <code>Board</code> to check against
 		 *	@param dx the x offset, measured in number of tiles
 		 *	@param dy the y offset, measured in number of tiles
+		 *	@return <code>true</code> if the piece was moved, and <code>false</code> otherwise
 		**/
-		public synchronized void move(int dx, int dy){
-			if(isValidPosition(dx,dy,0)){
+		public boolean move(Board board, int dx, int dy){
+			if(isValidPosition(board,dx,dy,0)){
 				x+=dx;
 				y+=dy;
+				return true;
 			}
+			return false;
 		}
 		
-		private final int numChecks = 5;
-		private final int[] WALLKICKTABLE_SIZE3_SPAWN_X = 	{ 0,-1,-1, 0,-1};
-		private final int[] WALLKICKTABLE_SIZE3_SPAWN_Y = 	{ 0, 0,-1, 2, 2};
-		private final int[] WALLKICKTABLE_SIZE3_CW_X = 		{ 0, 1, 1, 0, 1};
-		private final int[] WALLKICKTABLE_SIZE3_CW_Y = 		{ 0, 0, 1,-2,-2};
-		private final int[] WALLKICKTABLE_SIZE3_FLIP_X = 	{ 0, 1, 1, 0, 1};
-		private final int[] WALLKICKTABLE_SIZE3_FLIP_Y = 	{ 0, 0,-1, 2, 2};
-		private final int[] WALLKICKTABLE_SIZE3_CCW_X = 	{ 0,-1,-1, 0,-1};
-		private final int[] WALLKICKTABLE_SIZE3_CCW_Y = 	{ 0, 0, 1,-2,-2};
-		private final int[] WALLKICKTABLE_SIZE4_SPAWN_X = 	{ 0,-2, 1,-2, 1};
-		private final int[] WALLKICKTABLE_SIZE4_SPAWN_Y = 	{ 0, 0, 0, 1,-2};
-		private final int[] WALLKICKTABLE_SIZE4_CW_X = 		{ 0,-1, 2,-1, 2};
-		private final int[] WALLKICKTABLE_SIZE4_CW_Y = 		{ 0, 0, 0,-2, 1};
-		private final int[] WALLKICKTABLE_SIZE4_FLIP_X = 	{ 0, 2,-1, 2,-1};
-		private final int[] WALLKICKTABLE_SIZE4_FLIP_Y = 	{ 0, 0, 0,-1, 2};
-		private final int[] WALLKICKTABLE_SIZE4_CCW_X = 	{ 0, 1,-2, 1,-2};
-		private final int[] WALLKICKTABLE_SIZE4_CCW_Y = 	{ 0, 0, 0, 2,-1};
 		/**
-		 *	Rotates the current piece clockwise by 90 degrees.
+		 *	Returns how many rows this piece can fall before it is grounded.
+		 *	<p> The distance is read from the column index of the <code>Board</code> for each block, rather than by testing one row at a time.
+		 *	@param board the <code>Board</code> to check against
+		 *	@return the number of rows this piece can fall
+		**/
+		public int getDropDistance(Board board){
+			int r = currRotationState.ordinal();
+			int distance = Integer.MAX_VALUE;
+			for(int k = 0; k<PieceType.NUM_CELLS; k++){
+				distance = Math.min(distance,board.getDropDistance(y+type.getCellRow(r,k),x+type.getCellColumn(r,k)));
+			}
+			return distance;
+		}
+		/**
+		 *	Moves this piece straight down until it is grounded.
+		 *	@param board the <code>Board</code> to check against
+		**/
+		public void drop(Board board){
+			y += getDropDistance(board);
+		}
+		
+		/**
+		 *	Rotates this piece clockwise by 90 degrees.
 		 *	<p> If simple rotation is impossible, wall kicks are tested using the <a href=http://harddrop.com/wiki/SRS>offset table for the Super Rotation System (SRS)</a>  used in official Tetris games.
 		 *	<p> No change to the state of the piece is made if a rotation is currently impossible.
+		 *	@param board the <code>Board</code> to check against
 		**/
-		public synchronized void rotate(){
+		public void rotate(Board board){
 			boolean successful = false;
-			switch(SIZE){
+			int r = currRotationState.ordinal();
+			switch(type.getSize()){
 				case 2:
-					if(isValidPosition(0,0,1)){
-						body = rotateClockwise(body);
+					if(isValidPosition(board,0,0,1)){
+						int rotated = 0;
+						for(int k = 0; k<PieceType.NUM_CELLS; k++){
+							rotated = packColor(rotated,type.getRotatedCellIndex(k),getColor(k));
+						}
+						colors = rotated;
 					}
 					break;
 				case 3:
-					switch(currRotationState){
-						case SPAWN:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE3_SPAWN_X[i],WALLKICKTABLE_SIZE3_SPAWN_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE3_SPAWN_X[i],WALLKICKTABLE_SIZE3_SPAWN_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-						case CW:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE3_CW_X[i],WALLKICKTABLE_SIZE3_CW_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE3_CW_X[i],WALLKICKTABLE_SIZE3_CW_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-						case FLIP:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE3_FLIP_X[i],WALLKICKTABLE_SIZE3_FLIP_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE3_FLIP_X[i],WALLKICKTABLE_SIZE3_FLIP_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-						case CCW:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE3_CCW_X[i],WALLKICKTABLE_SIZE3_CCW_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE3_CCW_X[i],WALLKICKTABLE_SIZE3_CCW_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-					}
+					successful = tryKicks(board,WALLKICKTABLE_SIZE3_X[r],WALLKICKTABLE_SIZE3_Y[r]);
 					break;
 				case 4:
-					switch(currRotationState){
-						case SPAWN:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE4_SPAWN_X[i],WALLKICKTABLE_SIZE4_SPAWN_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE4_SPAWN_X[i],WALLKICKTABLE_SIZE4_SPAWN_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-						case CW:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE4_CW_X[i],WALLKICKTABLE_SIZE4_CW_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE4_CW_X[i],WALLKICKTABLE_SIZE4_CW_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-						case FLIP:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE4_FLIP_X[i],WALLKICKTABLE_SIZE4_FLIP_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE4_FLIP_X[i],WALLKICKTABLE_SIZE4_FLIP_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-						case CCW:
-							for(int i = 0; i<numChecks; i++){
-								if(isValidPosition(WALLKICKTABLE_SIZE4_CCW_X[i],WALLKICKTABLE_SIZE4_CCW_Y[i],1)){
-									body = rotateClockwise(body);
-									move(WALLKICKTABLE_SIZE4_CCW_X[i],WALLKICKTABLE_SIZE4_CCW_Y[i]);
-									successful = true;
-									break;
-								}
-							}
-							break;
-					}
+					successful = tryKicks(board,WALLKICKTABLE_SIZE4_X[r],WALLKICKTABLE_SIZE4_Y[r]);
 					break;
 			}
 			if(successful){
-				switch(currRotationState){
-					case SPAWN: currRotationState = RotationState.CW; break;
-					case CW: currRotationState = RotationState.FLIP; break;
-					case FLIP: currRotationState = RotationState.CCW; break;
-					case CCW: currRotationState = RotationState.SPAWN; break;
-				}
+				currRotationState = ROTATIONS[(r+1)%4];
 			}
 		}
-		
-		/**
-		 *	Drops this piece to the bottom of the <code>Playfield</code> it is in.
-		 *	<p> The enclosing <code>Playfield</code> is then set to the {@link PlayfieldState.Reload Reload} state.
-		**/
-		public synchronized void hardDrop(){
-			while(!isGrounded()){
-				move(0,1);
+		private boolean tryKicks(Board board, int[] kicksX, int[] kicksY){
+			for(int i = 0; i<numChecks; i++){
+				if(isValidPosition(board,kicksX[i],kicksY[i],1)){
+					x+=kicksX[i];
+					y+=kicksY[i];
+					return true;
+				}
 			}
-			(Playfield.this).setState(new PlayfieldState.Reload(Playfield.this));
+			return false;
 		}
 		
 		/**
-		 *	Set the current position of this <code>Piece</code> to the top-center of the enclosing <code>Playfield</code>.
+		 *	Set the current position of this <code>Piece</code> to the top-center of the field, in its spawn orientation.
 		**/
-		public synchronized void setToSpawnPosition(){
-			x = NUM_COLUMNS/2-SIZE/2;
+		public void setToSpawnPosition(){
+			x = NUM_COLUMNS/2-type.getSize()/2;
 			y = 0;
-			while(currRotationState!=RotationState.SPAWN){
-				body = rotateClockwise(body);
-				switch(currRotationState){
-					case SPAWN: currRotationState = RotationState.CW; break;
-					case CW: currRotationState = RotationState.FLIP; break;
-					case FLIP: currRotationState = RotationState.CCW; break;
-					case CCW: currRotationState = RotationState.SPAWN; break;
-				}
-			}
+			currRotationState = RotationState.SPAWN;
 		}
 		
 		/**
-		 *	Copies the tiles of this <code>Piece</code> to its enclosing <code>Playfield</code>, at its current position.
+		 *	Copies the tiles of this <code>Piece</code> to a <code>Board</code>, at its current position.
+		 *	@param board the <code>Board</code> to copy the tiles to
 		 *	@return <code>true</code> if the current position of this <code>Piece</code> is valid, and <code>false</code> otherwise.
 		**/
-		public boolean addToPlayfield(){
-			if(!isValidPosition(0,0,0)) return false;
-			Tile[][] grid = playfield;
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					if(body[i][j]!=0){
-						grid[y+i][x+j] = Tile.values()[body[i][j]];
-					}
-				}
+		public boolean addToBoard(Board board){
+			if(!isValidPosition(board,0,0,0)) return false;
+			int r = currRotationState.ordinal();
+			for(int k = 0; k<PieceType.NUM_CELLS; k++){
+				board.setTile(y+type.getCellRow(r,k),x+type.getCellColumn(r,k),getColor(k));
 			}
 			return true;
 		}
-		/**
-		 *	Draws this <code>Piece</code> at its internal <code>x</code> and <code>y</code> coordinates.
-		 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Piece</code>
-		 *	@param tileSize the length in pixels of each side of a single tile
-		 *	@see #draw(Graphics2D context, int tileSize, int x, int y)
-		 *	@see #draw(Graphics2D context, int tileSize, int x, int y, int alpha)
-		**/
-		public void draw(Graphics2D context, int tileSize){
-			draw(context,tileSize,this.x*tileSize,this.y*tileSize,255);
-		}
-		/**
-		 *	Draws this <code>Piece</code> at specified <code>x</code> and <code>y</code> coordinates.
-		 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Piece</code>
-		 *	@param tileSize the length in pixels of each side of a single tile
-		 *	@param x the x coordinate of the upper-left corner of the <code>Piece</code>
-		 *	@param y the y coordinate of the upper-left corner of the <code>Piece</code>
-		 *	@see #draw(Graphics2D context, int tileSize)
-		 *	@see #draw(Graphics2D context, int tileSize, int x, int y, int alpha)
-		**/
-		public void draw(Graphics2D context, int tileSize, int x, int y){
-			draw(context,tileSize,x,y,255);
-		}
-		/**
-		 *	Draws this <code>Piece</code> at specified <code>x</code> and <code>y</code> coordinates, with an specified alpha value.
-		 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Piece</code>
-		 *	@param tileSize the length in pixels of each side of a single tile
-		 *	@param x the x coordinate of the upper-left corner of the <code>Piece</code>
-		 *	@param y the y coordinate of the upper-left corner of the <code>Piece</code>
-		 *	@param alpha the alpha value (0-255) with which to draw this <code>Piece</code>.
-		 *	@see #draw(Graphics2D context, int tileSize)
-		 *	@see #draw(Graphics2D context, int tileSize, int x, int y)
-		**/
-		public void draw(Graphics2D context, int tileSize, int x, int y, int alpha){
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					if(body[i][j]!=0){
-						Tile.values()[body[i][j]].draw(context,x+j*tileSize,y+i*tileSize,tileSize,alpha);
-					}
-				}
-			}
-		}
 		/**
 		 *	Sets the data of this <code>Piece</code> based on a <code>String</code> generated by {@link #toString() toString()}.
 		 *	<p> The data currently in this <code>Piece</code> will be overwritten.
 		 *	@param objectData the string to be parsed and loaded as <code>Piece</code> data.
 		**/
-		public synchronized void loadData(String objectData){
+		public void loadData(String objectData){
 			String[] data = objectData.split(",");
 			int k = 0;
-			this.SIZE = Integer.parseInt(data[k++]);
-			this.body = new int[SIZE][SIZE];
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					this.body[i][j] = Integer.parseInt(data[k++]);
-				}
-			}
+			int size = Integer.parseInt(data[k++]);
+			int bodyStart = k;
+			k += size*size;
 			this.x = Integer.parseInt(data[k++]);
 			this.y = Integer.parseInt(data[k++]);
-			this.currRotationState = RotationState.values()[Integer.parseInt(data[k++])];
+			this.currRotationState = ROTATIONS[Integer.parseInt(data[k++])];
+			int r = currRotationState.ordinal();
+			//	Find the piece type whose blocks match the body in the given rotation.
+			this.type = null;
+			for(PieceType p : PieceType.values()){
+				if(p.getSize()!=size) continue;
+				if(type==null) type = p;
+				boolean matches = true;
+				for(int i = 0; i<size && matches; i++){
+					for(int j = 0; j<size; j++){
+						boolean filled = !data[bodyStart+i*size+j].equals("0");
+						if(filled != ((p.getRowMask(r,i)&(1<<j))!=0)){
+							matches = false;
+							break;
+						}
+					}
+				}
+				if(matches){
+					type = p;
+					break;
+				}
+			}
+			this.colors = 0;
+			for(int c = 0; c<PieceType.NUM_CELLS; c++){
+				int code = Integer.parseInt(data[bodyStart+type.getCellRow(r,c)*size+type.getCellColumn(r,c)]);
+				colors = packColor(colors,c,TILES[code]);
+			}
+		}
+		/**
+		 *	Checks if another object is a <code>Piece</code> with the same type, rotation, position and colors.
+		 *	@param other the object to compare with
+		 *	@return <code>true</code> if both pieces are identical, and <code>false</code> otherwise
+		**/
+		@Override
+		public boolean equals(Object other){
+			if(!(other instanceof Piece)) return false;
+			Piece p = (Piece)other;
+			return x==p.x && y==p.y && type==p.type && colors==p.colors && currRotationState==p.currRotationState;
+		}
+		@Override
+		public int hashCode(){
+			return ((type.ordinal()*4+currRotationState.ordinal())*31+x)*31*31+y*31+colors;
 		}
 		/**
 		 *	Generates a <code>String</code> containing all the data of this <code>Piece</code>.
@@ -983,13 +1136,16 @@ public class Playfield{
 		 *	@return A <code>String</code> which represents the data of this <code>Piece</code>
 		**/
 		@Override
-		public synchronized String toString(){
+		public String toString(){
 			StringBuilder sb = new StringBuilder();
-			sb.append(SIZE);
+			int size = type.getSize();
+			sb.append(size);
 			sb.append(",");
-			for(int i = 0; i<SIZE; i++){
-				for(int j = 0; j<SIZE; j++){
-					sb.append(body[i][j]);
+			int r = currRotationState.ordinal();
+			for(int i = 0; i<size; i++){
+				for(int j = 0; j<size; j++){
+					int k = type.getCellIndex(r,i,j);
+					sb.append(k<0 ? 0 : getColor(k).ordinal());
 					sb.append(",");
 				}
 			}
@@ -997,12 +1153,7 @@ public class Playfield{
 			sb.append(",");
 			sb.append(y);
 			sb.append(",");
-			switch(currRotationState){
-				case SPAWN: sb.append(0); break;
-				case CW: sb.append(1); break;
-				case FLIP: sb.append(2); break;
-				case CCW: sb.append(3); break;
-			}
+			sb.append(r);
 			return sb.toString();
 		}
 	}
@@ -0,0 +1,430 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ *	Draws {@link Playfield Playfield}s. All images and fonts used to display a <code>Playfield</code> are looked up by the renderer through {@link Assets Assets}, so that a <code>Playfield</code> can be created and simulated without loading any of them.
+ *	<p> A single <code>PlayfieldRenderer</code> can draw any number of <code>Playfield</code>s.
+ *	<p> The current piece and its ghost are drawn at the position given by the {@link PieceMotion PieceMotion} of the <code>Playfield</code>, so that they slide smoothly at any frame rate.
+ *	<p> Parts of a <code>Playfield</code> which rarely change are drawn from cached layers: the background and grid are rasterised once per tile size, the frame images are pre-scaled, and the player name, score and garbage warning are only rasterised again when their text changes.
+ *	<p> Boards with tiles of at most {@link #LOW_DETAIL_TILE_SIZE LOW_DETAIL_TILE_SIZE} pixels are drawn at a lower level of detail: tiles are flat squares, and the ghost piece is neither computed nor drawn.
+ *	The blocks of each <code>Playfield</code> are kept in a backbuffer of their own, in which only the cells reported by {@link Playfield#collectDirtyCells(int[]) collectDirtyCells} are drawn again, so a frame where no block changed costs a single <code>drawImage</code> for the whole board.
+ *	<p> Drawing is split in two steps. {@link #update(Graphics2D,Playfield,int,boolean,DirtyRegion) update} copies the state of the <code>Playfield</code> while holding its lock, then reports which areas changed; {@link #paint(Graphics2D,Playfield,int,boolean) paint} draws the copy without locking the <code>Playfield</code>, and can be called once per changed area with a clip.
+**/
+public class PlayfieldRenderer{
+	/**
+	 *	The largest tile size, in pixels, at which a <code>Playfield</code> is drawn at low detail.
+	 *	The fixed layouts of {@link GameDisplay GameDisplay} use tiles of at least 12 pixels, while its mosaic of 4 or more small boards never uses more than 10, so only the mosaic is drawn at low detail.
+	**/
+	public static final int LOW_DETAIL_TILE_SIZE = 10;
+	private static final double[] PREVIEW_ROWS = {1.2,5,8.8};
+	private static final Rectangle EMPTY_BOUNDS = new Rectangle();
+	private final String STR_PLAYFIELD_FILENAME = "Playfield2.png";
+	private final String STR_SMALL_PLAYFIELD_FILENAME = "Playfield2_2.png";
+	private final int ghostAlpha = 100;
+	private final TileRenderer tileRenderer;
+	private final HashMap<Integer, BufferedImage> gridLayers;
+	private final WeakHashMap<Playfield, PlayfieldView> views;
+	private final Rectangle scratch;
+	/**
+	 *	The cached layers of a single <code>Playfield</code>, and the state copied from it by the last call to {@link #update(Graphics2D,Playfield,int,boolean,DirtyRegion) update}.
+	**/
+	private static class PlayfieldView{
+		BufferedImage board = null;
+		int boardTileSize = 0;
+		int numRows = 0;
+		int numColumns = 0;
+		int[] dirty = null;
+		Tile[] tiles = null;
+		int[] alphas = null;
+		final TextLayer name = new TextLayer();
+		final TextLayer score = new TextLayer();
+		final TextLayer warning = new TextLayer();
+		Font font = null;
+		String nameValue = null;
+		int scoreValue = -1;
+		int garbageValue = -1;
+		int shownScore = -1;
+		int shownGarbage = 0;
+		boolean pieceChanged = false;
+		boolean hasCurrent = false;
+		boolean hasGhost = false;
+		Playfield.Piece current = null;
+		Playfield.Piece ghost = null;
+		int pieceX = 0;
+		int pieceY = 0;
+		int ghostY = 0;
+		boolean sideChanged = false;
+		boolean hasHeld = false;
+		Playfield.Piece held = null;
+		int queueSize = 0;
+		final Playfield.Piece[] queue = new Playfield.Piece[PREVIEW_ROWS.length];
+		final Rectangle pieceBounds = new Rectangle();
+		final Rectangle sideBounds = new Rectangle();
+		final Rectangle bounds = new Rectangle();
+	}
+	/**
+	 *	Creates a new <code>PlayfieldRenderer</code>.
+	**/
+	public PlayfieldRenderer(){
+		this.tileRenderer = new TileRenderer();
+		this.gridLayers = new HashMap<Integer, BufferedImage>();
+		this.views = new WeakHashMap<Playfield, PlayfieldView>();
+		this.scratch = new Rectangle();
+	}
+	/**
+	 *	Returns the <code>TileRenderer</code> used by this <code>PlayfieldRenderer</code>.
+	 *	@return the <code>TileRenderer</code> used to draw tiles
+	**/
+	public TileRenderer getTileRenderer(){
+		return tileRenderer;
+	}
+	/**
+	 *	Draws a <code>Playfield</code> at the origin of the given <code>Graphics2D</code> context.
+	 *	<p> This is the same as calling {@link #update(Graphics2D,Playfield,int,boolean,DirtyRegion) update} without a region, then {@link #paint(Graphics2D,Playfield,int,boolean) paint}.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Playfield</code>
+	 *	@param playfield the <code>Playfield</code> to draw
+	 *	@param tileSize the length in pixels of each side of a single tile
+	 *	@param fullUI <code>true</code> to also draw the held piece, the piece queue and incoming garbage, and <code>false</code> to draw a compact view
+	**/
+	public void draw(Graphics2D context, Playfield playfield, int tileSize, boolean fullUI){
+		update(context,playfield,tileSize,fullUI,null);
+		paint(context,playfield,tileSize,fullUI);
+	}
+	/**
+	 *	Copies the state of a <code>Playfield</code> which is needed to draw it, and brings its cached layers up to date.
+	 *	<p> The <code>Playfield</code> is only locked while its state is copied; the layers are drawn afterwards, so the logic of the <code>Playfield</code> is not held up by rendering.
+	 *	Every area which looks different since the previous update is added to <code>region</code>: the cells of the board which changed, the old and new areas of a piece which moved, and the old and new areas of a text which changed.
+	 *	@param context the <code>Graphics2D</code> context with which the <code>Playfield</code> will be painted
+	 *	@param playfield the <code>Playfield</code> to update
+	 *	@param tileSize the length in pixels of each side of a single tile
+	 *	@param fullUI <code>true</code> to also show the held piece, the piece queue and incoming garbage, and <code>false</code> to show a compact view
+	 *	@param region the region to which changed areas are added, relative to the origin of the <code>Playfield</code>; may be <code>null</code>
+	**/
+	public void update(Graphics2D context, Playfield playfield, int tileSize, boolean fullUI, DirtyRegion region){
+		PlayfieldView view = views.get(playfield);
+		if(view==null){
+			view = new PlayfieldView();
+			views.put(playfield,view);
+		}
+		boolean newBoard = capture(view,playfield,tileSize,fullUI);
+		int numRows = view.numRows;
+		int numColumns = view.numColumns;
+		if(newBoard){
+			createBoardLayer(context,view,tileSize);
+			if(region!=null) region.add(0,0,view.board.getWidth(),view.board.getHeight());
+		}
+		updateBoardLayer(context,view,tileSize,newBoard ? null : region);
+
+		context.setPaint(Color.WHITE);
+		int width = numColumns*tileSize;
+		int nameBaseline = -tileSize/2;
+		int scoreBaseline = getScoreBaseline(numRows,tileSize);
+		int warningBaseline = getWarningBaseline(numRows,tileSize);
+		Font font = Assets.getFont(Assets.FONT_UI,(float)tileSize);
+		if(font!=view.font){
+			if(region!=null && view.shownScore>=0) region.add(view.score.getCenteredBounds(context,width,scoreBaseline,scratch));
+			if(region!=null && view.shownGarbage>0) region.add(view.warning.getCenteredBounds(context,width,warningBaseline,scratch));
+			view.font = font;
+			view.shownScore = -1;
+			view.shownGarbage = 0;
+		}
+		if(!view.name.holds(view.nameValue,font)){
+			if(region!=null) region.add(view.name.getCenteredBounds(context,width,nameBaseline,scratch));
+			view.name.setText(view.nameValue,font);
+			if(region!=null) region.add(view.name.getCenteredBounds(context,width,nameBaseline,scratch));
+		}
+		if(view.scoreValue!=view.shownScore){
+			if(region!=null && view.shownScore>=0) region.add(view.score.getCenteredBounds(context,width,scoreBaseline,scratch));
+			view.shownScore = view.scoreValue;
+			view.score.setText(Integer.toString(view.scoreValue),font);
+			if(region!=null) region.add(view.score.getCenteredBounds(context,width,scoreBaseline,scratch));
+		}
+		int garbage = fullUI ? view.garbageValue : 0;
+		if(garbage!=view.shownGarbage){
+			if(region!=null && view.shownGarbage>0) region.add(view.warning.getCenteredBounds(context,width,warningBaseline,scratch));
+			view.shownGarbage = garbage;
+			if(garbage>0){
+				view.warning.setText("Warning! "+Integer.toString(garbage)+" incoming!",font);
+				if(region!=null) region.add(view.warning.getCenteredBounds(context,width,warningBaseline,scratch));
+			}
+		}
+
+		if(view.pieceChanged){
+			if(region!=null) region.add(view.pieceBounds);
+			view.pieceBounds.setBounds(0,0,0,0);
+			if(view.hasGhost) addPieceBounds(view.pieceBounds,view.ghost,tileSize,view.pieceX,view.ghostY);
+			if(view.hasCurrent) addPieceBounds(view.pieceBounds,view.current,tileSize,view.pieceX,view.pieceY);
+			if(region!=null) region.add(view.pieceBounds);
+		}
+		if(view.sideChanged){
+			if(region!=null) region.add(view.sideBounds);
+			view.sideBounds.setBounds(0,0,0,0);
+			if(view.hasHeld) addPieceBounds(view.sideBounds,view.held,tileSize*2/3,(int)(-3.4*tileSize),(int)(1.2*tileSize));
+			for(int n = 0; n<view.queueSize; n++){
+				addPieceBounds(view.sideBounds,view.queue[n],tileSize*2/3,(int)((numColumns+0.6)*tileSize),(int)(PREVIEW_ROWS[n]*tileSize));
+			}
+			if(region!=null) region.add(view.sideBounds);
+		}
+
+		Rectangle bounds = view.bounds;
+		bounds.setBounds(0,0,view.board.getWidth(),view.board.getHeight());
+		BufferedImage frame = getFrame(tileSize,fullUI);
+		if(frame!=null) union(bounds,getFrameX(tileSize,fullUI),getFrameY(tileSize),frame.getWidth(),frame.getHeight());
+		union(bounds,view.name.getCenteredBounds(context,width,nameBaseline,scratch));
+		union(bounds,view.score.getCenteredBounds(context,width,scoreBaseline,scratch));
+		if(view.shownGarbage>0) union(bounds,view.warning.getCenteredBounds(context,width,warningBaseline,scratch));
+		union(bounds,view.pieceBounds);
+		union(bounds,view.sideBounds);
+	}
+	/**
+	 *	Returns the area covered by a <code>Playfield</code> when it is painted, as of the last call to {@link #update(Graphics2D,Playfield,int,boolean,DirtyRegion) update}.
+	 *	@param playfield a <code>Playfield</code>
+	 *	@return the area relative to the origin of the <code>Playfield</code>, which is owned by this renderer and must not be modified; empty if the <code>Playfield</code> was never updated
+	**/
+	public Rectangle getBounds(Playfield playfield){
+		PlayfieldView view = views.get(playfield);
+		return view==null ? EMPTY_BOUNDS : view.bounds;
+	}
+	/**
+	 *	Paints a <code>Playfield</code> at the origin of the given <code>Graphics2D</code> context, as it was copied by the last call to {@link #update(Graphics2D,Playfield,int,boolean,DirtyRegion) update}. The <code>Playfield</code> itself is not accessed.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Playfield</code>
+	 *	@param playfield the <code>Playfield</code> to draw
+	 *	@param tileSize the length in pixels of each side of a single tile, as given to <code>update</code>
+	 *	@param fullUI the view given to <code>update</code>
+	**/
+	public void paint(Graphics2D context, Playfield playfield, int tileSize, boolean fullUI){
+		PlayfieldView view = views.get(playfield);
+		if(view==null || view.board==null) return;
+		int numRows = view.numRows;
+		int numColumns = view.numColumns;
+		context.drawImage(view.board,0,0,null);
+		BufferedImage frame = getFrame(tileSize,fullUI);
+		if(frame!=null){
+			context.drawImage(frame,getFrameX(tileSize,fullUI),getFrameY(tileSize),null);
+		}
+
+		context.setPaint(Color.WHITE);
+		view.name.drawCentered(context,numColumns*tileSize,-tileSize/2);
+		view.score.drawCentered(context,numColumns*tileSize,getScoreBaseline(numRows,tileSize));
+		if(view.shownGarbage>0){
+			view.warning.drawCentered(context,numColumns*tileSize,getWarningBaseline(numRows,tileSize));
+		}
+		if(view.hasGhost){
+			drawPiece(context,view.ghost,tileSize,view.pieceX,view.ghostY,ghostAlpha);
+		}
+		if(view.hasCurrent){
+			drawPiece(context,view.current,tileSize,view.pieceX,view.pieceY,Playfield.NORMAL_ALPHA);
+		}
+		if(!fullUI) return;
+		if(view.hasHeld){
+			drawPiece(context,view.held,tileSize*2/3,(int)(-3.4*tileSize),(int)(1.2*tileSize),Playfield.NORMAL_ALPHA);
+		}
+		for(int n = 0; n<view.queueSize; n++){
+			drawPiece(context,view.queue[n],tileSize*2/3,(int)((numColumns+0.6)*tileSize),(int)(PREVIEW_ROWS[n]*tileSize),Playfield.NORMAL_ALPHA);
+		}
+	}
+	/**
+	 *	Copies everything needed to draw a <code>Playfield</code> into its view, while holding the lock of the <code>Playfield</code>.
+	 *	@return <code>true</code> if the board layer must be created again, in which case every cell has been copied
+	**/
+	private boolean capture(PlayfieldView view, Playfield playfield, int tileSize, boolean fullUI){
+		synchronized(playfield){
+			Board shown = playfield.getDisplayedBoard();
+			int numRows = shown.getNumRows();
+			int numColumns = shown.getNumColumns();
+			boolean newBoard = view.board==null || view.boardTileSize!=tileSize || view.numRows!=numRows || view.numColumns!=numColumns;
+			if(newBoard){
+				view.numRows = numRows;
+				view.numColumns = numColumns;
+				view.dirty = new int[numRows];
+				view.tiles = new Tile[numRows*numColumns];
+				view.alphas = new int[numRows*numColumns];
+				Arrays.fill(view.dirty,(1<<numColumns)-1);
+			}
+			int[] dirty = view.dirty;
+			playfield.collectDirtyCells(dirty);
+			for(int y = 0; y<numRows; y++){
+				for(int mask = dirty[y]; mask!=0; mask &= mask-1){
+					int x = Integer.numberOfTrailingZeros(mask);
+					view.tiles[y*numColumns+x] = shown.getTile(y,x);
+					view.alphas[y*numColumns+x] = shown.getAlpha(y,x);
+				}
+			}
+
+			view.nameValue = playfield.getName();
+			view.scoreValue = playfield.getScore();
+			view.garbageValue = playfield.getGarbageWaiting();
+
+			Playfield.Piece currentPiece = playfield.getDisplayedPiece();
+			if(currentPiece==null){
+				view.pieceChanged = view.hasCurrent;
+				view.hasCurrent = false;
+				view.hasGhost = false;
+			}else{
+				PieceMotion motion = playfield.getPieceMotion();
+				motion.interpolate(currentPiece,playfield.getPieceSerial(),System.nanoTime());
+				int pieceX = (int)Math.round(motion.getX()*tileSize);
+				int pieceY = (int)Math.round(motion.getY()*tileSize);
+				Playfield.Piece ghostPiece = isLowDetail(tileSize) ? null : playfield.getGhostPiece();
+				view.pieceChanged = !view.hasCurrent || !currentPiece.equals(view.current) || pieceX!=view.pieceX || pieceY!=view.pieceY
+					|| (ghostPiece!=null)!=view.hasGhost || (ghostPiece!=null && !ghostPiece.equals(view.ghost));
+				view.hasCurrent = true;
+				view.current = copy(currentPiece,view.current);
+				view.pieceX = pieceX;
+				view.pieceY = pieceY;
+				view.hasGhost = ghostPiece!=null;
+				if(ghostPiece!=null){
+					view.ghost = copy(ghostPiece,view.ghost);
+					view.ghostY = ghostPiece.getY()*tileSize;
+				}
+			}
+
+			boolean sideChanged = false;
+			Playfield.Piece heldPiece = fullUI ? playfield.getHeldPiece() : null;
+			if((heldPiece!=null)!=view.hasHeld || (heldPiece!=null && !heldPiece.equals(view.held))){
+				sideChanged = true;
+				view.hasHeld = heldPiece!=null;
+				if(heldPiece!=null) view.held = copy(heldPiece,view.held);
+			}
+			int queueSize = fullUI ? Math.min(PREVIEW_ROWS.length,playfield.getQueueSize()) : 0;
+			if(queueSize!=view.queueSize) sideChanged = true;
+			for(int n = 0; n<queueSize; n++){
+				Playfield.Piece queued = playfield.getQueuedPiece(n);
+				if(n>=view.queueSize || !queued.equals(view.queue[n])){
+					sideChanged = true;
+					view.queue[n] = copy(queued,view.queue[n]);
+				}
+			}
+			view.queueSize = queueSize;
+			view.sideChanged = sideChanged;
+			return newBoard;
+		}
+	}
+	private static Playfield.Piece copy(Playfield.Piece source, Playfield.Piece target){
+		if(target==null) return new Playfield.Piece(source);
+		target.set(source);
+		return target;
+	}
+	private void createBoardLayer(Graphics2D context, PlayfieldView view, int tileSize){
+		BufferedImage grid = getGridLayer(context,view.numRows,view.numColumns,tileSize);
+		view.board = context.getDeviceConfiguration().createCompatibleImage(grid.getWidth(),grid.getHeight(),Transparency.TRANSLUCENT);
+		view.boardTileSize = tileSize;
+		Graphics2D g2d = view.board.createGraphics();
+		g2d.setComposite(AlphaComposite.Src);
+		g2d.drawImage(grid,0,0,null);
+		g2d.dispose();
+	}
+	private void updateBoardLayer(Graphics2D context, PlayfieldView view, int tileSize, DirtyRegion region){
+		int numRows = view.numRows;
+		int numColumns = view.numColumns;
+		BufferedImage grid = getGridLayer(context,numRows,numColumns,tileSize);
+		int[] dirty = view.dirty;
+		Graphics2D g2d = null;
+		for(int y = 0; y<numRows; y++){
+			int mask = dirty[y];
+			if(mask==0) continue;
+			dirty[y] = 0;
+			if(g2d==null) g2d = view.board.createGraphics();
+			if(region!=null){
+				int first = Integer.numberOfTrailingZeros(mask);
+				int last = 31-Integer.numberOfLeadingZeros(mask);
+				region.add(first*tileSize,y*tileSize,(last-first+1)*tileSize+1,tileSize+1);
+			}
+			for(; mask!=0; mask &= mask-1){
+				int x = Integer.numberOfTrailingZeros(mask);
+				int left = x*tileSize;
+				int top = y*tileSize;
+				g2d.setComposite(AlphaComposite.Src);
+				g2d.drawImage(grid,left,top,left+tileSize,top+tileSize,left,top,left+tileSize,top+tileSize,null);
+				g2d.setComposite(AlphaComposite.SrcOver);
+				drawTile(g2d,view.tiles[y*numColumns+x],left,top,tileSize,view.alphas[y*numColumns+x]);
+			}
+		}
+		if(g2d!=null) g2d.dispose();
+	}
+	private BufferedImage getFrame(int tileSize, boolean fullUI){
+		return Assets.getScaledImage(fullUI ? STR_PLAYFIELD_FILENAME : STR_SMALL_PLAYFIELD_FILENAME,tileSize/20.0);
+	}
+	private static int getFrameX(int tileSize, boolean fullUI){
+		return fullUI ? -4*tileSize : (int)(-0.2*tileSize);
+	}
+	private static int getFrameY(int tileSize){
+		return (int)(-1.5*tileSize);
+	}
+	private static int getScoreBaseline(int numRows, int tileSize){
+		return (int)((numRows*tileSize)+tileSize*1.1);
+	}
+	private static int getWarningBaseline(int numRows, int tileSize){
+		return numRows*tileSize+tileSize*3;
+	}
+	private static void addPieceBounds(Rectangle result, Playfield.Piece piece, int tileSize, int x, int y){
+		int r = piece.getRotationState().ordinal();
+		PieceType type = piece.getType();
+		for(int k = 0; k<PieceType.NUM_CELLS; k++){
+			union(result,x+type.getCellColumn(r,k)*tileSize,y+type.getCellRow(r,k)*tileSize,tileSize,tileSize);
+		}
+	}
+	private static void union(Rectangle result, Rectangle r){
+		union(result,r.x,r.y,r.width,r.height);
+	}
+	private static void union(Rectangle result, int x, int y, int width, int height){
+		if(width<=0 || height<=0) return;
+		if(result.width<=0 || result.height<=0){
+			result.setBounds(x,y,width,height);
+			return;
+		}
+		int right = Math.max(result.x+result.width,x+width);
+		int bottom = Math.max(result.y+result.height,y+height);
+		result.x = Math.min(result.x,x);
+		result.y = Math.min(result.y,y);
+		result.width = right-result.x;
+		result.height = bottom-result.y;
+	}
+	private BufferedImage getGridLayer(Graphics2D context, int numRows, int numColumns, int tileSize){
+		BufferedImage layer = gridLayers.get(tileSize);
+		if(layer!=null) return layer;
+		layer = context.getDeviceConfiguration().createCompatibleImage(numColumns*tileSize+1,numRows*tileSize+1,Transparency.TRANSLUCENT);
+		Graphics2D g2d = layer.createGraphics();
+		g2d.setRenderingHints(context.getRenderingHints());
+		g2d.setPaint(new Color(0,0,0,175));
+		g2d.fill(new Rectangle2D.Double(0,0,numColumns*tileSize,numRows*tileSize));
+		g2d.setPaint(new Color(100,100,100,175));
+		for(int x = 0; x<numColumns; x++){
+			for(int y = 0; y<numRows; y++){
+				g2d.draw(new Rectangle2D.Double(x*tileSize,y*tileSize,tileSize,tileSize));
+			}
+		}
+		g2d.dispose();
+		gridLayers.put(tileSize,layer);
+		return layer;
+	}
+	/**
+	 *	Draws a <code>Piece</code> at specified <code>x</code> and <code>y</code> coordinates, with an specified alpha value.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the <code>Piece</code>
+	 *	@param piece the <code>Piece</code> to draw
+	 *	@param tileSize the length in pixels of each side of a single tile
+	 *	@param x the x coordinate of the upper-left corner of the <code>Piece</code>
+	 *	@param y the y coordinate of the upper-left corner of the <code>Piece</code>
+	 *	@param alpha the alpha value (0-255) with which to draw the <code>Piece</code>.
+	**/
+	public void drawPiece(Graphics2D context, Playfield.Piece piece, int tileSize, int x, int y, int alpha){
+		int r = piece.getRotationState().ordinal();
+		PieceType type = piece.getType();
+		for(int k = 0; k<PieceType.NUM_CELLS; k++){
+			drawTile(context,piece.getColor(k),x+type.getCellColumn(r,k)*tileSize,y+type.getCellRow(r,k)*tileSize,tileSize,alpha);
+		}
+	}
+	/**
+	 *	Checks if tiles of a given size are drawn at low detail.
+	 *	@param tileSize the length in pixels of each side of a single tile
+	 *	@return <code>true</code> if <code>tileSize</code> is at most {@link #LOW_DETAIL_TILE_SIZE LOW_DETAIL_TILE_SIZE}, and <code>false</code> otherwise
+	**/
+	public static boolean isLowDetail(int tileSize){
+		return tileSize<=LOW_DETAIL_TILE_SIZE;
+	}
+	private void drawTile(Graphics2D context, Tile tile, int x, int y, int tileSize, int alpha){
+		if(isLowDetail(tileSize)) tileRenderer.drawFlat(context,tile,x,y,tileSize,alpha);
+		else tileRenderer.draw(context,tile,x,y,tileSize,alpha);
+	}
+}
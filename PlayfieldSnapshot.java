@@ -0,0 +1,304 @@
+import java.nio.*;
+/**
+ *	A copy of the data of a {@link Playfield Playfield} which is sent over the network: its player name, score, cells, current and held pieces, and piece queue.
+ *	<p> A snapshot is filled by {@link Playfield#captureSnapshot(PlayfieldSnapshot) Playfield.captureSnapshot} and applied by {@link Playfield#applySnapshot(PlayfieldSnapshot) Playfield.applySnapshot}.
+ *	It can be written in full, or as a <i>delta</i> which only holds the fields that differ from an older snapshot known to the reader.
+ *	<p> A delta starts with a bitmask of the fields it holds. Changed cells are listed by their distance from the previous changed cell, packed with their tile code in a single varint; if many cells changed, the whole board is sent packed at 3 bits per cell instead.
+ *	The piece queue is sent as the number of entries removed from its head, followed by the entries appended to its tail.
+**/
+public class PlayfieldSnapshot{
+	private static final int NAME = 1;
+	private static final int SCORE = 2;
+	private static final int CELLS = 4;
+	private static final int CURRENT_PIECE = 8;
+	private static final int HELD_PIECE = 16;
+	private static final int QUEUE = 32;
+	private static final int FULL = 64;
+	private static final int MAX_LISTED_CELLS = 48;
+	private static final int NUM_TILES = Tile.values().length;
+	private static final int NUM_TYPES = PieceType.values().length;
+
+	String name;
+	int score;
+	final byte[] cells;
+	boolean hasCurrent;
+	int currentHeader, currentX, currentY, currentColors;
+	boolean hasHeld;
+	int heldHeader, heldX, heldY, heldColors;
+	int queueSize;
+	final int[] queue;
+
+	/**
+	 *	Creates a new, empty snapshot.
+	 *	@param numCells the number of cells of the board
+	**/
+	public PlayfieldSnapshot(int numCells){
+		this.name = "";
+		this.cells = new byte[numCells];
+		this.queue = new int[PieceBag.CAPACITY];
+	}
+	/**
+	 *	Copies every field of another snapshot of the same size into this one.
+	 *	@param other the snapshot to copy
+	**/
+	public void copyFrom(PlayfieldSnapshot other){
+		name = other.name;
+		score = other.score;
+		System.arraycopy(other.cells,0,cells,0,cells.length);
+		hasCurrent = other.hasCurrent;
+		currentHeader = other.currentHeader;
+		currentX = other.currentX;
+		currentY = other.currentY;
+		currentColors = other.currentColors;
+		hasHeld = other.hasHeld;
+		heldHeader = other.heldHeader;
+		heldX = other.heldX;
+		heldY = other.heldY;
+		heldColors = other.heldColors;
+		queueSize = other.queueSize;
+		System.arraycopy(other.queue,0,queue,0,queueSize);
+	}
+	/**
+	 *	Writes every field of this snapshot.
+	 *	@param buffer the buffer to write to; {@link StateCodec#MAX_PLAYFIELD_BYTES StateCodec.MAX_PLAYFIELD_BYTES} bytes are enough for any name allowed by {@link Playfield#setName(String) Playfield.setName}
+	**/
+	public void writeFull(ByteBuffer buffer){
+		StateCodec.putString(buffer,name);
+		StateCodec.putVarint(buffer,score);
+		writeCells(buffer);
+		buffer.put((byte)((hasCurrent ? 1 : 0) | (hasHeld ? 2 : 0)));
+		if(hasCurrent) writePiece(buffer,currentHeader,currentX,currentY,currentColors);
+		if(hasHeld) writePiece(buffer,heldHeader,heldX,heldY,heldColors);
+		StateCodec.putVarint(buffer,queueSize);
+		for(int n = 0; n<queueSize; n++){
+			StateCodec.putVarint(buffer,queue[n]);
+		}
+	}
+	/**
+	 *	Sets every field of this snapshot from data written by {@link #writeFull(ByteBuffer) writeFull}.
+	 *	@param buffer the buffer to read from
+	 *	@throws IllegalArgumentException if the data is not a valid snapshot
+	 *	@throws BufferUnderflowException if the data is truncated
+	**/
+	public void readFull(ByteBuffer buffer){
+		name = StateCodec.getString(buffer);
+		score = StateCodec.getVarint(buffer);
+		readCells(buffer);
+		int flags = buffer.get();
+		hasCurrent = (flags&1)!=0;
+		if(hasCurrent){
+			currentHeader = readPieceHeader(buffer);
+			currentX = StateCodec.getSignedVarint(buffer);
+			currentY = StateCodec.getSignedVarint(buffer);
+			checkPose(currentHeader,currentX,currentY);
+			currentColors = readPieceColors(buffer);
+		}
+		hasHeld = (flags&2)!=0;
+		if(hasHeld){
+			heldHeader = readPieceHeader(buffer);
+			heldX = StateCodec.getSignedVarint(buffer);
+			heldY = StateCodec.getSignedVarint(buffer);
+			checkPose(heldHeader,heldX,heldY);
+			heldColors = readPieceColors(buffer);
+		}
+		int size = StateCodec.getVarint(buffer);
+		if(size<0 || size>queue.length) throw new IllegalArgumentException("Invalid queue size: "+size);
+		queueSize = size;
+		for(int n = 0; n<queueSize; n++){
+			queue[n] = readQueueEntry(buffer);
+		}
+	}
+	/**
+	 *	Writes the fields of this snapshot which differ from <code>base</code>. If nothing changed, this is a single byte.
+	 *	@param buffer the buffer to write to
+	 *	@param base the snapshot the reader already has, or <code>null</code> to write this snapshot in full
+	**/
+	public void writeDelta(ByteBuffer buffer, PlayfieldSnapshot base){
+		if(base==null){
+			StateCodec.putVarint(buffer,FULL);
+			writeFull(buffer);
+			return;
+		}
+		int changedCells = 0;
+		for(int k = 0; k<cells.length; k++){
+			if(cells[k]!=base.cells[k]) changedCells++;
+		}
+		int queueShift = findQueueShift(base);
+		int mask = 0;
+		if(!name.equals(base.name)) mask |= NAME;
+		if(score!=base.score) mask |= SCORE;
+		if(changedCells>0) mask |= CELLS;
+		if(hasCurrent!=base.hasCurrent || (hasCurrent && (currentHeader!=base.currentHeader || currentX!=base.currentX || currentY!=base.currentY || currentColors!=base.currentColors))) mask |= CURRENT_PIECE;
+		if(hasHeld!=base.hasHeld || (hasHeld && (heldHeader!=base.heldHeader || heldX!=base.heldX || heldY!=base.heldY || heldColors!=base.heldColors))) mask |= HELD_PIECE;
+		if(queueShift!=0 || queueSize!=base.queueSize) mask |= QUEUE;
+		StateCodec.putVarint(buffer,mask);
+		if((mask&NAME)!=0) StateCodec.putString(buffer,name);
+		if((mask&SCORE)!=0) StateCodec.putVarint(buffer,score);
+		if((mask&CELLS)!=0){
+			if(changedCells>MAX_LISTED_CELLS){
+				StateCodec.putVarint(buffer,0);
+				writeCells(buffer);
+			}else{
+				StateCodec.putVarint(buffer,changedCells);
+				int previous = -1;
+				for(int k = 0; k<cells.length; k++){
+					if(cells[k]==base.cells[k]) continue;
+					StateCodec.putVarint(buffer,((k-previous-1)<<3) | cells[k]);
+					previous = k;
+				}
+			}
+		}
+		if((mask&CURRENT_PIECE)!=0){
+			buffer.put((byte)(hasCurrent ? 1 : 0));
+			if(hasCurrent) writePiece(buffer,currentHeader,currentX,currentY,currentColors);
+		}
+		if((mask&HELD_PIECE)!=0){
+			buffer.put((byte)(hasHeld ? 1 : 0));
+			if(hasHeld) writePiece(buffer,heldHeader,heldX,heldY,heldColors);
+		}
+		if((mask&QUEUE)!=0){
+			int kept = base.queueSize-queueShift;
+			StateCodec.putVarint(buffer,queueShift);
+			StateCodec.putVarint(buffer,queueSize-kept);
+			for(int n = kept; n<queueSize; n++){
+				StateCodec.putVarint(buffer,queue[n]);
+			}
+		}
+	}
+	/**
+	 *	Sets this snapshot to <code>base</code> with a delta written by {@link #writeDelta(ByteBuffer,PlayfieldSnapshot) writeDelta} applied to it.
+	 *	@param buffer the buffer to read from
+	 *	@param base the snapshot the delta was written against, or <code>null</code> if the reader has none; may be this snapshot itself
+	 *	@throws IllegalArgumentException if the data is not a valid delta, or if it needs a base and <code>base</code> is <code>null</code>
+	 *	@throws BufferUnderflowException if the data is truncated
+	**/
+	public void readDelta(ByteBuffer buffer, PlayfieldSnapshot base){
+		int mask = StateCodec.getVarint(buffer);
+		if((mask&FULL)!=0){
+			readFull(buffer);
+			return;
+		}
+		if(base==null) throw new IllegalArgumentException("Delta received without a base snapshot.");
+		if(base!=this) copyFrom(base);
+		if((mask&NAME)!=0) name = StateCodec.getString(buffer);
+		if((mask&SCORE)!=0) score = StateCodec.getVarint(buffer);
+		if((mask&CELLS)!=0){
+			int count = StateCodec.getVarint(buffer);
+			if(count==0){
+				readCells(buffer);
+			}else{
+				int k = -1;
+				for(int n = 0; n<count; n++){
+					int entry = StateCodec.getVarint(buffer);
+					k += (entry>>>3)+1;
+					int code = entry&7;
+					if(k<0 || k>=cells.length || code>=NUM_TILES) throw new IllegalArgumentException("Invalid cell delta.");
+					cells[k] = (byte)code;
+				}
+			}
+		}
+		if((mask&CURRENT_PIECE)!=0){
+			hasCurrent = buffer.get()!=0;
+			if(hasCurrent){
+				currentHeader = readPieceHeader(buffer);
+				currentX = StateCodec.getSignedVarint(buffer);
+				currentY = StateCodec.getSignedVarint(buffer);
+				checkPose(currentHeader,currentX,currentY);
+				currentColors = readPieceColors(buffer);
+			}
+		}
+		if((mask&HELD_PIECE)!=0){
+			hasHeld = buffer.get()!=0;
+			if(hasHeld){
+				heldHeader = readPieceHeader(buffer);
+				heldX = StateCodec.getSignedVarint(buffer);
+				heldY = StateCodec.getSignedVarint(buffer);
+				checkPose(heldHeader,heldX,heldY);
+				heldColors = readPieceColors(buffer);
+			}
+		}
+		if((mask&QUEUE)!=0){
+			int shift = StateCodec.getVarint(buffer);
+			int appended = StateCodec.getVarint(buffer);
+			int kept = queueSize-shift;
+			if(shift<0 || kept<0 || appended<0 || kept+appended>queue.length) throw new IllegalArgumentException("Invalid queue delta.");
+			System.arraycopy(queue,shift,queue,0,kept);
+			for(int n = kept; n<kept+appended; n++){
+				queue[n] = readQueueEntry(buffer);
+			}
+			queueSize = kept+appended;
+		}
+	}
+	private int findQueueShift(PlayfieldSnapshot base){
+		for(int shift = 0; shift<base.queueSize; shift++){
+			int kept = base.queueSize-shift;
+			if(kept>queueSize) continue;
+			boolean matches = true;
+			for(int n = 0; n<kept && matches; n++){
+				matches = queue[n]==base.queue[shift+n];
+			}
+			if(matches) return shift;
+		}
+		return base.queueSize;
+	}
+	private void writeCells(ByteBuffer buffer){
+		int bits = 0;
+		int numBits = 0;
+		for(int k = 0; k<cells.length; k++){
+			bits |= cells[k]<<numBits;
+			numBits += 3;
+			if(numBits>=8){
+				buffer.put((byte)bits);
+				bits >>>= 8;
+				numBits -= 8;
+			}
+		}
+		if(numBits>0) buffer.put((byte)bits);
+	}
+	private void readCells(ByteBuffer buffer){
+		int bits = 0;
+		int numBits = 0;
+		for(int k = 0; k<cells.length; k++){
+			if(numBits<3){
+				bits |= (buffer.get() & 0xFF)<<numBits;
+				numBits += 8;
+			}
+			int code = bits&7;
+			bits >>>= 3;
+			numBits -= 3;
+			if(code>=NUM_TILES) throw new IllegalArgumentException("Invalid tile code: "+code);
+			cells[k] = (byte)code;
+		}
+	}
+	private static void writePiece(ByteBuffer buffer, int header, int x, int y, int colors){
+		buffer.put((byte)header);
+		StateCodec.putSignedVarint(buffer,x);
+		StateCodec.putSignedVarint(buffer,y);
+		StateCodec.putVarint(buffer,colors);
+	}
+	private static int readPieceHeader(ByteBuffer buffer){
+		int header = buffer.get() & 0xFF;
+		if((header>>>2)>=NUM_TYPES) throw new IllegalArgumentException("Invalid piece type: "+(header>>>2));
+		return header;
+	}
+	private static void checkPose(int header, int x, int y){
+		if(!Playfield.isInBounds(PieceType.values()[header>>>2],header&3,x,y)) throw new IllegalArgumentException("Piece out of bounds: "+x+","+y);
+	}
+	private static int readPieceColors(ByteBuffer buffer){
+		int colors = StateCodec.getVarint(buffer);
+		checkColors(colors);
+		return colors;
+	}
+	private static void checkColors(int colors){
+		if((colors>>>(3*PieceType.NUM_CELLS))!=0) throw new IllegalArgumentException("Invalid piece color.");
+		for(int c = 0; c<PieceType.NUM_CELLS; c++){
+			if(((colors>>>(3*c))&7)>=NUM_TILES) throw new IllegalArgumentException("Invalid piece color.");
+		}
+	}
+	private static int readQueueEntry(ByteBuffer buffer){
+		int entry = StateCodec.getVarint(buffer);
+		if((entry&7)>=NUM_TYPES) throw new IllegalArgumentException("Invalid queued piece: "+entry);
+		checkColors(entry>>>3);
+		return entry;
+	}
+}
@@ -1,8 +1,41 @@
 /** 
  * 	The <code>PlayfieldState</code> enclosing class contains all playfield state object classes. Each state object class represents a possible state of a {@link Playfield Playfield}, and also defines its behavior and possible state transitions.
  *	<p> Every state object inherits from the {@link PlayfieldState.State PlayfieldState.State} abstract base class.
+ *	<p> Each {@link Playfield Playfield} owns one instance of every state, created by {@link #createStates(Playfield) createStates(Playfield)}, and reuses them for its whole lifetime.
+ *	States are selected by {@link PlayfieldState.Id Id} through {@link Playfield#setState(PlayfieldState.Id) Playfield.setState(PlayfieldState.Id)}, which calls {@link PlayfieldState.State#enter() enter()} on the new state.
 **/
 public final class PlayfieldState{
+	/**
+	 *	Identifies each of the possible states of a <code>Playfield</code>.
+	**/
+	public enum Id{
+		NORMAL, GROUNDED, RELOAD, GAMEOVER;
+	}
+	/**
+	 *	Receives a notification every time a <code>Playfield</code> changes state.
+	**/
+	public interface Listener{
+		/**
+		 *	Called when <code>actor</code> changes state, just before the new state is entered.
+		 *	@param actor the <code>Playfield</code> which changed state
+		 *	@param from the previous state, or <code>null</code> if this is the first state of <code>actor</code>
+		 *	@param to the new state
+		**/
+		public void stateChanged(Playfield actor, Id from, Id to);
+	}
+	/**
+	 *	Creates one instance of every state for a <code>Playfield</code>, indexed by the ordinal of its {@link PlayfieldState.Id Id}.
+	 *	@param actor the <code>Playfield</code> to associate with the state objects
+	 *	@return an array holding one state object per {@link PlayfieldState.Id Id}
+	**/
+	public static State[] createStates(Playfield actor){
+		State[] states = new State[Id.values().length];
+		states[Id.NORMAL.ordinal()] = new Normal(actor);
+		states[Id.GROUNDED.ordinal()] = new Grounded(actor);
+		states[Id.RELOAD.ordinal()] = new Reload(actor);
+		states[Id.GAMEOVER.ordinal()] = new GameOver(actor);
+		return states;
+	}
 	/** 
 	 * 	Abstract base class for State objects assigned to a Playfield.
 	 *	The exact behavior of a State depends on the implementation of the abstract {@link #update() update()} method.
@@ -11,8 +44,25 @@ public final class PlayfieldState{
 		/** 
 		 * 	A reference to the Playfield associated with the state.
 		**/
-		protected Playfield actor = null;
+		protected final Playfield actor;
+		private final Id id;
 		
+		/**
+		 *	Creates a state object which is associated with a <code>Playfield</code>.
+		 *	@param actor the <code>Playfield</code> to associate with this state object
+		 *	@param id the <code>Id</code> of this state
+		**/
+		protected State(Playfield actor, Id id){
+			this.actor = actor;
+			this.id = id;
+		}
+		/**
+		 *	Returns the <code>Id</code> of this state.
+		 *	@return the <code>Id</code> of this state
+		**/
+		public Id getId(){
+			return id;
+		}
 		/**
 		 *	Helper function which obtains the class name of a object derived from <code>State</code>.
 		 *	@return A <code>String</code> which contains the name of the state class.
@@ -20,6 +70,11 @@ public final class PlayfieldState{
 		public String getName(){
 			return this.getClass().getName();
 		}
+		/**
+		 *	Resets this state and performs any work needed when <code>actor</code> enters it.
+		 *	This method is called by <code>actor</code> whenever it changes to this state.
+		**/
+		public void enter(){}
 		/**
 		 *	Updates <code>actor</code> based on the current state.
 		 *	This method is called once per frame.
@@ -49,23 +104,25 @@ public final class PlayfieldState{
 		 *	@param actor the <code>Playfield</code> to associate with this state object
 		**/
 		public Normal(Playfield actor){
-			this.actor = actor;
+			super(actor,Id.NORMAL);
+		}
+		@Override
+		public void enter(){
 			this.count = 0;
 			actor.setHoldEnabled(true);
 		}
 		@Override
 		public void update(){
-			try{
-				count++;
-				if(count>=framesPerCell){
-					actor.getCurrentPiece().move(0,1);
-					count = 0;
-				}
-				if(actor.getCurrentPiece().isGrounded()){
-					actor.setState(new Grounded(actor));
-				}
-			}catch(NullPointerException e){
-				actor.setState(new Reload(actor));
+			count++;
+			if(count>=framesPerCell){
+				actor.movePiece(0,1);
+				count = 0;
+			}
+			Playfield.Piece piece = actor.getCurrentPiece();
+			if(piece==null){
+				actor.setState(Id.RELOAD);
+			}else if(piece.isGrounded(actor.getBoard())){
+				actor.setState(Id.GROUNDED);
 			}
 		}
 	}
@@ -87,21 +144,26 @@ public final class PlayfieldState{
 		private int ticks;
 		/**
 		 *	Creates a new <code>Grounded</code> state object which is associated with a <code>Playfield</code>.
-		 *	An internal frame counter is also started by this constructor.
 		 *	@param actor the <code>Playfield</code> to associate with this state object
 		**/
 		public Grounded(Playfield actor){
-			this.actor = actor;
+			super(actor,Id.GROUNDED);
+		}
+		/**
+		 *	Restarts the internal frame counter of the lock delay.
+		**/
+		@Override
+		public void enter(){
 			this.ticks = 0;
 		}
 		@Override
 		public void update(){
-			if(actor.getCurrentPiece()!=null && !actor.getCurrentPiece().isGrounded()){
-				actor.setState(new Normal(actor));
+			if(actor.getCurrentPiece()!=null && !actor.isPieceGrounded()){
+				actor.setState(Id.NORMAL);
 			}
 			ticks++;
 			if(ticks >= 30){
-				actor.setState(new Reload(actor));
+				actor.setState(Id.RELOAD);
 			}
 		}
 	}
@@ -117,30 +179,36 @@ public final class PlayfieldState{
 	 *		<li> If the game is unable to spawn a new piece due to the presence of blocks at the spawn point, the playfield changes to the {@link PlayfieldState.GameOver GameOver} state. </li>
 	 *		<li> Otherwise, when the game is finished performing all tasks for this state, the playfield reverts to the {@link PlayfieldState.Normal Normal} state. </li>
 	 *	</ul>
-	 *	<p> The above behavior is implemented in this state's implementation of the {@link #update() update()} method, as well as its constructor.
+	 *	<p> The above behavior is implemented in this state's implementation of the {@link #update() update()} and {@link #enter() enter()} methods.
 	**/
 	public static class Reload extends State{
 		/**
-		 *	Creates a new <code>Reload</code> state object which is associated with a <code>Playfield</code>. Reloading operations are also started when the constructor is invoked.
+		 *	Creates a new <code>Reload</code> state object which is associated with a <code>Playfield</code>.
 		 *	@param actor the <code>Playfield</code> to associate with this state object
 		**/
 		public Reload(Playfield actor){
-			this.actor = actor;
+			super(actor,Id.RELOAD);
+		}
+		/**
+		 *	Locks the current piece into place and resolves the resulting chain.
+		**/
+		@Override
+		public void enter(){
 			if(actor.getCurrentPiece()!=null){
-				boolean valid = actor.getCurrentPiece().addToPlayfield();
+				boolean valid = actor.lockPiece();
 				if(!valid) {
-					actor.setState(new GameOver(actor));
+					actor.setState(Id.GAMEOVER);
 					return;
 				}
 			}
-			actor.clear();
+			actor.resolveChain();
 		}
 		@Override
 		public void update(){
 			if(actor.isDoneClearing()){
 				actor.spawnGarbage();
 				actor.getNextPiece();
-				actor.setState(new Normal(actor));
+				actor.setState(Id.NORMAL);
 			}
 		}
 	}
@@ -154,19 +222,32 @@ public final class PlayfieldState{
 	 *	<ul>
 	 *		<li> When the game is finished performing all tasks for this state, the playfield reverts to the {@link PlayfieldState.Normal Normal} state. </li>
 	 *	</ul>
-	 *	<p> The above behavior is implemented in this state's implementation of the {@link #update() update()} method, as well as its constructor.
+	 *	<p> The above behavior is implemented in this state's implementation of the {@link #update() update()} and {@link #enter() enter()} methods.
 	**/
 	public static class GameOver extends State{
 		/**
-		 *	Creates a new <code>GameOver</code> state object which is associated with a <code>Playfield</code>. Resetting operations are also started when the constructor is invoked.
+		 *	Creates a new <code>GameOver</code> state object which is associated with a <code>Playfield</code>.
 		 *	@param actor the <code>Playfield</code> to associate with this state object
 		**/
 		public GameOver(Playfield actor){
-			this.actor = actor;
+			super(actor,Id.GAMEOVER);
+		}
+		/**
+		 *	Clears all the tiles of <code>actor</code>.
+		**/
+		@Override
+		public void enter(){
 			actor.clearField();
-			actor.setState(new Normal(actor));
+			actor.setHoldEnabled(true);
 		}
+		/**
+		 *	Spawns any incoming garbage and a new piece onto the cleared field.
+		**/
 		@Override
-		public void update(){actor.setState(new Normal(actor));}
+		public void update(){
+			actor.spawnGarbage();
+			actor.getNextPiece();
+			actor.setState(Id.NORMAL);
+		}
 	}
 }
\ No newline at end of file
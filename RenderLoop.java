@@ -0,0 +1,97 @@
+/**
+ *	Renders the current {@link RenderTarget RenderTarget} of a {@link GameFrame GameFrame} from a single thread.
+ *	<p> Frames are paced to a fixed frame cap against <code>System.nanoTime()</code>. If a frame runs late, the next deadline is moved forward instead of rendering extra frames to catch up.
+ *	The cap is read from the <code>kolortris.fps</code> system property, and defaults to {@link #DEFAULT_FRAME_CAP DEFAULT_FRAME_CAP}.
+ *	A cap of 0 or less renders frames back to back.
+ *	<p> Only one target is rendered at a time, so replacing the target stops the previous one from being drawn.
+**/
+public class RenderLoop extends Thread{
+	/**
+	 *	Frame cap used when the <code>kolortris.fps</code> system property is not set.
+	**/
+	public static final int DEFAULT_FRAME_CAP = 60;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private volatile RenderTarget target;
+	private volatile long frameNanos;
+	private volatile int frameRate;
+
+	/**
+	 *	Creates a new <code>RenderLoop</code> with no target. The loop is not started.
+	**/
+	public RenderLoop(){
+		super("RenderLoop");
+		this.target = null;
+		this.frameRate = 0;
+		setFrameCap(Integer.getInteger("kolortris.fps",DEFAULT_FRAME_CAP));
+		setDaemon(true);
+	}
+	/**
+	 *	Sets the maximum number of frames rendered per second.
+	 *	@param framesPerSecond the frame cap, or 0 to render frames back to back
+	**/
+	public void setFrameCap(int framesPerSecond){
+		frameNanos = framesPerSecond>0 ? NANOS_PER_SECOND/framesPerSecond : 0;
+	}
+	/**
+	 *	Sets the target rendered by this loop, starting from the next frame.
+	 *	@param newTarget the <code>RenderTarget</code> to render, or <code>null</code> to render nothing
+	**/
+	public synchronized void setTarget(RenderTarget newTarget){
+		target = newTarget;
+		notifyAll();
+	}
+	/**
+	 *	Returns the number of frames rendered during the last full second.
+	 *	@return the measured frame rate
+	**/
+	public int getFrameRate(){
+		return frameRate;
+	}
+	private synchronized RenderTarget awaitTarget() throws InterruptedException{
+		while(target==null){
+			wait();
+		}
+		return target;
+	}
+	/**
+	 *	The loop. Sleeps while there is no target.
+	**/
+	public void run(){
+		try{
+			long deadline = System.nanoTime();
+			long secondStart = deadline;
+			int frames = 0;
+			while(true){
+				RenderTarget current = awaitTarget();
+				try{
+					current.renderFrame();
+				}catch(RuntimeException e){
+					e.printStackTrace();
+				}
+				frames++;
+				long now = System.nanoTime();
+				if(now-secondStart>=NANOS_PER_SECOND){
+					frameRate = frames;
+					frames = 0;
+					secondStart = now;
+				}
+				long step = frameNanos;
+				if(step<=0){
+					Thread.yield();
+					deadline = now;
+					continue;
+				}
+				deadline += step;
+				if(deadline<now){
+					deadline = now;
+				}else{
+					long sleepNanos = deadline-now;
+					sleep(sleepNanos/1000000L, (int)(sleepNanos%1000000L));
+				}
+			}
+		}catch(InterruptedException e){
+			e.printStackTrace();
+		}
+	}
+}
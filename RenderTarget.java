@@ -0,0 +1,10 @@
+/**
+ *	Something which is drawn once per frame by a {@link RenderLoop RenderLoop}.
+ *	<p> A target either draws itself directly, for example into a <code>BufferStrategy</code>, or asks Swing to repaint it.
+**/
+public interface RenderTarget{
+	/**
+	 *	Renders a single frame. Called from the thread of the {@link RenderLoop RenderLoop}, never from the event dispatch thread.
+	**/
+	public void renderFrame();
+}
@@ -0,0 +1,54 @@
+/**
+ *	Re-executes a match recorded in a {@link MatchLog MatchLog}, as fast as possible.
+ *	<p> The <code>Playfield</code> is reset with the seed of the match, and its logic is ticked directly instead of by the {@link GameLoop GameLoop}.
+ *	Before each tick, every event recorded at that tick is applied in its original order, so the match ends in exactly the same state as it was played.
+**/
+public final class ReplayRunner{
+	private ReplayRunner(){}
+	/**
+	 *	Replays a match on a new <code>Playfield</code>.
+	 *	@param log the match to replay
+	 *	@return the <code>Playfield</code>, in its state at the end of the match
+	**/
+	public static Playfield replay(MatchLog log){
+		return replay(new Playfield(),log);
+	}
+	/**
+	 *	Replays a match on an existing <code>Playfield</code>, which is reset first.
+	 *	<p> Reusing a single <code>Playfield</code> avoids allocating new boards and a new piece queue for every replay, when many matches are checked in a row.
+	 *	@param target the <code>Playfield</code> to replay the match on; its logic must not be running
+	 *	@param log the match to replay
+	 *	@return <code>target</code>, in its state at the end of the match
+	**/
+	public static Playfield replay(Playfield target, MatchLog log){
+		target.setClearAnimationEnabled(log.isClearAnimationEnabled());
+		target.startMatch(log.getSeed());
+		target.startLogic(false);
+		int endTick = log.getEndTick();
+		int numEvents = log.size();
+		int event = 0;
+		for(int tick = 0; tick<=endTick; tick++){
+			while(event<numEvents && log.getTick(event)==tick){
+				if(log.isGarbage(event)){
+					target.addGarbageToQueue(log.getGarbage(event));
+				}else{
+					target.applyInput(log.getInput(event));
+				}
+				event++;
+			}
+			if(tick<endTick) target.tick();
+		}
+		target.stopLogic();
+		return target;
+	}
+	/**
+	 *	Replays a match and checks that it ends in an expected state. The player name is not part of the match, so it is not compared.
+	 *	@param log the match to replay
+	 *	@param expectedState the final state of the <code>Playfield</code>, as generated by {@link Playfield#toString() Playfield.toString()}
+	 *	@return <code>true</code> if the replayed match ends in <code>expectedState</code>, and <code>false</code> otherwise
+	**/
+	public static boolean verify(MatchLog log, String expectedState){
+		String replayed = replay(log).toString();
+		return replayed.substring(replayed.indexOf("scoreStart")).equals(expectedState.substring(expectedState.indexOf("scoreStart")));
+	}
+}
@@ -0,0 +1,9 @@
+/**
+ *	The four orientations of a piece, in clockwise order from the spawn orientation.
+**/
+enum RotationState{
+	SPAWN,
+	CW,
+	FLIP,
+	CCW
+}
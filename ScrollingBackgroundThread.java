@@ -14,12 +14,7 @@ public class ScrollingBackgroundThread extends Thread{
 	 *	@param imageFilename the filename of the image to use as a background
 	**/
 	public ScrollingBackgroundThread(String imageFilename){
-		try{
-			this.IMG_BACKGROUND_IMAGE = ImageIO.read(new File(imageFilename));
-		}catch (IOException e){
-			this.IMG_BACKGROUND_IMAGE = null;
-			System.out.println("Failed to load images.");
-		}
+		this.IMG_BACKGROUND_IMAGE = Assets.getImage(imageFilename);
 		this.start();
 	}
 	/**
@@ -43,6 +38,24 @@ public class ScrollingBackgroundThread extends Thread{
 	private double getYOffset(double t){
 		return 150*Math.sin(6*Math.PI*t);
 	}
+	/**
+	 *	Stores the current offset of this background, rounded to whole pixels. The offset only changes when the background has moved by at least one pixel.
+	 *	@param result the <code>Point</code> in which to store the offset
+	 *	@return <code>result</code>
+	**/
+	public Point getOffset(Point result){
+		double time = t;
+		result.setLocation((int)Math.round(getXOffset(time)),(int)Math.round(getYOffset(time)));
+		return result;
+	}
+	/**
+	 * Draws this background at a given offset, as returned by {@link #getOffset(Point) getOffset}.
+	 * @param g2d the Graphics2D context with which to draw this background.
+	 * @param offset the offset at which to draw this background
+	**/
+	public void draw(Graphics2D g2d, Point offset){
+		g2d.drawImage(IMG_BACKGROUND_IMAGE, null, offset.x-200,offset.y-150);
+	}
 	/**
 	 * Draws this background using the given Graphics2D context.
 	 * @param g2d the Graphics2D context with which to draw this background.
@@ -0,0 +1,275 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+/**
+ *	The server side of a single client-server communication line, driven by the event loop of a {@link GameServer GameServer}.
+ *	<p> A <code>ServerConnection</code> never blocks. Incoming frames (see {@link MessageFraming MessageFraming}) are handed to the <code>GameServer</code> straight from a pooled read buffer; state frames are decoded there in place, and only control messages are converted to text.
+ *	Outgoing messages are appended to pooled buffers, and everything queued during a pass of the event loop is written with a single gathering write.
+ *	The server answers every state message from the client with the current frame of its {@link StateBroadcast StateBroadcast}, so each client sets the pace of its own updates.
+**/
+public class ServerConnection{
+	/**
+	 *	Maximum number of buffers waiting to be written. A client which falls further behind than this is disconnected.
+	**/
+	public static final int MAX_QUEUED_BUFFERS = 256;
+	private final GameServer gameServer;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final int clientID;
+	private final BufferPool bufferPool;
+	private ByteBuffer readBuffer;
+	private ByteBuffer tail;
+	private final ArrayDeque<ByteBuffer> writeQueue;
+	private ByteBuffer[] gather;
+	private boolean writeRequested;
+	private boolean closed;
+	private final SnapshotReceiver snapshotReceiver;
+	private int peerAck;
+	private int lastKeyframe;
+	/**
+	 *	Creates a new <code>ServerConnection</code>, and registers its channel for reading.
+	 *	@param gameServer the <code>GameServer</code> this <code>ServerConnection</code> belongs to
+	 *	@param channel the non-blocking <code>SocketChannel</code> this <code>ServerConnection</code> communicates through
+	 *	@param selector the <code>Selector</code> of the event loop
+	 *	@param clientID the client ID to assign to the <code>GameClient</code>
+	 *	@param bufferPool the pool from which read and write buffers are taken
+	**/
+	public ServerConnection(GameServer gameServer, SocketChannel channel, Selector selector, int clientID, BufferPool bufferPool) throws IOException{
+		this.gameServer = gameServer;
+		this.channel = channel;
+		this.clientID = clientID;
+		this.bufferPool = bufferPool;
+		this.readBuffer = null;
+		this.tail = null;
+		this.writeQueue = new ArrayDeque<ByteBuffer>();
+		this.gather = new ByteBuffer[16];
+		this.writeRequested = false;
+		this.closed = false;
+		this.snapshotReceiver = new SnapshotReceiver();
+		this.peerAck = -1;
+		this.lastKeyframe = -1;
+		this.key = channel.register(selector,SelectionKey.OP_READ,this);
+	}
+	/**
+	 *	Returns the client ID associated with this client-server communication line.
+	 *	@return the client ID associated with this client-server communication line
+	**/
+	public int getClientID(){ return clientID; }
+	/**
+	 *	Returns the latest frame of the {@link StateBroadcast StateBroadcast} acknowledged by the client.
+	 *	@return the sequence number of the acknowledged frame, or -1 if the client needs a keyframe
+	**/
+	public int getPeerAck(){ return peerAck; }
+	/**
+	 *	Records an acknowledgement from the client.
+	 *	@param seq the sequence number of the latest frame the client has applied, or a negative value if the client needs a keyframe
+	**/
+	public void acknowledge(int seq){
+		if(seq<0) peerAck = -1;
+		else if(seq>peerAck) peerAck = seq;
+	}
+	/**
+	 *	Returns the latest frame sent to the client as a keyframe.
+	 *	@return the sequence number of the latest keyframe, or -1 if none was sent
+	**/
+	public int getLastKeyframe(){ return lastKeyframe; }
+	/**
+	 *	Records that a frame was sent to the client as a keyframe.
+	 *	@param seq the sequence number of the frame
+	**/
+	public void setLastKeyframe(int seq){ lastKeyframe = seq; }
+	/**
+	 *	Returns the <code>SnapshotReceiver</code> which decodes the state received from the client.
+	 *	@return the <code>SnapshotReceiver</code> of this communication line
+	**/
+	public SnapshotReceiver getSnapshotReceiver(){ return snapshotReceiver; }
+	/**
+	 *	Queues a <code>String</code> to be sent to the client this <code>ServerConnection</code> is assigned to, in a {@link MessageFraming#TEXT TEXT} frame. May be called from any thread; the message is written by the event loop.
+	 *	@param message the <code>String</code> to send.
+	**/
+	public void sendString(String message){
+		sendFrame(MessageFraming.TEXT,ByteBuffer.wrap(message.getBytes(MessageFraming.CHARSET)));
+	}
+	/**
+	 *	Queues a {@link MessageFraming#STATE STATE} frame made of the contents of a buffer followed by the contents of some shared buffers. May be called from any thread; the frame is written by the event loop.
+	 *	<p> The contents of <code>head</code> are copied, so it may be reused as soon as this method returns. The shared buffers are queued as they are, without being copied, so they must not be modified afterwards. This lets a single encoded buffer be sent to many clients.
+	 *	@param head the start of the frame, between its position and its limit
+	 *	@param shared read-only buffers holding the rest of the frame
+	**/
+	public void sendState(ByteBuffer head, ByteBuffer... shared){
+		sendFrame(MessageFraming.STATE,head,shared);
+	}
+	private void sendFrame(byte type, ByteBuffer head, ByteBuffer... shared){
+		int length = 1+head.remaining();
+		for(ByteBuffer buffer : shared){
+			length += buffer.remaining();
+		}
+		synchronized(writeQueue){
+			if(closed) return;
+			queueHeader(length,type);
+			queueBytes(head);
+			for(ByteBuffer buffer : shared){
+				if(!buffer.hasRemaining()) continue;
+				sealTail();
+				writeQueue.addLast(buffer);
+			}
+			if(writeQueue.size()>MAX_QUEUED_BUFFERS){
+				System.err.println("Client "+clientID+" is not keeping up, disconnecting.");
+				closeQuietly();
+				return;
+			}
+			if(writeRequested) return;
+			writeRequested = true;
+		}
+		gameServer.requestWrite(this);
+	}
+	private void queueHeader(int length, byte type){
+		if(tail==null || tail.remaining()<MessageFraming.HEADER_BYTES+1){
+			sealTail();
+			tail = bufferPool.acquire();
+		}
+		tail.putInt(length);
+		tail.put(type);
+	}
+	private void queueBytes(ByteBuffer bytes){
+		ByteBuffer source = bytes.duplicate();
+		while(source.hasRemaining()){
+			if(tail==null || !tail.hasRemaining()){
+				sealTail();
+				tail = bufferPool.acquire();
+			}
+			int count = Math.min(tail.remaining(),source.remaining());
+			int limit = source.limit();
+			source.limit(source.position()+count);
+			tail.put(source);
+			source.limit(limit);
+		}
+	}
+	private void sealTail(){
+		if(tail==null) return;
+		tail.flip();
+		writeQueue.addLast(tail);
+		tail = null;
+	}
+	/**
+	 *	Reads whatever the client has sent, and hands every complete frame to the <code>GameServer</code>. Called by the event loop when the channel is readable.
+	 *	<p> The read buffer is taken from the pool when data arrives, and only kept while it holds the start of an incomplete frame, so idle connections hold no direct buffer.
+	 *	A frame which would not fit in a read buffer is rejected, and the connection is closed.
+	**/
+	void handleRead(){
+		try{
+			while(!closed){
+				if(readBuffer==null) readBuffer = bufferPool.acquire();
+				int count = channel.read(readBuffer);
+				if(count<0){
+					close();
+					return;
+				}
+				if(count==0) return;
+				readBuffer.flip();
+				while(!closed && readFrame(readBuffer));
+				readBuffer.compact();
+			}
+		}catch(IOException e){
+			if(!closed) System.err.println("Bad data received.");
+			close();
+		}finally{
+			if(readBuffer!=null && (closed || readBuffer.position()==0)){
+				bufferPool.release(readBuffer);
+				readBuffer = null;
+			}
+		}
+	}
+	private boolean readFrame(ByteBuffer buffer) throws IOException{
+		ByteBuffer frame = MessageFraming.readFrame(buffer,buffer.capacity()-MessageFraming.HEADER_BYTES);
+		if(frame==null) return false;
+		byte type = frame.get();
+		if(type==MessageFraming.STATE) handleState(frame);
+		else if(type==MessageFraming.TEXT) handleMessage(MessageFraming.getText(frame));
+		else throw new IOException("Unknown frame type: "+type);
+		return true;
+	}
+	private void handleState(ByteBuffer state){
+		try{
+			gameServer.processState(this,state);
+		}catch(RuntimeException e){
+			System.err.println("Bad data received.");
+		}
+		gameServer.sendState(this);
+	}
+	private void handleMessage(String message){
+		if(!message.startsWith(clientID+",")){
+			System.err.println("Bad data received.");
+			return;
+		}
+		try{
+			gameServer.process(message);
+		}catch(RuntimeException e){
+			System.err.println("Bad data received.");
+		}
+	}
+	/**
+	 *	Writes as much of the queued output as the socket accepts, with a single gathering write, and keeps the channel registered for writing until the queue is empty. Called by the event loop.
+	**/
+	void flush(){
+		try{
+			synchronized(writeQueue){
+				writeRequested = false;
+				if(closed) return;
+				sealTail();
+				if(!writeQueue.isEmpty()){
+					if(gather.length<writeQueue.size()) gather = new ByteBuffer[Math.max(writeQueue.size(),gather.length*2)];
+					int count = 0;
+					for(ByteBuffer buffer : writeQueue){
+						gather[count++] = buffer;
+					}
+					channel.write(gather,0,count);
+					Arrays.fill(gather,0,count,null);
+					while(!writeQueue.isEmpty() && !writeQueue.peekFirst().hasRemaining()){
+						bufferPool.release(writeQueue.pollFirst());
+					}
+				}
+				if(writeQueue.isEmpty()) key.interestOps(SelectionKey.OP_READ);
+				else key.interestOps(SelectionKey.OP_READ|SelectionKey.OP_WRITE);
+			}
+		}catch(IOException e){
+			close();
+		}catch(CancelledKeyException e){
+			close();
+		}
+	}
+	/**
+	 *	Closes this communication line and returns its buffers to the pool.
+	**/
+	public void close(){
+		synchronized(writeQueue){
+			closeQuietly();
+		}
+	}
+	private void closeQuietly(){
+		if(closed) return;
+		closed = true;
+		key.cancel();
+		try{
+			channel.close();
+		}catch(IOException e){
+			e.printStackTrace();
+		}
+		sealTail();
+		for(ByteBuffer buffer : writeQueue){
+			bufferPool.release(buffer);
+		}
+		writeQueue.clear();
+		System.err.println("Connection to client "+clientID+" closed.");
+	}
+	/**
+	 *	Checks if this communication line has been closed.
+	 *	@return <code>true</code> if this communication line has been closed, and <code>false</code> otherwise
+	**/
+	public boolean isClosed(){
+		synchronized(writeQueue){
+			return closed;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+import java.nio.*;
+/**
+ *	Decodes the snapshots written by a {@link SnapshotSender SnapshotSender}, and applies them to a {@link GameInstance GameInstance}.
+ *	<p> Recent snapshots are kept so that a delta can be decoded against whichever of them its sender chose as a base.
+ *	If the base of a delta is missing, or a message cannot be decoded, the receiver asks for a resync by acknowledging -1 until the next keyframe arrives.
+ *	Snapshots older than the latest one applied are ignored.
+ *	<p> Player IDs read from a message are checked before anything is applied: they must be below {@link GameServer#MAX_PLAYERS GameServer.MAX_PLAYERS}, and a snapshot from a client must hold exactly that client's own <code>Playfield</code>.
+**/
+public class SnapshotReceiver{
+	private final GameSnapshot[] history;
+	private int lastSeq;
+	private boolean resync;
+	/**
+	 *	Creates a new <code>SnapshotReceiver</code>, which has not received anything yet.
+	**/
+	public SnapshotReceiver(){
+		this.history = new GameSnapshot[SnapshotSender.HISTORY];
+		for(int k = 0; k<history.length; k++){
+			history[k] = new GameSnapshot();
+		}
+		this.lastSeq = -1;
+		this.resync = false;
+	}
+	/**
+	 *	Returns the acknowledgement to send back to the sender.
+	 *	@return the sequence number of the latest snapshot applied, or -1 if a keyframe is needed
+	**/
+	public synchronized int getAck(){
+		return resync ? -1 : lastSeq;
+	}
+	/**
+	 *	Decodes a snapshot and applies it to a <code>GameInstance</code>.
+	 *	@param message the bytes written by {@link SnapshotSender#encode(GameInstance,int[],ByteBuffer) SnapshotSender.encode} or assembled by {@link StateBroadcast StateBroadcast}, between its position and its limit, which are read in place
+	 *	@param target the <code>GameInstance</code> to update
+	 *	@param playerIDToOmit if this parameter is not <code>null</code>, data for this player ID will not be applied
+	 *	@param applyTime <code>true</code> to also set the game time of <code>target</code>
+	 *	@throws IllegalArgumentException if the message was written with another version, or is not valid
+	 *	@throws BufferUnderflowException if the message is truncated
+	**/
+	public synchronized void receive(ByteBuffer message, GameInstance target, Integer playerIDToOmit, boolean applyTime){
+		receive(message,target,playerIDToOmit,null,applyTime);
+	}
+	/**
+	 *	Decodes a snapshot sent by a client, which must hold the state of the client's own <code>Playfield</code> and nothing else, and applies it to a <code>GameInstance</code>.
+	 *	No <code>Playfield</code> is created, and the game time is not changed.
+	 *	@param message the bytes written by {@link SnapshotSender#encode(GameInstance,int[],ByteBuffer) SnapshotSender.encode}, between its position and its limit, which are read in place
+	 *	@param target the <code>GameInstance</code> to update, which must already hold the client's <code>Playfield</code>
+	 *	@param playerID the player ID of the client
+	 *	@throws IllegalArgumentException if the message holds any other player, or is not valid
+	 *	@throws BufferUnderflowException if the message is truncated
+	**/
+	public synchronized void receiveFrom(ByteBuffer message, GameInstance target, int playerID){
+		receive(message,target,null,playerID,false);
+	}
+	private void receive(ByteBuffer buffer, GameInstance target, Integer playerIDToOmit, Integer requiredPlayerID, boolean applyTime){
+		try{
+			StateCodec.checkVersion(buffer);
+			int kind = buffer.get();
+			int seq = StateCodec.getVarint(buffer);
+			if(seq<=lastSeq && !(kind==SnapshotSender.KEYFRAME && resync)) return;
+			GameSnapshot base = null;
+			if(kind==SnapshotSender.DELTA){
+				int distance = StateCodec.getVarint(buffer);
+				int baseSeq = seq-distance;
+				if(distance<=0 || distance>=history.length || baseSeq<0 || history[baseSeq%history.length].getSeq()!=baseSeq){
+					resync = true;
+					return;
+				}
+				base = history[baseSeq%history.length];
+			}else if(kind!=SnapshotSender.KEYFRAME){
+				throw new IllegalArgumentException("Unknown snapshot kind: "+kind);
+			}
+			GameSnapshot snapshot = history[seq%history.length];
+			snapshot.seq = -1;
+			snapshot.gameTime = StateCodec.getVarint(buffer);
+			int count = StateCodec.getVarint(buffer);
+			if(count<0 || count>GameServer.MAX_PLAYERS || count>buffer.remaining() || (requiredPlayerID!=null && count!=1)) throw new IllegalArgumentException("Invalid player count: "+count);
+			snapshot.setCount(count);
+			for(int k = 0; k<count; k++){
+				int playerID = StateCodec.getVarint(buffer);
+				if(playerID<0 || playerID>=GameServer.MAX_PLAYERS || (requiredPlayerID!=null && playerID!=requiredPlayerID)){
+					throw new IllegalArgumentException("Unexpected player ID: "+playerID);
+				}
+				snapshot.playerIDs[k] = playerID;
+				snapshot.fields[k].readDelta(buffer,base==null ? null : base.find(playerID));
+			}
+			if(buffer.hasRemaining()) throw new IllegalArgumentException("Unexpected data after "+count+" players.");
+			snapshot.seq = seq;
+			lastSeq = seq;
+			resync = false;
+			if(applyTime) target.setTime(snapshot.gameTime);
+			for(int k = 0; k<count; k++){
+				if(playerIDToOmit!=null && playerIDToOmit==snapshot.playerIDs[k]) continue;
+				Playfield playfield = requiredPlayerID!=null ? target.findPlayfield(snapshot.playerIDs[k]) : target.getPlayfield(snapshot.playerIDs[k]);
+				if(playfield==null) throw new IllegalArgumentException("Unknown player ID: "+snapshot.playerIDs[k]);
+				playfield.applySnapshot(snapshot.fields[k]);
+			}
+		}catch(RuntimeException e){
+			resync = true;
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+import java.nio.*;
+/**
+ *	Encodes the state of a {@link GameInstance GameInstance} for one peer, as a stream of numbered snapshots.
+ *	<p> Each snapshot is written as a <i>delta</i> against the latest snapshot the peer has acknowledged, so only the fields which changed since then are sent (see {@link PlayfieldSnapshot PlayfieldSnapshot}).
+ *	A <i>keyframe</i>, holding the full state, is sent instead when nothing has been acknowledged yet, when the peer asks for a resync, when the acknowledged snapshot is no longer in the history, and every {@link #KEYFRAME_INTERVAL KEYFRAME_INTERVAL} snapshots.
+ *	<p> A snapshot is written as binary, to be sent in a {@link MessageFraming#STATE STATE} frame.
+ *	It starts with a header: the version of {@link StateCodec StateCodec}, a kind byte, the sequence number of the snapshot, for a delta the distance back to its base snapshot, the game time, and the number of players.
+ *	Then comes the state of every player in turn: its ID followed by its delta or full state. Since players are encoded one after the other, a message for many peers can be assembled from shared byte ranges (see {@link StateBroadcast StateBroadcast}).
+**/
+public class SnapshotSender{
+	/**
+	 *	Number of sent snapshots kept as possible bases for deltas.
+	**/
+	public static final int HISTORY = 32;
+	/**
+	 *	Maximum number of snapshots sent between two keyframes.
+	**/
+	public static final int KEYFRAME_INTERVAL = 100;
+	/**
+	 *	Largest size of the header of a snapshot, in bytes.
+	**/
+	public static final int HEADER_BYTES = 2+4*5;
+	static final int KEYFRAME = 0;
+	static final int DELTA = 1;
+	private final GameSnapshot[] history;
+	private int nextSeq;
+	private int ackedSeq;
+	private int lastKeyframe;
+	/**
+	 *	Creates a new <code>SnapshotSender</code>. Its first snapshot is a keyframe.
+	**/
+	public SnapshotSender(){
+		this.history = new GameSnapshot[HISTORY];
+		for(int k = 0; k<HISTORY; k++){
+			history[k] = new GameSnapshot();
+		}
+		this.nextSeq = 0;
+		this.ackedSeq = -1;
+		this.lastKeyframe = -1;
+	}
+	/**
+	 *	Records an acknowledgement from the peer.
+	 *	@param seq the sequence number of the latest snapshot the peer has applied, or a negative value if the peer needs a keyframe
+	**/
+	public synchronized void acknowledge(int seq){
+		if(seq<0) ackedSeq = -1;
+		else if(seq>ackedSeq && seq<nextSeq) ackedSeq = seq;
+	}
+	/**
+	 *	Encodes the next snapshot of a <code>GameInstance</code>.
+	 *	@param instance the <code>GameInstance</code> to encode
+	 *	@param playerIDs the player IDs of the <code>Playfield</code>s to send
+	 *	@param buffer the buffer to write the snapshot to, from its position, with room for {@link #HEADER_BYTES HEADER_BYTES} bytes and {@link StateCodec#MAX_PLAYFIELD_BYTES StateCodec.MAX_PLAYFIELD_BYTES} bytes for each player
+	**/
+	public synchronized void encode(GameInstance instance, int[] playerIDs, ByteBuffer buffer){
+		int seq = nextSeq++;
+		GameSnapshot snapshot = history[seq%HISTORY];
+		snapshot.capture(instance,playerIDs,seq);
+		GameSnapshot base = null;
+		if(ackedSeq>=0 && seq-ackedSeq<HISTORY && seq-lastKeyframe<KEYFRAME_INTERVAL){
+			base = history[ackedSeq%HISTORY];
+			if(base.getSeq()!=ackedSeq) base = null;
+		}
+		if(base==null) lastKeyframe = seq;
+		putHeader(buffer,seq,base==null ? -1 : base.getSeq(),snapshot.gameTime,snapshot.count);
+		for(int k = 0; k<snapshot.count; k++){
+			putPlayer(buffer,snapshot.playerIDs[k],snapshot.fields[k],base==null ? null : base.find(snapshot.playerIDs[k]));
+		}
+	}
+	/**
+	 *	Writes the header of a snapshot.
+	 *	@param buffer the buffer to write to
+	 *	@param seq the sequence number of the snapshot
+	 *	@param baseSeq the sequence number of the base of a delta, or -1 for a keyframe
+	 *	@param gameTime the game time
+	 *	@param count the number of players which follow the header
+	**/
+	static void putHeader(ByteBuffer buffer, int seq, int baseSeq, int gameTime, int count){
+		StateCodec.putVersion(buffer);
+		if(baseSeq<0){
+			buffer.put((byte)KEYFRAME);
+			StateCodec.putVarint(buffer,seq);
+		}else{
+			buffer.put((byte)DELTA);
+			StateCodec.putVarint(buffer,seq);
+			StateCodec.putVarint(buffer,seq-baseSeq);
+		}
+		StateCodec.putVarint(buffer,gameTime);
+		StateCodec.putVarint(buffer,count);
+	}
+	/**
+	 *	Writes the state of one player of a snapshot.
+	 *	@param buffer the buffer to write to
+	 *	@param playerID the player ID
+	 *	@param field the state of the player's <code>Playfield</code>
+	 *	@param base the state in the base snapshot, or <code>null</code> to write the full state
+	**/
+	static void putPlayer(ByteBuffer buffer, int playerID, PlayfieldSnapshot field, PlayfieldSnapshot base){
+		StateCodec.putVarint(buffer,playerID);
+		field.writeDelta(buffer,base);
+	}
+}
@@ -0,0 +1,137 @@
+import java.nio.*;
+import java.util.*;
+/**
+ *	Encodes the state of a {@link GameInstance GameInstance} once per server tick, for every connected client at once.
+ *	<p> Each tick, the state of every player is captured into a shared {@link GameSnapshot GameSnapshot} and a new frame is started.
+ *	A frame holds <i>regions</i>, immutable byte buffers with the encoded state of every player, either in full or as a delta against an earlier frame.
+ *	Each region is encoded the first time a client needs it, and then shared by every client which needs the same one. In the common case, where every client has received the previous frame, a single delta region serves all of them.
+ *	<p> The {@link MessageFraming#STATE STATE} frame for one client is made of a short header, encoded for that client, followed by slices of a region which leave out the client's own <code>Playfield</code>. The header is the acknowledgement of the latest state received from the client, as a signed varint, and the header of the snapshot. See {@link SnapshotSender SnapshotSender} for the format.
+**/
+public class StateBroadcast{
+	private final GameSnapshot[] history;
+	private final long tickNanos;
+	private final ByteBuffer header;
+	private ByteBuffer scratch;
+	private Frame latest;
+	private long latestTime;
+	private int nextSeq;
+	/**
+	 *	The encoded state of all players of one frame, against one base. The state of the <code>k</code>th player starts at <code>starts[k]</code>.
+	**/
+	private static class Region{
+		final ByteBuffer bytes;
+		final int[] playerIDs;
+		final int[] starts;
+		final int baseSeq;
+		Region(ByteBuffer bytes, int[] playerIDs, int[] starts, int baseSeq){
+			this.bytes = bytes;
+			this.playerIDs = playerIDs;
+			this.starts = starts;
+			this.baseSeq = baseSeq;
+		}
+		ByteBuffer slice(int from, int to){
+			ByteBuffer slice = bytes.duplicate();
+			slice.position(from);
+			slice.limit(to);
+			return slice.slice();
+		}
+	}
+	/**
+	 *	The state of a <code>GameInstance</code> at one server tick.
+	**/
+	private static class Frame{
+		private final int seq;
+		private final int gameTime;
+		private final HashMap<Integer, Region> regions;
+		Frame(int seq, int gameTime){
+			this.seq = seq;
+			this.gameTime = gameTime;
+			this.regions = new HashMap<Integer, Region>();
+		}
+	}
+	/**
+	 *	Creates a new <code>StateBroadcast</code>.
+	 *	@param tickNanos the minimum time between two frames, in nanoseconds
+	**/
+	public StateBroadcast(long tickNanos){
+		this.history = new GameSnapshot[SnapshotSender.HISTORY];
+		for(int k = 0; k<history.length; k++){
+			history[k] = new GameSnapshot();
+		}
+		this.tickNanos = tickNanos;
+		this.header = ByteBuffer.allocate(5+SnapshotSender.HEADER_BYTES);
+		this.scratch = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		this.latest = null;
+		this.nextSeq = 0;
+	}
+	private Frame getFrame(GameInstance instance){
+		long now = System.nanoTime();
+		if(latest==null || now-latestTime>=tickNanos){
+			int seq = nextSeq++;
+			int[] playerIDs = new int[instance.getNumberOfPlayers()];
+			for(int k = 0; k<playerIDs.length; k++){
+				playerIDs[k] = k;
+			}
+			GameSnapshot snapshot = history[seq%history.length];
+			snapshot.capture(instance,playerIDs,seq);
+			latest = new Frame(seq,snapshot.gameTime);
+			latestTime = now;
+		}
+		return latest;
+	}
+	/**
+	 *	Queues the current frame on a client's connection. The frame is sent as a delta against the latest frame the client has acknowledged if that frame is still in the history, and as a keyframe otherwise.
+	 *	@param instance the <code>GameInstance</code> to capture if a new frame is due
+	 *	@param connection the connection of the client, whose own <code>Playfield</code> is left out
+	 *	@param ackedSeq the latest frame acknowledged by the client, sent back along with the message
+	**/
+	public synchronized void sendTo(GameInstance instance, ServerConnection connection, int ackedSeq){
+		Frame frame = getFrame(instance);
+		int baseSeq = chooseBase(frame,connection.getPeerAck(),connection.getLastKeyframe());
+		if(baseSeq<0) connection.setLastKeyframe(frame.seq);
+		Region region = getRegion(frame,baseSeq);
+		int count = region.playerIDs.length;
+		int omitted = -1;
+		for(int k = 0; k<count; k++){
+			if(region.playerIDs[k]==connection.getClientID()) omitted = k;
+		}
+		header.clear();
+		StateCodec.putSignedVarint(header,ackedSeq);
+		SnapshotSender.putHeader(header,frame.seq,baseSeq,frame.gameTime,omitted<0 ? count : count-1);
+		header.flip();
+		if(omitted<0){
+			connection.sendState(header,region.slice(0,region.starts[count]));
+		}else{
+			connection.sendState(header,region.slice(0,region.starts[omitted]),region.slice(region.starts[omitted+1],region.starts[count]));
+		}
+	}
+	private int chooseBase(Frame frame, int peerAck, int lastKeyframe){
+		if(peerAck<0 || lastKeyframe<0 || frame.seq-lastKeyframe>=SnapshotSender.KEYFRAME_INTERVAL) return -1;
+		int baseSeq = Math.min(peerAck,frame.seq-1);
+		if(baseSeq<0 || frame.seq-baseSeq>=history.length) return -1;
+		if(history[baseSeq%history.length].getSeq()!=baseSeq || history[frame.seq%history.length].getSeq()!=frame.seq) return -1;
+		return baseSeq;
+	}
+	private Region getRegion(Frame frame, int baseSeq){
+		Region region = frame.regions.get(baseSeq);
+		if(region!=null) return region;
+		GameSnapshot snapshot = history[frame.seq%history.length];
+		GameSnapshot base = baseSeq<0 ? null : history[baseSeq%history.length];
+		if(snapshot.getSeq()!=frame.seq || (base!=null && base.getSeq()!=baseSeq)){
+			throw new IllegalStateException("Frame "+frame.seq+" is no longer in the history");
+		}
+		int count = snapshot.count;
+		int[] playerIDs = Arrays.copyOf(snapshot.playerIDs,count);
+		int[] starts = new int[count+1];
+		if(scratch.capacity()<count*StateCodec.MAX_PLAYFIELD_BYTES) scratch = ByteBuffer.allocate(count*StateCodec.MAX_PLAYFIELD_BYTES);
+		scratch.clear();
+		for(int k = 0; k<count; k++){
+			starts[k] = scratch.position();
+			SnapshotSender.putPlayer(scratch,playerIDs[k],snapshot.fields[k],base==null ? null : base.find(playerIDs[k]));
+		}
+		starts[count] = scratch.position();
+		region = new Region(ByteBuffer.wrap(Arrays.copyOf(scratch.array(),starts[count])).asReadOnlyBuffer(),playerIDs,starts,baseSeq);
+		frame.regions.put(baseSeq,region);
+		return region;
+	}
+}
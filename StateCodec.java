@@ -0,0 +1,114 @@
+import java.nio.*;
+import java.nio.charset.*;
+/**
+ *	Helpers for the binary encoding of game state sent over the network.
+ *	<p> {@link Playfield Playfield}, {@link Playfield.Piece Piece} and {@link GameInstance GameInstance} write and read themselves through these helpers, directly into a <code>ByteBuffer</code>.
+ *	Unsigned integers are written as variable-length integers of 7 bits per byte, and signed integers are zigzag-encoded first, so that small values take a single byte.
+ *	Strings are written as their length followed by their UTF-8 bytes.
+ *	<p> Every encoded {@link GameInstance GameInstance} starts with {@link #VERSION VERSION}. State written with another version is rejected instead of being misread.
+ *	<p> Encoded state is carried as it is in the {@link MessageFraming#STATE STATE} frames exchanged by server and clients, and read straight from the buffer the frame was received into.
+**/
+public final class StateCodec{
+	/**
+	 *	The version of the encoding.
+	**/
+	public static final int VERSION = 3;
+	/**
+	 *	Largest number of UTF-8 bytes in a string. Enough for a player name of {@link Playfield#MAX_NAME_LENGTH Playfield.MAX_NAME_LENGTH} characters.
+	**/
+	public static final int MAX_STRING_BYTES = 32;
+	/**
+	 *	Capacity sufficient to encode a single {@link Playfield Playfield}, in full or as a delta: the longest player name, and 256 bytes which bound every other field.
+	**/
+	public static final int MAX_PLAYFIELD_BYTES = 5+MAX_STRING_BYTES+256;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private StateCodec(){}
+
+	/**
+	 *	Writes an unsigned variable-length integer.
+	 *	@param buffer the buffer to write to
+	 *	@param value the value to write, treated as unsigned
+	**/
+	public static void putVarint(ByteBuffer buffer, int value){
+		while((value & ~0x7F)!=0){
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+	/**
+	 *	Reads an unsigned variable-length integer written by {@link #putVarint(ByteBuffer,int) putVarint}.
+	 *	@param buffer the buffer to read from
+	 *	@return the value read
+	 *	@throws IllegalArgumentException if the integer is longer than 5 bytes
+	**/
+	public static int getVarint(ByteBuffer buffer){
+		int value = 0;
+		for(int shift = 0; shift<35; shift += 7){
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80)==0) return value;
+		}
+		throw new IllegalArgumentException("Malformed varint.");
+	}
+	/**
+	 *	Writes a signed variable-length integer, zigzag-encoded.
+	 *	@param buffer the buffer to write to
+	 *	@param value the value to write
+	**/
+	public static void putSignedVarint(ByteBuffer buffer, int value){
+		putVarint(buffer,(value<<1) ^ (value>>31));
+	}
+	/**
+	 *	Reads a signed variable-length integer written by {@link #putSignedVarint(ByteBuffer,int) putSignedVarint}.
+	 *	@param buffer the buffer to read from
+	 *	@return the value read
+	**/
+	public static int getSignedVarint(ByteBuffer buffer){
+		int raw = getVarint(buffer);
+		return (raw>>>1) ^ -(raw&1);
+	}
+	/**
+	 *	Writes a string as its length followed by its UTF-8 bytes.
+	 *	@param buffer the buffer to write to
+	 *	@param value the string to write
+	 *	@throws IllegalArgumentException if <code>value</code> is longer than {@link #MAX_STRING_BYTES MAX_STRING_BYTES} bytes
+	**/
+	public static void putString(ByteBuffer buffer, String value){
+		byte[] bytes = value.getBytes(UTF8);
+		if(bytes.length>MAX_STRING_BYTES) throw new IllegalArgumentException("String too long: "+bytes.length+" bytes");
+		putVarint(buffer,bytes.length);
+		buffer.put(bytes);
+	}
+	/**
+	 *	Reads a string written by {@link #putString(ByteBuffer,String) putString}.
+	 *	@param buffer the buffer to read from
+	 *	@return the string read
+	 *	@throws IllegalArgumentException if the string is longer than {@link #MAX_STRING_BYTES MAX_STRING_BYTES} bytes
+	**/
+	public static String getString(ByteBuffer buffer){
+		int length = getVarint(buffer);
+		if(length<0 || length>MAX_STRING_BYTES) throw new IllegalArgumentException("Invalid string length: "+length);
+		if(length>buffer.remaining()) throw new BufferUnderflowException();
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes,UTF8);
+	}
+	/**
+	 *	Writes the version of the encoding.
+	 *	@param buffer the buffer to write to
+	**/
+	public static void putVersion(ByteBuffer buffer){
+		buffer.put((byte)VERSION);
+	}
+	/**
+	 *	Reads and checks the version of the encoding.
+	 *	@param buffer the buffer to read from
+	 *	@throws IllegalArgumentException if the state was written with another version
+	**/
+	public static void checkVersion(ByteBuffer buffer){
+		int version = buffer.get() & 0xFF;
+		if(version!=VERSION) throw new IllegalArgumentException("Unsupported state version: "+version);
+	}
+}
@@ -0,0 +1,119 @@
+import java.awt.*;
+import java.awt.image.*;
+/**
+ *	A single line of text which is rasterised once and then copied to the screen.
+ *	<p> The text is only rendered again when it or its font changes, so unchanged labels cost a single <code>drawImage</code> per frame.
+**/
+public class TextLayer{
+	private String text;
+	private Font font;
+	private BufferedImage image;
+	private int textWidth;
+	private int padding;
+	private int ascent;
+	/**
+	 *	Creates a new, empty <code>TextLayer</code>.
+	**/
+	public TextLayer(){
+		this.text = null;
+		this.font = null;
+		this.image = null;
+	}
+	/**
+	 *	Sets the text and font of this layer. If either differs from the current one, the layer is rasterised again the next time it is drawn.
+	 *	@param text the text to display
+	 *	@param font the font with which to display the text
+	**/
+	public void setText(String text, Font font){
+		if(text.equals(this.text) && font==this.font) return;
+		this.text = text;
+		this.font = font;
+		this.image = null;
+	}
+	/**
+	 *	Checks if this layer currently holds a given text and font.
+	 *	@param text the text to compare
+	 *	@param font the font to compare
+	 *	@return <code>true</code> if this layer displays <code>text</code> with <code>font</code>, and <code>false</code> otherwise
+	**/
+	public boolean holds(String text, Font font){
+		return font==this.font && text.equals(this.text);
+	}
+	private void render(Graphics2D context){
+		GraphicsConfiguration config = context.getDeviceConfiguration();
+		BufferedImage measure = config.createCompatibleImage(1,1,Transparency.TRANSLUCENT);
+		Graphics2D g2d = measure.createGraphics();
+		g2d.setRenderingHints(context.getRenderingHints());
+		g2d.setFont(font);
+		FontMetrics metrics = g2d.getFontMetrics();
+		g2d.dispose();
+		textWidth = metrics.stringWidth(text);
+		ascent = metrics.getMaxAscent();
+		padding = Math.max(2,font.getSize()/4);
+		image = config.createCompatibleImage(
+			textWidth+2*padding,
+			ascent+metrics.getMaxDescent()+2*padding,
+			Transparency.TRANSLUCENT
+		);
+		g2d = image.createGraphics();
+		g2d.setRenderingHints(context.getRenderingHints());
+		g2d.setFont(font);
+		g2d.setPaint(context.getPaint());
+		g2d.drawString(text,padding,padding+ascent);
+		g2d.dispose();
+	}
+	/**
+	 *	Draws this layer, horizontally centered in a given width.
+	 *	<p> The text is rasterised with the paint and rendering hints of <code>context</code> the first time it is drawn.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the text
+	 *	@param width the width in which to center the text, starting at x = 0
+	 *	@param baseline the y coordinate of the baseline of the text
+	**/
+	public void drawCentered(Graphics2D context, int width, int baseline){
+		draw(context,(width-textWidth(context))/2,baseline);
+	}
+	/**
+	 *	Draws this layer with the start of its baseline at a given point.
+	 *	<p> The text is rasterised with the paint and rendering hints of <code>context</code> the first time it is drawn.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the text
+	 *	@param x the x coordinate of the start of the text
+	 *	@param baseline the y coordinate of the baseline of the text
+	**/
+	public void draw(Graphics2D context, int x, int baseline){
+		if(text==null || font==null) return;
+		if(image==null) render(context);
+		context.drawImage(image,x-padding,baseline-ascent-padding,null);
+	}
+	/**
+	 *	Computes the area which {@link #drawCentered(Graphics2D,int,int) drawCentered} covers with the same arguments.
+	 *	@param context the <code>Graphics2D</code> context with which the text will be drawn
+	 *	@param width the width in which to center the text, starting at x = 0
+	 *	@param baseline the y coordinate of the baseline of the text
+	 *	@param result the <code>Rectangle</code> in which to store the area, which is empty if there is no text
+	 *	@return <code>result</code>
+	**/
+	public Rectangle getCenteredBounds(Graphics2D context, int width, int baseline, Rectangle result){
+		return getBounds(context,(width-textWidth(context))/2,baseline,result);
+	}
+	/**
+	 *	Computes the area which {@link #draw(Graphics2D,int,int) draw} covers with the same arguments.
+	 *	@param context the <code>Graphics2D</code> context with which the text will be drawn
+	 *	@param x the x coordinate of the start of the text
+	 *	@param baseline the y coordinate of the baseline of the text
+	 *	@param result the <code>Rectangle</code> in which to store the area, which is empty if there is no text
+	 *	@return <code>result</code>
+	**/
+	public Rectangle getBounds(Graphics2D context, int x, int baseline, Rectangle result){
+		if(text==null || font==null){
+			result.setBounds(0,0,0,0);
+			return result;
+		}
+		if(image==null) render(context);
+		result.setBounds(x-padding,baseline-ascent-padding,image.getWidth(),image.getHeight());
+		return result;
+	}
+	private int textWidth(Graphics2D context){
+		if(text!=null && font!=null && image==null) render(context);
+		return textWidth;
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ *	The colors a block of a {@link Playfield Playfield} can have. <code>NONE</code> is an empty cell.
+**/
+enum Tile {
+	NONE,
+	RED,
+	BLUE,
+	YELLOW,
+	GREEN,
+	PURPLE;
+	public static int getTileCode(Tile tile){
+		switch(tile){
+			case RED: 		return 1;
+			case BLUE: 		return 2;
+			case YELLOW: 	return 3;
+			case GREEN: 	return 4;
+			case PURPLE: 	return 5;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,137 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+/**
+ *	Draws single {@link Tile Tile}s. Holds the colors of each tile and looks up the shared block texture, so that {@link Tile Tile} itself carries no drawing resources.
+ *	<p> Tiles are drawn from a cache of pre-rendered sprites, so a <code>TileRenderer</code> should only be used from a single thread.
+**/
+public class TileRenderer{
+	private static final Color[][] TILE_COLORS = new Color[Tile.values().length][];
+	static{
+		TILE_COLORS[Tile.NONE.ordinal()]	= new Color[]{new Color(0,0,0,0),	new Color(0,0,0,0)};
+		TILE_COLORS[Tile.RED.ordinal()]		= new Color[]{new Color(120, 0, 0),	new Color(210, 24, 10)};
+		TILE_COLORS[Tile.BLUE.ordinal()]	= new Color[]{new Color(49, 97, 255),new Color(0, 195, 255)};
+		TILE_COLORS[Tile.YELLOW.ordinal()]	= new Color[]{new Color(191, 191, 0),new Color(255, 255, 50)};
+		TILE_COLORS[Tile.GREEN.ordinal()]	= new Color[]{new Color(0, 145, 0),	new Color(0, 247, 37)};
+		TILE_COLORS[Tile.PURPLE.ordinal()]	= new Color[]{new Color(115, 0, 186),new Color(163, 55, 230)};
+	}
+	private static final int ALPHA_BUCKETS = 64;
+	private final String STR_BLOCK_IMAGE_FILENAME = "FinalBlock.png";
+	private final HashMap<Integer, BufferedImage[]> sprites;
+	private final Color[] flatColors;
+	/**
+	 *	Creates a new <code>TileRenderer</code>. The block texture is shared through {@link Assets Assets}.
+	**/
+	public TileRenderer(){
+		this.sprites = new HashMap<Integer, BufferedImage[]>();
+		this.flatColors = new Color[TILE_COLORS.length*ALPHA_BUCKETS];
+	}
+	/**
+	 *	Returns the gradient used to color a tile.
+	 *	@param tile the tile to color
+	 *	@param cell the area covered by the tile
+	 *	@param alpha the alpha value (0-255) of the tile
+	 *	@return the <code>Paint</code> with which to fill the tile
+	**/
+	public Paint getPaint(Tile tile, Rectangle2D.Double cell, int alpha){
+		Color[] colors = TILE_COLORS[tile.ordinal()];
+		if(tile==Tile.NONE) return colors[0];
+		Color color1 = new Color(
+			colors[0].getRed(),
+			colors[0].getGreen(),
+			colors[0].getBlue(),
+			alpha
+		);
+		Color color2 = new Color(
+			colors[1].getRed(),
+			colors[1].getGreen(),
+			colors[1].getBlue(),
+			alpha
+		);
+		return new GradientPaint(
+			(float)(cell.x+cell.width/2),
+			(float)(cell.y+cell.height),
+			color1,
+			(float)(cell.x+cell.width/2),
+			(float)(cell.y),
+			color2
+		);
+	}
+	/**
+	 *	Draws a tile. Nothing is drawn for <code>Tile.NONE</code>.
+	 *	<p> Each combination of tile, size and alpha is rendered once into a sprite, and then copied with a single <code>drawImage</code>.
+	 *	Alpha values are grouped in buckets of 4, which covers the resting, ghost and clearing alphas exactly.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the tile
+	 *	@param tile the tile to draw
+	 *	@param x the x coordinate of the upper-left corner of the tile
+	 *	@param y the y coordinate of the upper-left corner of the tile
+	 *	@param tileSize the length in pixels of each side of the tile
+	 *	@param alpha the alpha value (0-255) with which to draw the tile
+	**/
+	public void draw(Graphics2D context, Tile tile, int x, int y, int tileSize, int alpha){
+		if(tile!=Tile.NONE){
+			context.drawImage(getSprite(context,tile,tileSize,alpha),x,y,null);
+		}
+	}
+	/**
+	 *	Draws a tile as a single flat-colored square, without the block texture or gradient. Nothing is drawn for <code>Tile.NONE</code>.
+	 *	<p> This is meant for tiles so small that their texture cannot be made out. The color is the average of the gradient, darkened like the sprite of the same alpha.
+	 *	@param context the <code>Graphics2D</code> context with which to draw the tile
+	 *	@param tile the tile to draw
+	 *	@param x the x coordinate of the upper-left corner of the tile
+	 *	@param y the y coordinate of the upper-left corner of the tile
+	 *	@param tileSize the length in pixels of each side of the tile
+	 *	@param alpha the alpha value (0-255) with which to draw the tile
+	**/
+	public void drawFlat(Graphics2D context, Tile tile, int x, int y, int tileSize, int alpha){
+		if(tile==Tile.NONE) return;
+		int bucket = Math.max(0,Math.min(255,alpha))>>>2;
+		int index = tile.ordinal()*ALPHA_BUCKETS+bucket;
+		Color color = flatColors[index];
+		if(color==null){
+			Color[] colors = TILE_COLORS[tile.ordinal()];
+			int bucketAlpha = bucket<<2;
+			double shade = Math.min(1.0,bucketAlpha*1.4/255);
+			color = new Color(
+				(int)((colors[0].getRed()+colors[1].getRed())/2*shade),
+				(int)((colors[0].getGreen()+colors[1].getGreen())/2*shade),
+				(int)((colors[0].getBlue()+colors[1].getBlue())/2*shade),
+				bucketAlpha
+			);
+			flatColors[index] = color;
+		}
+		context.setColor(color);
+		context.fillRect(x,y,tileSize,tileSize);
+	}
+	private BufferedImage getSprite(Graphics2D context, Tile tile, int tileSize, int alpha){
+		BufferedImage[] sized = sprites.get(tileSize);
+		if(sized==null){
+			sized = new BufferedImage[TILE_COLORS.length*ALPHA_BUCKETS];
+			sprites.put(tileSize,sized);
+		}
+		int bucket = Math.max(0,Math.min(255,alpha))>>>2;
+		int index = tile.ordinal()*ALPHA_BUCKETS+bucket;
+		BufferedImage sprite = sized[index];
+		if(sprite==null){
+			sprite = renderSprite(context.getDeviceConfiguration(),tile,tileSize,bucket<<2);
+			sized[index] = sprite;
+		}
+		return sprite;
+	}
+	private BufferedImage renderSprite(GraphicsConfiguration config, Tile tile, int tileSize, int alpha){
+		BufferedImage sprite = config.createCompatibleImage(tileSize,tileSize,Transparency.TRANSLUCENT);
+		Graphics2D g2d = sprite.createGraphics();
+		BufferedImage block = Assets.getScaledImage(STR_BLOCK_IMAGE_FILENAME,tileSize/64.0);
+		Rectangle2D.Double cell = new Rectangle2D.Double(0,0,tileSize,tileSize);
+		if(block != null){
+			g2d.drawImage(block, 0, 0, null);
+		}
+		g2d.setPaint(getPaint(tile,cell,alpha));
+		g2d.fill(cell);
+		g2d.setPaint(new Color(0,0,0,(int)Math.max(0,(255-alpha*1.4))));
+		g2d.fill(cell);
+		g2d.dispose();
+		return sprite;
+	}
+}
@@ -0,0 +1,17 @@
+/**
+ *	Runs every test, and stops at the first failure.
+ *	<p> The tests are compiled together with the game, from the root of the project:
+ *	<pre>
+ *	javac -d build *.java test/*.java
+ *	java -cp build AllTests
+ *	</pre>
+**/
+public class AllTests{
+	public static void main(String[] args) throws Exception{
+		StateCodecTest.main(args);
+		PlayfieldSnapshotTest.main(args);
+		MessageFramingTest.main(args);
+		ReplayRunnerTest.main(args);
+		System.out.println("All tests passed.");
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ *	Assertions shared by the tests. The tests are plain classes with a <code>main</code> method, so that they run with nothing but the JDK; a failed check throws an <code>AssertionError</code>.
+**/
+public final class Check{
+	private Check(){}
+	/**
+	 *	Checks that a condition holds.
+	 *	@param condition the condition to check
+	 *	@param message a description of the check, used if it fails
+	**/
+	public static void isTrue(boolean condition, String message){
+		if(!condition) throw new AssertionError(message);
+	}
+	/**
+	 *	Checks that two values are equal.
+	 *	@param expected the expected value
+	 *	@param actual the actual value
+	 *	@param message a description of the check, used if it fails
+	**/
+	public static void equal(Object expected, Object actual, String message){
+		if(expected==null ? actual!=null : !expected.equals(actual)){
+			throw new AssertionError(message+": expected <"+expected+"> but was <"+actual+">");
+		}
+	}
+	/**
+	 *	Checks that running some code throws an exception of a given type.
+	 *	@param type the expected type of exception
+	 *	@param code the code to run
+	 *	@param message a description of the check, used if it fails
+	**/
+	public static void fails(Class<? extends Throwable> type, Runnable code, String message){
+		try{
+			code.run();
+		}catch(Throwable e){
+			if(type.isInstance(e)) return;
+			throw new AssertionError(message+": expected "+type.getSimpleName()+" but got "+e);
+		}
+		throw new AssertionError(message+": expected "+type.getSimpleName()+" but nothing was thrown");
+	}
+}
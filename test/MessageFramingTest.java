@@ -0,0 +1,189 @@
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+/**
+ *	Tests for the framing of messages by {@link MessageFraming MessageFraming}, with frames which arrive in pieces, and for the state frames exchanged by a running server and its clients.
+**/
+public class MessageFramingTest{
+	private static final String[] MESSAGES = {"0,sendGarbage,2","","multi\nline\nEOM","\u00e9t\u00e9 \u2603",new String(new char[3000]).replace('\0','x')};
+	private static final byte[] STATE = new byte[300];
+	static{
+		for(int k = 0; k<STATE.length; k++){
+			STATE[k] = (byte)k;
+		}
+	}
+
+	public static void main(String[] args) throws Exception{
+		partialFrames();
+		invalidLengths();
+		stateOverSocket();
+		System.out.println("MessageFramingTest passed.");
+	}
+	private static void putFrame(DataOutputStream out, byte type, byte[] body) throws IOException{
+		out.writeInt(1+body.length);
+		out.writeByte(type);
+		out.write(body);
+	}
+	/**
+	 *	Writes every message as a text frame, each one followed by a state frame holding every byte value.
+	**/
+	private static byte[] stream(){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try{
+			for(String message : MESSAGES){
+				putFrame(out,MessageFraming.TEXT,message.getBytes(MessageFraming.CHARSET));
+				putFrame(out,MessageFraming.STATE,STATE);
+			}
+		}catch(IOException e){
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+	private static String describe(ByteBuffer frame){
+		byte type = frame.get();
+		if(type==MessageFraming.TEXT) return MessageFraming.getText(frame);
+		byte[] body = new byte[frame.remaining()];
+		frame.get(body);
+		return "state "+type+(Arrays.equals(body,STATE) ? " intact" : " damaged");
+	}
+	private static void partialFrames() throws IOException{
+		List<String> expected = new ArrayList<String>();
+		for(String message : MESSAGES){
+			expected.add(message);
+			expected.add("state "+MessageFraming.STATE+" intact");
+		}
+		byte[] stream = stream();
+		Random random = new Random(25);
+		for(int maxChunk : new int[]{1,3,7,64,stream.length}){
+			ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+			List<String> received = new ArrayList<String>();
+			for(int offset = 0; offset<stream.length;){
+				int chunk = Math.min(stream.length-offset,1+random.nextInt(maxChunk));
+				buffer.put(stream,offset,chunk);
+				offset += chunk;
+				buffer.flip();
+				for(ByteBuffer frame; (frame = MessageFraming.readFrame(buffer,buffer.capacity()-MessageFraming.HEADER_BYTES))!=null;){
+					received.add(describe(frame));
+				}
+				buffer.compact();
+			}
+			Check.equal(expected,received,"frames received in chunks of up to "+maxChunk+" bytes");
+			Check.equal(0,buffer.position(),"bytes left over");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		putFrame(new DataOutputStream(bytes),MessageFraming.TEXT,"hello".getBytes(MessageFraming.CHARSET));
+		byte[] frame = bytes.toByteArray();
+		for(int length = 0; length<frame.length; length++){
+			ByteBuffer partial = ByteBuffer.wrap(frame,0,length);
+			Check.equal(null,MessageFraming.readFrame(partial,1024),"frame cut after "+length+" bytes");
+			Check.equal(0,partial.position(),"nothing consumed from a frame cut after "+length+" bytes");
+		}
+		ByteBuffer whole = ByteBuffer.wrap(frame);
+		ByteBuffer body = MessageFraming.readFrame(whole,1024);
+		Check.equal(frame.length,whole.position(),"complete frame consumed");
+		Check.equal("hello",describe(body),"complete frame");
+		whole.put(5,(byte)'j');
+		body.position(1);
+		Check.equal("jello",MessageFraming.getText(body),"frame read in place");
+	}
+	private static void invalidLengths(){
+		for(int length : new int[]{-1,0,2000}){
+			final ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putInt(length).flip();
+			Check.fails(UncheckedIO.class,new Runnable(){
+				public void run(){ UncheckedIO.readFrame(buffer,1024); }
+			},"frame length "+length);
+		}
+	}
+	/**
+	 *	Connects two clients to a running server. The first sends its state in three writes, split inside the header and inside the body of the frame, and the second checks that the state reached it.
+	**/
+	private static void stateOverSocket() throws Exception{
+		GameServer server = new GameServer(new GameInstance());
+		server.startAcceptingConnections();
+		Socket first = new Socket("localhost",server.PORT_NUMBER);
+		Socket second = new Socket("localhost",server.PORT_NUMBER);
+		try{
+			int firstID = connect(first);
+			int secondID = connect(second);
+
+			byte[] frame = stateFrame(firstID,"Split");
+			OutputStream out = first.getOutputStream();
+			int[] cuts = {2,frame.length/2,frame.length};
+			int start = 0;
+			for(int cut : cuts){
+				out.write(frame,start,cut-start);
+				out.flush();
+				start = cut;
+				Thread.sleep(100);
+			}
+			readState(first,0);
+			Check.isTrue(server.getNames().contains("Split"),"server applied the state in the split frame");
+
+			second.getOutputStream().write(stateFrame(secondID,"Other"));
+			GameInstance view = new GameInstance();
+			new SnapshotReceiver().receive(readState(second,0),view,secondID,true);
+			Check.equal("Split",view.getPlayfield(firstID).getName(),"state of the first client received by the second");
+		}finally{
+			first.close();
+			second.close();
+			server.destroy();
+		}
+	}
+	private static int connect(Socket socket) throws IOException{
+		socket.setSoTimeout(5000);
+		ByteBuffer greeting = readFrame(new DataInputStream(socket.getInputStream()));
+		Check.equal(MessageFraming.TEXT,greeting.get(),"type of the first frame");
+		String text = MessageFraming.getText(greeting);
+		Check.isTrue(text.startsWith("clientID,"),"server sends the client ID first");
+		readState(socket,-1);
+		return Integer.parseInt(text.substring("clientID,".length()));
+	}
+	private static byte[] stateFrame(int clientID, String name) throws IOException{
+		GameInstance client = new GameInstance();
+		client.getPlayfield(clientID).setName(name);
+		ByteBuffer body = ByteBuffer.allocate(GameClient.STATE_BYTES);
+		StateCodec.putSignedVarint(body,-1);
+		new SnapshotSender().encode(client,new int[]{clientID},body);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		putFrame(new DataOutputStream(bytes),MessageFraming.STATE,Arrays.copyOf(body.array(),body.position()));
+		return bytes.toByteArray();
+	}
+	/**
+	 *	Reads frames until the next state frame from the server.
+	 *	@param ack the acknowledgement expected in the state frame: -1 before the client has sent anything, and the sequence number of its snapshot afterwards
+	 *	@return the snapshot in the state frame, after the acknowledgement
+	**/
+	private static ByteBuffer readState(Socket socket, int ack) throws IOException{
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		for(int n = 0; n<10; n++){
+			ByteBuffer frame = readFrame(in);
+			if(frame.get()!=MessageFraming.STATE) continue;
+			Check.equal(ack,StateCodec.getSignedVarint(frame),"acknowledgement from the server");
+			return frame;
+		}
+		throw new AssertionError("no state frame received");
+	}
+	private static ByteBuffer readFrame(DataInputStream in) throws IOException{
+		int length = MessageFraming.checkLength(in.readInt(),MessageFraming.MAX_FRAME_BYTES);
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return ByteBuffer.wrap(frame);
+	}
+	private static class UncheckedIO extends RuntimeException{
+		private static final long serialVersionUID = 1L;
+		UncheckedIO(IOException cause){
+			super(cause);
+		}
+		static ByteBuffer readFrame(ByteBuffer buffer, int limit){
+			try{
+				return MessageFraming.readFrame(buffer,limit);
+			}catch(IOException e){
+				throw new UncheckedIO(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+import java.nio.*;
+import java.util.*;
+/**
+ *	Tests for {@link PlayfieldSnapshot PlayfieldSnapshot} in full and delta form, and for the checks made by {@link SnapshotReceiver SnapshotReceiver} on the player IDs it receives.
+**/
+public class PlayfieldSnapshotTest{
+	public static void main(String[] args){
+		fullAndDelta();
+		rejectedPoses();
+		clientSnapshots();
+		System.out.println("PlayfieldSnapshotTest passed.");
+	}
+	private static void play(Playfield playfield, int ticks, int offset){
+		for(int tick = 0; tick<ticks; tick++){
+			int k = (tick+offset)%13;
+			if(k==2) playfield.applyInput(Input.LEFT);
+			if(k==5) playfield.applyInput(Input.ROTATE);
+			if(k==7) playfield.applyInput(Input.RIGHT);
+			if(k==11) playfield.applyInput(Input.HARD_DROP);
+			if((tick+offset)%97==0) playfield.applyInput(Input.HOLD);
+			if((tick+offset)%150==0) playfield.addGarbageToQueue(2);
+			playfield.tick();
+		}
+	}
+	private static byte[] full(PlayfieldSnapshot snapshot){
+		ByteBuffer buffer = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		snapshot.writeFull(buffer);
+		return Arrays.copyOf(buffer.array(),buffer.position());
+	}
+	private static void fullAndDelta(){
+		Playfield playfield = new Playfield();
+		playfield.setName("Snapshot");
+		playfield.startMatch(7);
+		playfield.startLogic(false);
+		PlayfieldSnapshot base = Playfield.newSnapshot();
+		PlayfieldSnapshot current = Playfield.newSnapshot();
+		PlayfieldSnapshot decoded = Playfield.newSnapshot();
+		ByteBuffer buffer = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		playfield.captureSnapshot(base);
+		for(int step = 0; step<60; step++){
+			play(playfield,1+step%5,step);
+			playfield.captureSnapshot(current);
+
+			buffer.clear();
+			current.writeFull(buffer);
+			buffer.flip();
+			decoded.readFull(buffer);
+			Check.equal(0,buffer.remaining(),"bytes left after a full snapshot");
+			Check.isTrue(Arrays.equals(full(current),full(decoded)),"full snapshot round trip at step "+step);
+
+			buffer.clear();
+			current.writeDelta(buffer,base);
+			buffer.flip();
+			decoded.readDelta(buffer,base);
+			Check.equal(0,buffer.remaining(),"bytes left after a delta");
+			Check.isTrue(Arrays.equals(full(current),full(decoded)),"delta round trip at step "+step);
+
+			buffer.clear();
+			current.writeDelta(buffer,null);
+			buffer.flip();
+			decoded.readDelta(buffer,null);
+			Check.isTrue(Arrays.equals(full(current),full(decoded)),"delta without a base at step "+step);
+
+			Playfield copy = new Playfield();
+			copy.applySnapshot(decoded);
+			PlayfieldSnapshot recaptured = Playfield.newSnapshot();
+			copy.captureSnapshot(recaptured);
+			Check.isTrue(Arrays.equals(full(current),full(recaptured)),"snapshot applied to a Playfield at step "+step);
+
+			base.copyFrom(current);
+		}
+
+		buffer.clear();
+		current.writeDelta(buffer,current);
+		Check.equal(1,buffer.position(),"delta of an unchanged snapshot");
+		buffer.flip();
+		decoded.copyFrom(current);
+		decoded.readDelta(buffer,decoded);
+		Check.isTrue(Arrays.equals(full(current),full(decoded)),"empty delta read against itself");
+
+		final ByteBuffer delta = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		playfield.captureSnapshot(current);
+		current.score++;
+		current.writeDelta(delta,base);
+		delta.flip();
+		final PlayfieldSnapshot target = Playfield.newSnapshot();
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ target.readDelta(delta,null); }
+		},"delta without its base");
+	}
+	private static void rejectedPoses(){
+		Playfield playfield = new Playfield();
+		playfield.startMatch(3);
+		playfield.startLogic(false);
+		play(playfield,120,0);
+		playfield.applyInput(Input.HOLD);
+		playfield.tick();
+		PlayfieldSnapshot valid = Playfield.newSnapshot();
+		playfield.captureSnapshot(valid);
+		Check.isTrue(valid.hasCurrent && valid.hasHeld,"snapshot has a current and a held piece");
+
+		int[][] poses = {{-5,0},{0,-3},{40,0},{0,40},{Integer.MAX_VALUE,0},{0,Integer.MIN_VALUE}};
+		for(int[] pose : poses){
+			PlayfieldSnapshot forged = Playfield.newSnapshot();
+			forged.copyFrom(valid);
+			forged.currentX = pose[0];
+			forged.currentY = pose[1];
+			expectRejected(forged,valid,"current piece at "+pose[0]+","+pose[1]);
+			forged.copyFrom(valid);
+			forged.heldX = pose[0];
+			forged.heldY = pose[1];
+			expectRejected(forged,valid,"held piece at "+pose[0]+","+pose[1]);
+		}
+	}
+	private static void expectRejected(PlayfieldSnapshot forged, final PlayfieldSnapshot base, String message){
+		final ByteBuffer full = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		forged.writeFull(full);
+		full.flip();
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ Playfield.newSnapshot().readFull(full); }
+		},message+", in full");
+		final ByteBuffer delta = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		forged.writeDelta(delta,base);
+		delta.flip();
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ Playfield.newSnapshot().readDelta(delta,base); }
+		},message+", as a delta");
+	}
+	private static GameInstance newInstance(int numPlayers){
+		GameInstance instance = new GameInstance();
+		for(int k = 0; k<numPlayers; k++){
+			instance.addPlayer();
+			instance.getPlayfield(k).setName("P"+k);
+		}
+		return instance;
+	}
+	private static ByteBuffer encode(GameInstance instance, int[] playerIDs){
+		ByteBuffer buffer = ByteBuffer.allocate(SnapshotSender.HEADER_BYTES+playerIDs.length*StateCodec.MAX_PLAYFIELD_BYTES);
+		new SnapshotSender().encode(instance,playerIDs,buffer);
+		buffer.flip();
+		return buffer;
+	}
+	private static void clientSnapshots(){
+		final GameInstance server = newInstance(2);
+		GameInstance client = newInstance(2);
+		client.getPlayfield(0).setName("Forged");
+		client.getPlayfield(1).setName("Mine");
+
+		ByteBuffer own = encode(client,new int[]{1});
+		new SnapshotReceiver().receiveFrom(own,server,1);
+		Check.equal("Mine",server.getPlayfield(1).getName(),"a client updates its own board");
+		Check.equal(0,own.remaining(),"snapshot read to its end");
+
+		final ByteBuffer other = encode(client,new int[]{0});
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ new SnapshotReceiver().receiveFrom(other,server,1); }
+		},"a client sends another player's board");
+		final ByteBuffer both = encode(client,new int[]{0,1});
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ new SnapshotReceiver().receiveFrom(both,server,1); }
+		},"a client sends more than its own board");
+		Check.equal("P0",server.getPlayfield(0).getName(),"other boards are left untouched");
+
+		GameInstance newcomer = newInstance(3);
+		final ByteBuffer unknown = encode(newcomer,new int[]{2});
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ new SnapshotReceiver().receiveFrom(unknown,server,2); }
+		},"a board the server never created");
+
+		final ByteBuffer huge = withPlayerID(client.getPlayfield(1),1000000000);
+		final GameInstance target = newInstance(1);
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ new SnapshotReceiver().receive(huge,target,null,false); }
+		},"a player ID out of range");
+		Check.equal(2,server.getNumberOfPlayers(),"no board created on the server");
+		Check.equal(1,target.getNumberOfPlayers(),"no board created on the client");
+
+		ByteBuffer valid = encode(client,new int[]{1});
+		final ByteBuffer trailing = ByteBuffer.allocate(valid.remaining()+1);
+		trailing.put(valid).put((byte)0).flip();
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ new SnapshotReceiver().receiveFrom(trailing,server,1); }
+		},"bytes after the last player");
+		final ByteBuffer truncated = encode(client,new int[]{1});
+		truncated.limit(truncated.limit()-1);
+		Check.fails(BufferUnderflowException.class,new Runnable(){
+			public void run(){ new SnapshotReceiver().receiveFrom(truncated,server,1); }
+		},"truncated snapshot");
+	}
+	private static ByteBuffer withPlayerID(Playfield playfield, int playerID){
+		PlayfieldSnapshot snapshot = Playfield.newSnapshot();
+		playfield.captureSnapshot(snapshot);
+		ByteBuffer forged = ByteBuffer.allocate(SnapshotSender.HEADER_BYTES+StateCodec.MAX_PLAYFIELD_BYTES);
+		SnapshotSender.putHeader(forged,0,-1,0,1);
+		SnapshotSender.putPlayer(forged,playerID,snapshot,null);
+		forged.flip();
+		return forged;
+	}
+}
@@ -0,0 +1,78 @@
+import java.util.*;
+/**
+ *	Tests that {@link ReplayRunner ReplayRunner} reproduces a match recorded by a {@link Playfield Playfield} exactly.
+**/
+public class ReplayRunnerTest{
+	private static final int TICKS = 4000;
+
+	public static void main(String[] args){
+		for(boolean clearAnimation : new boolean[]{false,true}){
+			replaysMatch(clearAnimation);
+		}
+		ignoresInputsAfterEnd();
+		System.out.println("ReplayRunnerTest passed.");
+	}
+	/**
+	 *	Plays a match with random inputs and garbage between ticks, as the game loop and the network would.
+	**/
+	private static Playfield play(long seed, boolean clearAnimation){
+		Random random = new Random(seed);
+		Input[] inputs = Input.values();
+		Playfield playfield = new Playfield();
+		playfield.setName("Live");
+		playfield.setClearAnimationEnabled(clearAnimation);
+		playfield.startMatch(seed);
+		playfield.startLogic(false);
+		for(int tick = 0; tick<TICKS; tick++){
+			for(int n = random.nextInt(3); n>0; n--){
+				playfield.applyInput(inputs[random.nextInt(inputs.length)]);
+			}
+			if(random.nextInt(200)==0) playfield.addGarbageToQueue(1+random.nextInt(4));
+			playfield.tick();
+		}
+		playfield.stopLogic();
+		return playfield;
+	}
+	private static String state(Playfield playfield){
+		String state = playfield.toString();
+		return state.substring(state.indexOf("scoreStart"));
+	}
+	private static void replaysMatch(boolean clearAnimation){
+		String description = clearAnimation ? " with animated clears" : "";
+		Playfield live = play(2025,clearAnimation);
+		MatchLog log = live.getMatchLog();
+		Check.equal(TICKS,log.getEndTick(),"recorded end tick"+description);
+		Check.isTrue(log.size()>TICKS/2,"inputs were recorded"+description);
+
+		Check.isTrue(ReplayRunner.verify(log,live.toString()),"replay ends in the live state"+description);
+		String replayed = state(ReplayRunner.replay(log));
+		Check.equal(replayed,state(ReplayRunner.replay(log)),"two replays of one log"+description);
+
+		Playfield reused = play(7,clearAnimation);
+		Check.isTrue(!state(reused).equals(replayed),"another match ends in another state"+description);
+		Check.equal(replayed,state(ReplayRunner.replay(reused,log)),"replay on a reused Playfield"+description);
+
+		MatchLog parsed = new MatchLog(log.toString());
+		Check.equal(log.toString(),parsed.toString(),"MatchLog text round trip"+description);
+		Check.isTrue(ReplayRunner.verify(parsed,live.toString()),"replay of a parsed log ends in the live state"+description);
+		Check.isTrue(!ReplayRunner.verify(log,play(7,clearAnimation).toString()),"replay does not match another match"+description);
+	}
+	/**
+	 *	Presses every key after the match has ended, as a player can until the results are shown.
+	**/
+	private static void ignoresInputsAfterEnd(){
+		Playfield live = new Playfield();
+		live.startMatch(42);
+		live.startLogic(false);
+		for(int tick = 0; tick<50; tick++){
+			live.tick();
+		}
+		live.stopLogic();
+		for(Input input : Input.values()){
+			live.applyInput(input);
+		}
+		MatchLog log = live.getMatchLog();
+		Check.equal(0,log.size(),"inputs recorded after the end of the match");
+		Check.isTrue(ReplayRunner.verify(log,live.toString()),"replay ends in the live state despite inputs after the end of the match");
+	}
+}
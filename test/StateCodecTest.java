@@ -0,0 +1,109 @@
+import java.nio.*;
+/**
+ *	Round-trip tests for {@link StateCodec StateCodec}.
+**/
+public class StateCodecTest{
+	public static void main(String[] args){
+		varints();
+		strings();
+		version();
+		playfields();
+		System.out.println("StateCodecTest passed.");
+	}
+	private static void varints(){
+		int[] values = {0,1,63,64,127,128,300,16383,16384,Integer.MAX_VALUE,-1,Integer.MIN_VALUE};
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		for(int value : values){
+			StateCodec.putVarint(buffer,value);
+			StateCodec.putSignedVarint(buffer,value);
+		}
+		buffer.flip();
+		for(int value : values){
+			Check.equal(value,StateCodec.getVarint(buffer),"varint");
+			Check.equal(value,StateCodec.getSignedVarint(buffer),"signed varint");
+		}
+		Check.equal(0,buffer.remaining(),"bytes left after varints");
+
+		buffer.clear();
+		StateCodec.putSignedVarint(buffer,-1);
+		Check.equal(1,buffer.position(),"small negative values take one byte");
+
+		final ByteBuffer malformed = ByteBuffer.wrap(new byte[]{(byte)0x80,(byte)0x80,(byte)0x80,(byte)0x80,(byte)0x80,0});
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ StateCodec.getVarint(malformed); }
+		},"varint longer than 5 bytes");
+	}
+	private static void strings(){
+		String[] values = {"","Player","\u00e9t\u00e9 \u2603","0123456789abcdef0123456789abcdef"};
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		for(String value : values){
+			StateCodec.putString(buffer,value);
+		}
+		buffer.flip();
+		for(String value : values){
+			Check.equal(value,StateCodec.getString(buffer),"string");
+		}
+
+		final ByteBuffer target = ByteBuffer.allocate(256);
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ StateCodec.putString(target,"0123456789abcdef0123456789abcdef!"); }
+		},"string over the cap is not written");
+		Check.equal(0,target.position(),"nothing written for a rejected string");
+
+		final ByteBuffer tooLong = ByteBuffer.allocate(64);
+		StateCodec.putVarint(tooLong,StateCodec.MAX_STRING_BYTES+1);
+		tooLong.flip();
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ StateCodec.getString(tooLong); }
+		},"length over the cap is rejected");
+
+		final ByteBuffer truncated = ByteBuffer.allocate(64);
+		StateCodec.putVarint(truncated,10);
+		truncated.put(new byte[3]);
+		truncated.flip();
+		Check.fails(BufferUnderflowException.class,new Runnable(){
+			public void run(){ StateCodec.getString(truncated); }
+		},"truncated string");
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(64);
+		StateCodec.putString(direct,"direct");
+		direct.flip();
+		Check.equal("direct",StateCodec.getString(direct),"string in a direct buffer");
+		ByteBuffer heap = ByteBuffer.allocate(64);
+		StateCodec.putString(heap,"read-only");
+		heap.flip();
+		Check.equal("read-only",StateCodec.getString(heap.asReadOnlyBuffer()),"string in a read-only buffer");
+	}
+	private static void version(){
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		StateCodec.putVersion(buffer);
+		StateCodec.putVarint(buffer,12345);
+		buffer.flip();
+		StateCodec.checkVersion(buffer);
+		Check.equal(12345,StateCodec.getVarint(buffer),"varint after the version");
+
+		final ByteBuffer otherVersion = ByteBuffer.wrap(new byte[]{(byte)(StateCodec.VERSION+1)});
+		Check.fails(IllegalArgumentException.class,new Runnable(){
+			public void run(){ StateCodec.checkVersion(otherVersion); }
+		},"state of another version");
+	}
+	private static void playfields(){
+		Playfield source = new Playfield();
+		source.startMatch(42);
+		source.startLogic(false);
+		source.setName("0123456789TOO LONG");
+		for(int tick = 0; tick<300; tick++){
+			if(tick%11==0) source.applyInput(Input.HARD_DROP);
+			if(tick%7==0) source.applyInput(Input.LEFT);
+			if(tick==50) source.applyInput(Input.HOLD);
+			source.tick();
+		}
+		Check.equal(Playfield.MAX_NAME_LENGTH,source.getName().length(),"name is capped");
+		ByteBuffer buffer = ByteBuffer.allocate(StateCodec.MAX_PLAYFIELD_BYTES);
+		source.writeTo(buffer);
+		buffer.flip();
+		Playfield copy = new Playfield();
+		copy.readFrom(buffer);
+		Check.equal(source.toString(),copy.toString(),"Playfield after binary round trip");
+	}
+}